@@ -0,0 +1,156 @@
+package disease_comparison;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * The BenchmarkInputs class finds or makes the files the benchmarks build
+ * their ontologies from.
+ * 
+ * The small input is the MP subset the tests use. The large one is made
+ * by SyntheticOntology with a fixed seed, so every run measures the same
+ * ontology. Its profile sizes follow a power law, so benchmarks pick out
+ * individuals by the size of their profiles.
+ */
+public class BenchmarkInputs {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The names of the inputs, as used in the benchmark parameters.
+	public static final String SMALL = "small";
+	public static final String LARGE = "large";
+	
+	// The smallest profile size in each bucket of the large input's
+	// individuals.
+	public static final int [] PROFILE_SIZES = { 1, 4, 16, 64 };
+	
+	// Where the small input lives, relative to the project.
+	private static final String RESOURCES = "src/test/resources/";
+	
+	// The shape of the large input.
+	private static final int CLASS_COUNT = 20000;
+	private static final int INDIVIDUAL_COUNT = 5000;
+	private static final long SEED = 20131L;
+	
+	/********************/
+	/* Static Variables */
+	/********************/
+	
+	// The large input, once we've generated it.
+	private static String [] large_files = null;
+	
+	/**********/
+	/* Inputs */
+	/**********/
+	
+	/*
+	 * files
+	 * Arguments:
+	 * 		input: Either SMALL or LARGE.
+	 * This function returns the class labels, class to class, individual
+	 * labels and individual to class files for the input, generating them
+	 * first if needed.
+	 */
+	public static synchronized String [] files(String input) throws IOException
+	{
+		if (input.equals(SMALL))
+		{
+			return new String [] {
+				RESOURCES + "mp-subset-1-labels.tsv",
+				RESOURCES + "mp-subset-1-edges.tsv",
+				RESOURCES + "mgi-gene2mp-subset-1-labels.tsv",
+				RESOURCES + "mgi-gene2mp-subset-1.tsv"
+			};
+		}
+		if (large_files == null)
+		{
+			large_files = generate();
+		}
+		return large_files;
+	}
+	
+	/*
+	 * options
+	 * Arguments:
+	 * 		None
+	 * This function returns the default options, without reading a
+	 * configuration file.
+	 */
+	public static Options options()
+	{
+		Options options = new Options();
+		options.setSymmetric(true);
+		return options;
+	}
+	
+	/*
+	 * build
+	 * Arguments:
+	 * 		input: Either SMALL or LARGE.
+	 * 		options: The options for the ontology.
+	 * This function builds the ontology for the input.
+	 */
+	public static Ontology build(String input, Options options) throws IOException
+	{
+		String [] files = files(input);
+		return new Ontology(files[0], files[1], files[2], files[3], options);
+	}
+	
+	/*
+	 * bucket
+	 * Arguments:
+	 * 		ontology: An ontology built from the large input.
+	 * 		profile_size: One of PROFILE_SIZES.
+	 * This function returns the indices of the individuals with at least
+	 * the given profile size, and less than the next one.
+	 */
+	public static int [] bucket(Ontology ontology, int profile_size)
+	{
+		int limit = Integer.MAX_VALUE;
+		for (int size : PROFILE_SIZES)
+		{
+			if (size > profile_size)
+			{
+				limit = Math.min(limit, size);
+			}
+		}
+		CompressedRows profiles = ontology.getProfiles();
+		IntList indices = new IntList();
+		for (int individual = 0; individual < ontology.getIndividualCount(); individual++)
+		{
+			int size = profiles.size(individual);
+			if (size >= profile_size && size < limit)
+			{
+				indices.add(individual);
+			}
+		}
+		return indices.toArray();
+	}
+	
+	/*
+	 * generate
+	 * Arguments:
+	 * 		None
+	 * This function writes the large input to a temporary directory.
+	 */
+	private static String [] generate() throws IOException
+	{
+		File directory = File.createTempFile("benchmark", "");
+		directory.delete();
+		SyntheticOntology generator = new SyntheticOntology();
+		generator.setClassCount(CLASS_COUNT);
+		generator.setIndividualCount(INDIVIDUAL_COUNT);
+		generator.setSeed(SEED);
+		String [] files = generator.write(directory.getPath());
+		
+		directory.deleteOnExit();
+		for (String file : files)
+		{
+			new File(file).deleteOnExit();
+		}
+		return files;
+	}
+	
+}
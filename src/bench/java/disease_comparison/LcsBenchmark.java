@@ -0,0 +1,76 @@
+package disease_comparison;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The LcsBenchmark class measures finding the least common subsumer of
+ * random pairs of classes. Cold runs have the cache turned off, so every
+ * pair merges the two subsumer rows. Warm runs have every pair cached
+ * before they start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LcsBenchmark {
+	
+	private static final int PAIRS = 4096;
+	
+	@Param({ BenchmarkInputs.SMALL, BenchmarkInputs.LARGE })
+	public String input;
+	
+	@Param({ "cold", "warm" })
+	public String cache;
+	
+	private Ontology ontology;
+	private int [] firsts;
+	private int [] seconds;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		Options options = BenchmarkInputs.options();
+		options.setLcsCacheSize(cache.equals("cold") ? 0 : 1 << 20);
+		ontology = BenchmarkInputs.build(input, options);
+		
+		Random random = new Random(42);
+		firsts = new int[PAIRS];
+		seconds = new int[PAIRS];
+		for (int i = 0; i < PAIRS; i++)
+		{
+			firsts[i] = random.nextInt(ontology.getClassCount());
+			seconds[i] = random.nextInt(ontology.getClassCount());
+			ontology.computeLCS(firsts[i], seconds[i]);
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int computeLCS()
+	{
+		int total = 0;
+		for (int i = 0; i < PAIRS; i++)
+		{
+			total += ontology.computeLCS(firsts[i], seconds[i]);
+		}
+		return total;
+	}
+
+}
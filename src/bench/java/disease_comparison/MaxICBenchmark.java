@@ -0,0 +1,73 @@
+package disease_comparison;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The MaxICBenchmark class measures maxIC between random pairs of
+ * individuals of the large input from the same bucket of profile sizes,
+ * so the cost of each size shows up on its own. The cache is turned off,
+ * so every pair of classes is looked up in the ontology.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaxICBenchmark {
+	
+	private static final int PAIRS = 1024;
+	
+	@Param({ "1", "4", "16", "64" })
+	public int profile_size;
+	
+	private Ontology ontology;
+	private int [] firsts;
+	private int [] seconds;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		Options options = BenchmarkInputs.options();
+		options.setLcsCacheSize(0);
+		ontology = BenchmarkInputs.build(BenchmarkInputs.LARGE, options);
+		
+		int [] bucket = BenchmarkInputs.bucket(ontology, profile_size);
+		Random random = new Random(42);
+		firsts = new int[PAIRS];
+		seconds = new int[PAIRS];
+		for (int i = 0; i < PAIRS; i++)
+		{
+			firsts[i] = bucket[random.nextInt(bucket.length)];
+			seconds[i] = bucket[random.nextInt(bucket.length)];
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public double maxIC()
+	{
+		double total = 0;
+		for (int i = 0; i < PAIRS; i++)
+		{
+			total += DiseaseComparisonMeasures.maxIC(ontology, firsts[i], seconds[i]);
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,55 @@
+package disease_comparison;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The OntologyBenchmark class measures building an ontology from its
+ * files: parsing, the closure, the IC scores and, with thresholding on,
+ * finding the important nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OntologyBenchmark {
+	
+	@Param({ BenchmarkInputs.SMALL, BenchmarkInputs.LARGE })
+	public String input;
+	
+	@Param({ "false", "true" })
+	public boolean use_thresholding;
+	
+	private String [] files;
+	private Options options;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		files = BenchmarkInputs.files(input);
+		options = BenchmarkInputs.options();
+		options.setUseThresholding(use_thresholding);
+		options.setMaxImportantNodes(1000);
+	}
+	
+	@Benchmark
+	public Ontology build()
+	{
+		return new Ontology(files[0], files[1], files[2], files[3], options);
+	}
+
+}
@@ -0,0 +1,82 @@
+package disease_comparison;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The OutputBenchmark class measures writing the output line for random
+ * pairs of diseases, which scores the pair and formats the line, the way
+ * the reducer and the local engine do for every pair. A negative precision
+ * writes the scores in full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+	
+	private static final int PAIRS = 1024;
+	
+	@Param({ BenchmarkInputs.SMALL, BenchmarkInputs.LARGE })
+	public String input;
+	
+	@Param({ "-1", "4" })
+	public int score_precision;
+	
+	private Ontology ontology;
+	private LineFormatter formatter;
+	private int [] firsts;
+	private int [] seconds;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		Options options = BenchmarkInputs.options();
+		options.setScorePrecision(score_precision);
+		ontology = BenchmarkInputs.build(input, options);
+		formatter = new LineFormatter(new MeasureEngine(ontology),
+				new LineFormatter.Dictionary(ontology));
+		
+		Random random = new Random(42);
+		firsts = new int[PAIRS];
+		seconds = new int[PAIRS];
+		for (int i = 0; i < PAIRS; i++)
+		{
+			firsts[i] = random.nextInt(ontology.getIndividualCount());
+			seconds[i] = random.nextInt(ontology.getIndividualCount());
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int formatLines()
+	{
+		int total = 0;
+		for (int i = 0; i < PAIRS; i++)
+		{
+			formatter.clear();
+			formatter.append(ontology.getIndividualIdentity(firsts[i]), firsts[i],
+					ontology.getIndividualIdentity(seconds[i]), seconds[i]);
+			formatter.newLine();
+			total += formatter.getLength();
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,120 @@
+package disease_comparison;
+
+import java.util.Arrays;
+
+/*
+ * The AncestorIndex class maps each class to the diseases whose profiles
+ * it subsumes, so we can find the diseases worth comparing without looking
+ * at every pair.
+ * 
+ * Most pairs of diseases only share classes near the root, and those have
+ * low IC scores. If two diseases share a subsumer with an IC score at or
+ * above the floor, they both show up under it here. So a disease's
+ * candidates are the diseases listed under its subsumers above the floor,
+ * and every pair left out has a maxIC below the floor.
+ */
+public class AncestorIndex {
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The lowest IC score a shared subsumer can have for a pair to count.
+	private double ic_floor;
+	
+	// For each disease, the subsumers of its profile at or above the floor.
+	private CompressedRows closures;
+	
+	// For each class, the diseases whose profiles it subsumes.
+	private CompressedRows postings;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	/*
+	 * Arguments:
+	 * 		ontology: The ontology in which to compare the diseases.
+	 * 		indices: The index in the ontology of each disease, or -1 if it
+	 * 			has no annotations. Diseases are listed as positions in this
+	 * 			array.
+	 * 		new_ic_floor: The lowest IC score a shared subsumer can have.
+	 */
+	public AncestorIndex(Ontology ontology, int [] indices, double new_ic_floor)
+	{
+		ic_floor = new_ic_floor;
+		
+		// Walk up from every class in every profile.
+		CompressedRows profiles = ontology.getProfiles();
+		CompressedRows ancestors = ontology.getAncestors();
+		IntList rows = new IntList();
+		IntList columns = new IntList();
+		for (int position = 0; position < indices.length; position++)
+		{
+			int individual = indices[position];
+			if (individual < 0)
+			{
+				continue;
+			}
+			for (int i = profiles.start(individual); i < profiles.end(individual); i++)
+			{
+				int node = profiles.get(i);
+				for (int j = ancestors.start(node); j < ancestors.end(node); j++)
+				{
+					int ancestor = ancestors.get(j);
+					if (ontology.getICScore(ancestor) >= ic_floor)
+					{
+						rows.add(position);
+						columns.add(ancestor);
+					}
+				}
+			}
+		}
+		closures = new CompressedRows(indices.length, rows, columns);
+		postings = closures.transpose(ontology.getClassCount());
+	}
+	
+	/**************/
+	/* Candidates */
+	/**************/
+	
+	/*
+	 * candidates
+	 * Arguments:
+	 * 		position: The position of a disease.
+	 * This function returns the sorted positions of every disease which
+	 * shares a subsumer at or above the floor with the given one. The
+	 * disease itself is included if it has any such subsumer.
+	 */
+	public int [] candidates(int position)
+	{
+		IntList gathered = new IntList();
+		for (int i = closures.start(position); i < closures.end(position); i++)
+		{
+			int ancestor = closures.get(i);
+			for (int j = postings.start(ancestor); j < postings.end(ancestor); j++)
+			{
+				gathered.add(postings.get(j));
+			}
+		}
+		
+		// Sort the candidates and drop the duplicates.
+		int [] sorted = gathered.toArray();
+		Arrays.sort(sorted);
+		int count = 0;
+		for (int i = 0; i < sorted.length; i++)
+		{
+			if (count == 0 || sorted[count - 1] != sorted[i])
+			{
+				sorted[count++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, count);
+	}
+	
+	public double getICFloor()
+	{
+		return ic_floor;
+	}
+
+}
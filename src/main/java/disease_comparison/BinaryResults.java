@@ -0,0 +1,298 @@
+package disease_comparison;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+/*
+ * The BinaryResults class handles the binary output format, and turns it
+ * back into the usual tab-separated lines.
+ * 
+ * In binary mode each pair is a ScoreRecord in a block-compressed
+ * SequenceFile, holding only numbers. Next to the part files we write a
+ * dictionary with a line for each measure, disease and class:
+ * 
+ * 		M	<measure name>
+ * 		I	<position>	<identity>	<name>
+ * 		C	<index>	<identity>
+ */
+public class BinaryResults {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The values of the output_format option.
+	public static final String TEXT = "text";
+	public static final String BINARY = "binary";
+	
+	// The name of the dictionary file in the output directory.
+	public static final String DICTIONARY = "dictionary.tsv";
+	
+	/**************/
+	/* Dictionary */
+	/**************/
+	
+	/*
+	 * writeDictionary
+	 * Arguments:
+	 * 		fs: The file system to write to.
+	 * 		directory: The output directory.
+	 * 		ontology: The ontology the diseases were compared in.
+	 * 		identities: The sorted identifiers of the diseases, whose
+	 * 			positions the records use.
+	 * This function writes the dictionary the records need to be read.
+	 */
+	public static void writeDictionary(FileSystem fs, Path directory, Ontology ontology,
+			List<String> identities) throws IOException
+	{
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				fs.create(new Path(directory, DICTIONARY)), "UTF-8"));
+		try
+		{
+			for (SimilarityMeasure measure : ontology.getOptions().getMeasures())
+			{
+				writer.write("M\t" + measure.getName() + "\n");
+			}
+			Map<String, String> annotation_names = ontology.getAnnotationNames();
+			for (int i = 0; i < identities.size(); i++)
+			{
+				String identity = identities.get(i);
+				writer.write("I\t" + i + "\t" + identity + "\t" + annotation_names.get(identity) + "\n");
+			}
+			for (int i = 0; i < ontology.getClassCount(); i++)
+			{
+				writer.write("C\t" + i + "\t" + ontology.getClassIdentity(i) + "\n");
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+	
+	/*
+	 * writeDictionary
+	 * Arguments:
+	 * 		context: The task writing the output.
+	 * 		ontology: The ontology the diseases were compared in.
+	 * 		identities: The sorted identifiers of the diseases.
+	 * This function writes the dictionary from the first task only, next to
+	 * its part file, so it ends up in the output directory once.
+	 */
+	public static void writeDictionary(TaskInputOutputContext<?, ?, ?, ?> context, Ontology ontology,
+			List<String> identities) throws IOException, InterruptedException
+	{
+		if (context.getTaskAttemptID().getTaskID().getId() != 0)
+		{
+			return;
+		}
+		Path directory = FileOutputFormat.getWorkOutputPath(context);
+		writeDictionary(directory.getFileSystem(context.getConfiguration()), directory, ontology, identities);
+	}
+	
+	/*
+	 * createWriter
+	 * Arguments:
+	 * 		conf: The configuration to write with.
+	 * 		fs: The file system to write to.
+	 * 		file: The path of the part file.
+	 * This function opens a block-compressed part file for records.
+	 */
+	public static SequenceFile.Writer createWriter(Configuration conf, FileSystem fs, Path file)
+			throws IOException
+	{
+		return SequenceFile.createWriter(fs, conf, file,
+				ScoreRecord.class, NullWritable.class, SequenceFile.CompressionType.BLOCK);
+	}
+	
+	/**************/
+	/* Conversion */
+	/**************/
+	
+	/*
+	 * convert
+	 * Arguments:
+	 * 		conf: The configuration to read with.
+	 * 		directory: The directory of binary output.
+	 * 		filename: Where to write the tab-separated lines.
+	 * 		options: Which columns to show, and how.
+	 * This function turns binary output back into the lines text mode would
+	 * have written. Scores were stored as floats, so they come back with
+	 * float precision.
+	 */
+	public static void convert(Configuration conf, Path directory, String filename, Options options)
+			throws IOException
+	{
+		FileSystem fs = directory.getFileSystem(conf);
+		
+		// Read the dictionary.
+		List<String> identities = new ArrayList<String>();
+		List<String> names = new ArrayList<String>();
+		List<String> classes = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				fs.open(new Path(directory, DICTIONARY)), "UTF-8"));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String [] pieces = line.split("\t", -1);
+				if (pieces[0].equals("I"))
+				{
+					identities.add(pieces[2]);
+					names.add(pieces[3]);
+				}
+				else if (pieces[0].equals("C"))
+				{
+					classes.add(pieces[2]);
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		// Write out every record of every part file.
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				FileSystem.getLocal(conf).create(new Path(filename)), "UTF-8"), 1 << 20);
+		try
+		{
+			ScoreRecord record = new ScoreRecord();
+			StringBuilder line = new StringBuilder();
+			for (FileStatus status : fs.listStatus(directory))
+			{
+				if (!status.getPath().getName().startsWith("part-"))
+				{
+					continue;
+				}
+				SequenceFile.Reader records = new SequenceFile.Reader(fs, status.getPath(), conf);
+				try
+				{
+					while (records.next(record, NullWritable.get()))
+					{
+						line.setLength(0);
+						formatRecord(record, identities, names, classes, options, line);
+						line.append('\n');
+						writer.append(line);
+					}
+				}
+				finally
+				{
+					records.close();
+				}
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+	
+	/*
+	 * formatRecord
+	 * Arguments:
+	 * 		record: A pair of diseases and their scores.
+	 * 		identities: The identifier of each disease, by position.
+	 * 		names: The name of each disease, by position.
+	 * 		classes: The identifier of each class, by index.
+	 * 		options: Which columns to show, and how.
+	 * 		line: Where to put the line.
+	 * This function lays out a record the same way LineFormatter does.
+	 */
+	private static void formatRecord(ScoreRecord record, List<String> identities,
+			List<String> names, List<String> classes, Options options, StringBuilder line)
+	{
+		List<String> columns = new ArrayList<String>();
+		if (options.getShowIdentities())
+		{
+			columns.add(identities.get(record.getFirst()));
+		}
+		if (options.getShowNames())
+		{
+			columns.add(names.get(record.getFirst()));
+		}
+		if (options.getShowIdentities())
+		{
+			columns.add(identities.get(record.getSecond()));
+		}
+		if (options.getShowNames())
+		{
+			columns.add(names.get(record.getSecond()));
+		}
+		for (float score : record.getScores())
+		{
+			if (options.getScorePrecision() >= 0)
+			{
+				columns.add(String.format("%." + options.getScorePrecision() + "f", score));
+			}
+			else
+			{
+				columns.add(Float.toString(score));
+			}
+		}
+		if (options.getShowBestLCS())
+		{
+			if (record.getBestLCS() == ScoreRecord.INVALID_SETS)
+			{
+				columns.add("INVALID SETS");
+			}
+			else if (record.getBestLCS() == ScoreRecord.NO_LCS_FOUND)
+			{
+				columns.add("NO LCS FOUND");
+			}
+			else
+			{
+				columns.add(classes.get(record.getBestLCS()));
+			}
+		}
+		for (int i = 0; i < columns.size(); i++)
+		{
+			if (i > 0)
+			{
+				line.append('\t');
+			}
+			line.append(columns.get(i));
+		}
+	}
+	
+	/********/
+	/* Main */
+	/********/
+	
+	public static void main(String [] args)
+	{
+		try
+		{
+			// TODO: Don't use magic file path.
+			// Convert the binary output in the given directory to text.
+			Options options = new Options("ontology.config");
+			convert(new Configuration(), new Path(args[0]), args[1], options);
+		}
+		catch (Exception e)
+		{
+			// Complain if something fails.
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+		
+		System.out.println("Binary Conversion Completed");
+	}
+
+}
@@ -0,0 +1,225 @@
+package disease_comparison;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/*
+ * The CompressedRows class stores a sparse relation between integer
+ * identifiers in compressed-sparse-row form.
+ * The entries of row r are entries[offsets[r]] up to entries[offsets[r + 1]],
+ * sorted in increasing order with no duplicates.
+ * 
+ * The offsets and entries are usually arrays, but they can also be read
+ * straight out of buffers, such as views of a memory-mapped snapshot, so
+ * that every JVM reading the snapshot shares the same pages.
+ */
+public class CompressedRows {
+
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// Where each row starts. There is one extra offset marking the end of
+	// the last row.
+	private int [] offsets;
+	
+	// The entries of every row, laid out one row after another.
+	private int [] entries;
+	
+	// The offsets and entries, if we're reading them out of buffers
+	// instead.
+	private IntBuffer offset_buffer;
+	private IntBuffer entry_buffer;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public CompressedRows(int [] new_offsets, int [] new_entries)
+	{
+		offsets = new_offsets;
+		entries = new_entries;
+	}
+	
+	/*
+	 * Arguments:
+	 * 		new_offsets: Where each row starts, and where the last one ends.
+	 * 		new_entries: The entries of every row.
+	 * This constructor reads the rows out of the buffers as they're needed,
+	 * without copying them.
+	 */
+	public CompressedRows(IntBuffer new_offsets, IntBuffer new_entries)
+	{
+		offset_buffer = new_offsets;
+		entry_buffer = new_entries;
+	}
+	
+	/*
+	 * Arguments:
+	 * 		row_count: The number of rows.
+	 * 		rows: The row of each pair in the relation.
+	 * 		columns: The column of each pair in the relation.
+	 * This constructor builds the rows from a list of (row, column) pairs.
+	 * Duplicate pairs are only stored once.
+	 */
+	public CompressedRows(int row_count, IntList rows, IntList columns)
+	{
+		// Count how many entries land in each row.
+		int [] counts = new int[row_count + 1];
+		for (int i = 0; i < rows.size(); i++)
+		{
+			counts[rows.get(i) + 1]++;
+		}
+		for (int row = 0; row < row_count; row++)
+		{
+			counts[row + 1] += counts[row];
+		}
+		
+		// Drop each entry into its row.
+		int [] unsorted = new int[rows.size()];
+		int [] next = Arrays.copyOf(counts, row_count);
+		for (int i = 0; i < rows.size(); i++)
+		{
+			unsorted[next[rows.get(i)]++] = columns.get(i);
+		}
+		
+		// Sort each row and squeeze out duplicates.
+		offsets = new int[row_count + 1];
+		int size = 0;
+		for (int row = 0; row < row_count; row++)
+		{
+			offsets[row] = size;
+			Arrays.sort(unsorted, counts[row], counts[row + 1]);
+			for (int i = counts[row]; i < counts[row + 1]; i++)
+			{
+				if (size > offsets[row] && unsorted[size - 1] == unsorted[i])
+				{
+					continue;
+				}
+				unsorted[size++] = unsorted[i];
+			}
+		}
+		offsets[row_count] = size;
+		entries = Arrays.copyOf(unsorted, size);
+	}
+	
+	/*************/
+	/* Transpose */
+	/*************/
+	
+	/*
+	 * transpose
+	 * Arguments:
+	 * 		column_count: The number of rows in the transposed relation.
+	 * This function returns the reverse relation, so that the rows of the
+	 * result are the columns of this one.
+	 */
+	public CompressedRows transpose(int column_count)
+	{
+		// Count how many entries land in each column.
+		int [] new_offsets = new int[column_count + 1];
+		int entry_count = entryCount();
+		for (int i = 0; i < entry_count; i++)
+		{
+			new_offsets[get(i) + 1]++;
+		}
+		for (int column = 0; column < column_count; column++)
+		{
+			new_offsets[column + 1] += new_offsets[column];
+		}
+		
+		// Walking the rows in order keeps each new row sorted.
+		int [] new_entries = new int[entry_count];
+		int [] next = Arrays.copyOf(new_offsets, column_count);
+		for (int row = 0; row < rowCount(); row++)
+		{
+			for (int i = start(row); i < end(row); i++)
+			{
+				new_entries[next[get(i)]++] = row;
+			}
+		}
+		
+		return new CompressedRows(new_offsets, new_entries);
+	}
+	
+	/***********************/
+	/* Getters and Setters */
+	/***********************/
+	
+	public int rowCount()
+	{
+		return offsets != null ? offsets.length - 1 : offset_buffer.limit() - 1;
+	}
+	
+	public int entryCount()
+	{
+		return entries != null ? entries.length : entry_buffer.limit();
+	}
+	
+	public int start(int row)
+	{
+		return offsets != null ? offsets[row] : offset_buffer.get(row);
+	}
+	
+	public int end(int row)
+	{
+		return offsets != null ? offsets[row + 1] : offset_buffer.get(row + 1);
+	}
+	
+	public int size(int row)
+	{
+		return end(row) - start(row);
+	}
+	
+	public int get(int position)
+	{
+		return entries != null ? entries[position] : entry_buffer.get(position);
+	}
+	
+	public int [] row(int row)
+	{
+		if (entries != null)
+		{
+			return Arrays.copyOfRange(entries, offsets[row], offsets[row + 1]);
+		}
+		int [] values = new int[size(row)];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = entry_buffer.get(start(row) + i);
+		}
+		return values;
+	}
+	
+	/*
+	 * contains
+	 * Arguments:
+	 * 		row: The row to look in.
+	 * 		value: The entry to look for.
+	 * This function checks whether the row holds the entry, using the fact
+	 * that each row is sorted.
+	 */
+	public boolean contains(int row, int value)
+	{
+		int low = start(row);
+		int high = end(row) - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int entry = get(middle);
+			if (entry < value)
+			{
+				low = middle + 1;
+			}
+			else if (entry > value)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+}
@@ -1,24 +1,27 @@
 package disease_comparison;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
 public class DiseaseComparisonDriver {
@@ -34,19 +37,20 @@ public class DiseaseComparisonDriver {
 	 * 			The input file must be formatted in two tab-separated columns.
 	 * 			The first column holds the identifier of the child node, and
 	 * 			the second column holds the identifier of the parent node.
-	 * 		individual_to_class: The path to the file of annotations.
-	 * 			The input file must be formatted in two tab-separated columns.
-	 * 			The first column holds the identifier of the annotation, and
-	 * 			the second column holds the identifier of the associated node.
 	 * 		individual_labels: The path to the file of annotation names.
 	 * 			The input file must be formatted in two tab-separated columns.
 	 * 			The first column holds the identifier of the disease, and
 	 * 			the second column holds the name of the disease.
+	 * 		individual_to_class: The path to the file of annotations.
+	 * 			The input file must be formatted in two tab-separated columns.
+	 * 			The first column holds the identifier of the annotation, and
+	 * 			the second column holds the identifier of the associated node.
 	 * This computes the similarity scores for all diseases and writes them to
-	 * the output directory specified in ontology.config.
+	 * the output directory specified in ontology.config. It returns whether
+	 * the job succeeded.
 	 */
-	public static void compareAllDiseases(String class_labels, String class_to_class,
-			String individual_to_class, String individual_labels)
+	public static boolean compareAllDiseases(String class_labels, String class_to_class,
+			String individual_labels, String individual_to_class)
 			throws IOException, InterruptedException, ClassNotFoundException
 	{
 		// TODO: Don't use magic file path.
@@ -58,126 +62,211 @@ public class DiseaseComparisonDriver {
 		// our configuration.
 		String directory_name = options.getOutputDirectory();
 		
-		// TODO: This might cause name conflicts. This should probably check
-		// if the temporary file already exists.
-		// TODO: Clean up temporary file.
-		// Open a temporary file for output.
-		String temp_filename = directory_name + "_temp.txt";		
-		PrintWriter writer = new PrintWriter(temp_filename);
+		// Find all the annotated diseases, and how many annotations each has.
+		Map<String, Integer> annotation_counts = countAnnotations(individual_to_class);
+		Set<String> disease_identities = annotation_counts.keySet();
 		
-		// Find all the diseases.
-		Set<String> disease_identities = parseIndividualLabels(individual_labels);
-				
-		// Compare each pair of diseases.
-		for (String first_identity : disease_identities)
+		// Create and set up the Hadoop job.
+		Configuration conf = new Configuration();
+		
+		// The inputs are staged in a cache directory, which is deleted once
+		// the job finishes, however it finishes, or when the file system
+		// closes if we're killed first.
+		FileSystem fs = FileSystem.get(conf);
+		Path cache_directory = new Path(directory_name + "_cache");
+		fs.deleteOnExit(cache_directory);
+		try
 		{
-			for (String second_identity : disease_identities)
+			// Ship the inputs to every task through the DistributedCache. If
+			// we've saved a snapshot of the ontology, ship that instead of
+			// the files it was built from.
+			SharedOntology.ship(conf, fs, cache_directory, SharedOntology.ONTOLOGY_CONFIG, "ontology.config");
+			if (options.getOntologySnapshot() != null)
 			{
-				// We don't need to compare a disease with itself.
-				if (first_identity.equals(second_identity))
+				SharedOntology.ship(conf, fs, cache_directory, SharedOntology.ONTOLOGY_SNAPSHOT, options.getOntologySnapshot());
+			}
+			else
+			{
+				SharedOntology.ship(conf, fs, cache_directory, SharedOntology.CLASS_LABELS, class_labels);
+				SharedOntology.ship(conf, fs, cache_directory, SharedOntology.CLASS_TO_CLASS, class_to_class);
+				SharedOntology.ship(conf, fs, cache_directory, SharedOntology.INDIVIDUAL_LABELS, individual_labels);
+				SharedOntology.ship(conf, fs, cache_directory, SharedOntology.INDIVIDUAL_TO_CLASS, individual_to_class);
+			}
+			if (options.getMicaTable() != null)
+			{
+				SharedOntology.ship(conf, fs, cache_directory, SharedOntology.MICA_TABLE, options.getMicaTable());
+			}
+			
+			// Tell the tasks which job's ontology they need, and let them reuse
+			// JVMs so the ontology is only built once per JVM.
+			conf.set(SharedOntology.SIGNATURE, fs.makeQualified(cache_directory) + "@" + System.currentTimeMillis());
+			conf.setInt("mapred.job.reuse.jvm.num.tasks", -1);
+			
+			// Rather than writing out every pair of diseases, we just ship the
+			// list of diseases and generate the pairs in the mappers. If the
+			// measures are all symmetric, we don't need to compare in both
+			// directions, unless we're keeping the best matches for each
+			// disease, in which case every disease has to see all of its pairs.
+			boolean top_k = options.getTopK() > 0;
+			boolean triangular = options.getSymmetric() && !top_k;
+			PairInputFormat.setIndividuals(conf, fs, new Path(cache_directory, "individuals"),
+					disease_identities, options.getPairSplits(), triangular);
+			
+			Job job = new Job(conf, "Disease Comparison");
+
+			// The pairs travel as <Text, Text> key-value pairs, and the output is
+			// either lines of text or binary records.
+			boolean binary = options.getOutputFormat().equals(BinaryResults.BINARY);
+			job.setMapOutputKeyClass(Text.class);
+			job.setMapOutputValueClass(Text.class);
+			job.setOutputKeyClass(binary ? ScoreRecord.class : Text.class);
+			job.setOutputValueClass(NullWritable.class);
+
+			if (options.getTileSize() > 0 && !top_k)
+			{
+				// In tiled mode, each mapper scores whole tiles of pairs and
+				// there's nothing left to reduce. Keeping the best matches needs
+				// every pair of a disease in one place, so it needs the reducer.
+				conf = job.getConfiguration();
+				conf.setInt(TileInputFormat.TILE_SIZE, options.getTileSize());
+				job.setMapperClass(TileMapper.class);
+				job.setNumReduceTasks(0);
+				job.setInputFormatClass(TileInputFormat.class);
+			}
+			else
+			{
+				// The pairs come straight out of the input format, so the mapper
+				// just passes them along to our Reducer.
+				job.setMapperClass(Mapper.class);
+				job.setReducerClass(DiseaseComparisonReducer.class);
+				job.setInputFormatClass(PairInputFormat.class);
+				
+				// Each reducer gets every pair of the first diseases it's given,
+				// so hand those out by their work rather than by their hash.
+				if (options.getReduceTasks() > 0)
 				{
-					continue;
+					job.setNumReduceTasks(options.getReduceTasks());
 				}
-				
-				// If the measures are all symmetric, we don't need to compare
-				// in both directions.
-				if (options.getSymmetric())
+				if (options.getBalanceReducers() && job.getNumReduceTasks() > 1)
 				{
-					if (first_identity.compareTo(second_identity) < 0)
-					{
-						continue;
-					}
+					balanceReducers(job, fs, new Path(cache_directory, "partitions"), annotation_counts, triangular);
 				}
-				
-				// Use a temporary output file to store each pair of diseases.
-				writer.println(first_identity + '\t' + second_identity);
+			}
+			
+			// We write text files, or block-compressed sequence files.
+			if (binary)
+			{
+				job.setOutputFormatClass(SequenceFileOutputFormat.class);
+				SequenceFileOutputFormat.setCompressOutput(job, true);
+				SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+			}
+			else
+			{
+				job.setOutputFormatClass(TextOutputFormat.class);
+			}
+			
+			// Put our output in the given directory.
+			FileOutputFormat.setOutputPath(job, new Path(directory_name));
+			
+			// Run MapReduce.
+			job.setJarByClass(Ontology.class);
+			return job.waitForCompletion(true);
+		}
+		finally
+		{
+			// Clean up the staged inputs, even if the job failed.
+			if (fs.exists(cache_directory) && !fs.delete(cache_directory, true))
+			{
+				System.out.println("Staged inputs could not be deleted at:");
+				System.out.println(cache_directory);
 			}
 		}
-		
-		// Close the temporary output file.
-		writer.close();
-		
-		// Create and set up the Hadoop job.
-		Configuration conf = new Configuration();
-		conf.set("class-labels", class_labels);
-		conf.set("class-to-class", class_to_class);
-		conf.set("individual-to-class", individual_to_class);
-		conf.set("individual-labels", individual_labels);
-		Job job = new Job(conf, "Disease Comparison");
-
-		// Our reducer outputs <Text, Text> key-value pairs.
-		job.setOutputKeyClass(Text.class);
-		job.setOutputValueClass(Text.class);
-
-		// We want to map with our Mapper and reduce with our Reducer.
-		job.setMapperClass(DiseaseComparisonMapper.class);
-		job.setReducerClass(DiseaseComparisonReducer.class);
-		
-		// We read and write text files.
-		job.setInputFormatClass(TextInputFormat.class);
-		job.setOutputFormatClass(TextOutputFormat.class);
-		
-		// We take our input from the temporary file and put our output in
-		// the given file.
-		FileInputFormat.addInputPath(job, new Path(temp_filename));
-		FileOutputFormat.setOutputPath(job, new Path(directory_name));
-		
-		// Run MapReduce.
-		job.setJarByClass(Ontology.class);
-		job.waitForCompletion(true);
 	}
 	
-	/* 
-	 * processOutput
+	/*
+	 * balanceReducers
 	 * Arguments:
-	 * 		ontology: The ontology in which to compare the two diseases.
-	 * 		first_identity: The identifier for the first disease.
-	 * 		second_identity: The identifier for the second disease.
-	 * This function creates a line of the output.
+	 * 		job: The job to balance.
+	 * 		fs: The file system the job runs on.
+	 * 		path: Where to write the plan.
+	 * 		annotation_counts: How many annotations each disease has.
+	 * 		triangular: Whether we only generate each pair in one order.
+	 * This function plans which reducer gets each first disease, points the
+	 * job's partitioner at the plan, and reports how even the estimated
+	 * work is compared with hashing.
 	 */
-	private static String processOutput(Ontology ontology, String first_identity, String second_identity)
+	private static void balanceReducers(Job job, FileSystem fs, Path path,
+			Map<String, Integer> annotation_counts, boolean triangular) throws IOException
 	{
-		// Get the relevant information from the ontology.
-		Options options = ontology.getOptions();
-		Map<String, String> annotation_names = ontology.getAnnotationNames();
+		// Estimate the work in each first disease's row of pairs from the
+		// size of its profile. A disease we have no count for costs nothing
+		// beyond its pairs.
+		Configuration conf = job.getConfiguration();
+		List<String> identities = PairInputFormat.readIndividuals(conf);
+		int [] sizes = new int[identities.size()];
+		for (int i = 0; i < sizes.length; i++)
+		{
+			Integer count = annotation_counts.get(identities.get(i));
+			sizes[i] = count == null ? 0 : count;
+		}
+		double [] costs = PairPartitioner.rowCosts(sizes, triangular);
 		
-		// Calculate the similarity measures for the two diseases.
-		double max_ic = DiseaseComparisonMeasures.maxIC(ontology, first_identity, second_identity);
+		// Hand the rows out and tell the partitioner where they went.
+		int reducer_count = job.getNumReduceTasks();
+		int [] assignments = PairPartitioner.assign(costs, reducer_count);
+		PairPartitioner.setPlan(conf, fs, path, identities, assignments);
+		job.setPartitionerClass(PairPartitioner.class);
 		
-		// Create the output string.	
-		String line = "";
+		// Report the busiest reducer's share against a perfect split.
+		System.out.println(String.format(
+				"Reducer balance over %d reducers: busiest/mean estimated work %.3f (hashing would give %.3f)",
+				reducer_count, PairPartitioner.balance(costs, assignments, reducer_count),
+				PairPartitioner.balance(costs, PairPartitioner.hashAssignments(identities, reducer_count), reducer_count)));
+	}
+	
+	/*
+	 * compareAllDiseasesLocally
+	 * Arguments:
+	 * 		class_labels: A path to the file of nodes.
+	 * 		class_to_class: The path to the file of edges.
+	 * 		individual_labels: The path to the file of annotation names.
+	 * 		individual_to_class: The path to the file of annotations.
+	 * 		threads: How many threads to compare diseases with.
+	 * The files are formatted as for compareAllDiseases.
+	 * This computes the similarity scores for all diseases on this machine,
+	 * without Hadoop, and writes them to the output directory specified in
+	 * ontology.config.
+	 */
+	public static void compareAllDiseasesLocally(String class_labels, String class_to_class,
+			String individual_labels, String individual_to_class, int threads)
+			throws IOException
+	{
+		// TODO: Don't use magic file path.
+		// Get the options from the configuration file.
+		Options options = new Options("ontology.config");
 		
-		// Show identities and names if the appropriate options are chosen.
-		if (options.getShowIdentities())
+		// Build the ontology once, or read it back if it's already built.
+		Ontology ontology;
+		if (options.getOntologySnapshot() != null)
 		{
-			line += first_identity + "\t";
+			ontology = OntologySnapshot.read(options.getOntologySnapshot(), options);
 		}
-		if (options.getShowNames())
+		else
 		{
-			line += annotation_names.get(first_identity) + "\t";
+			ontology = new Ontology(class_labels, class_to_class, individual_labels, individual_to_class, options);
 		}
-		if (options.getShowIdentities())
-		{
-			line += second_identity + "\t";
-		}
-		if (options.getShowNames())
-		{
-			line += annotation_names.get(second_identity) + "\t";
-		}
-		// Show measures if the corresponding options are chosen.
-		if (options.getShowMaxIC())
+		
+		// Find all the diseases, in the same order the Hadoop job uses.
+		List<String> disease_identities = new ArrayList<String>(ontology.getIndividualCount());
+		for (int i = 0; i < ontology.getIndividualCount(); i++)
 		{
-			line += max_ic + "\t";
+			disease_identities.add(ontology.getIndividualIdentity(i));
 		}
+		Collections.sort(disease_identities);
 		
-		// FIXME: Remove this.
-		line += DiseaseComparisonMeasures.bestLCS(ontology, first_identity, second_identity);
-		
-		// Strip excess whitespace.
-		line = line.trim();
-		
-		// Return the composite line.
-		return line;
+		// Compare every pair.
+		LocalComparisonEngine engine = new LocalComparisonEngine(ontology, disease_identities, threads);
+		engine.run(LocalComparisonEngine.outputFile(options.getOutputDirectory()));
 	}
 	
 	/****************/
@@ -185,38 +274,39 @@ public class DiseaseComparisonDriver {
 	/****************/
 	
 	/*
-	 * parseIndividualLabels
+	 * countAnnotations
 	 * Arguments:
 	 * 		filename: The path to the file of annotations.
 	 * 			The input file must be formatted in two tab-separated columns.
 	 * 			The first column holds the identifier of the disease, and
-	 * 			the second column holds the name of the disease.
-	 * This function stores the names associated with each disease.
+	 * 			the second column holds the identifier of the associated node.
+	 * This function finds the identity of each annotated disease, and counts
+	 * how many annotations each one has, which is the size of its profile.
 	 */
-	private static Set<String> parseIndividualLabels(String filename)
+	private static Map<String, Integer> countAnnotations(String filename)
 	{
-		// Keep track of the identities of each disease.
-		Set<String> identities = new HashSet<String>();
+		// Keep track of the identities of each disease, and how many
+		// annotations each one has.
+		Map<String, Integer> identities = new HashMap<String, Integer>();
 		
 		// Read in annotations.
 		try
 		{
-			// Add an annotation label for each line of the input file.
-			for (Scanner sc = new Scanner(new File(filename)); sc.hasNext(); )
+			// Count an annotation for each line of the input file.
+			TsvReader.Columns lines = TsvReader.read(filename);
+			for (int line = 0; line < lines.size(); line++)
 			{
-				String line = sc.nextLine();
-				String [] pieces = line.split("\t");
-				String annotation_identity = pieces[0];
-				// String annotation_name = pieces[1];
+				String annotation_identity = lines.first(line);
 				
-				// Save the identity.
-				identities.add(annotation_identity);
+				// Save the identity, and count the annotation.
+				Integer count = identities.get(annotation_identity);
+				identities.put(annotation_identity, count == null ? 1 : count + 1);
 			}
 		}
-		catch (FileNotFoundException exception)
+		catch (IOException exception)
 		{
 			// If we're given a bad file, let the user know.
-			System.out.println("Individual Labels file not found at:");
+			System.out.println("Individual To Class file could not be read at:");
 			System.out.println(filename);
 		}
 		
@@ -228,50 +318,266 @@ public class DiseaseComparisonDriver {
 	/*************/
 
 	/*
-	 * The DiseaseComparisonMapper and DiseaseComparisonReducer classes allow
-	 * us to use MapReduce to parallelize disease comparison.
+	 * In tiled mode, the TileInputFormat and TileMapper classes take the
+	 * place of the PairInputFormat and DiseaseComparisonReducer classes.
+	 * Each map call scores a whole tile and there is no reduce.
 	 */
-	private static class DiseaseComparisonMapper extends Mapper<LongWritable, Text, Text, Text>
+	private static class TileMapper extends Mapper<NullWritable, TileInputFormat.Tile, Writable, NullWritable>
 	{
+		// Keep track of the ontology so we don't rebuild it too many times.
+		private Ontology ontology = null;
+		
+		// Keep track of the sorted identifiers of the diseases, and the index
+		// of each in the ontology.
+		private List<String> identities;
+		private int [] indices;
+		
+		// Keep track of the engine which computes the measures, and write
+		// each line into the same buffer and text.
+		private MeasureEngine engine = null;
+		private LineFormatter formatter = null;
+		private Text line = new Text();
+		
+		// If we're writing binary output, write each pair into the same
+		// record instead.
+		private ScoreRecord record = null;
+		
+		// If we're only comparing diseases which share a subsumer above the
+		// IC floor, keep track of the index we find them with.
+		private AncestorIndex index = null;
+		
+		// The first row of the band the engine is keeping closures for.
+		private int band_start = -1;
+		
+		// Keep track of what the task spends its time on.
+		private TaskCounters counters = null;
+		
+		/*
+		 * setup
+		 * Arguments:
+		 * 		context: The object which lets us see the job configuration.
+		 * This function gets the ontology and the list of diseases before we
+		 * process any tiles.
+		 */
+		protected void setup(Context context)
+				throws IOException, InterruptedException
+		{
+			Configuration conf = context.getConfiguration();
+			ontology = SharedOntology.get(conf);
+			counters = new TaskCounters(context, ontology, SharedOntology.claimBuild());
+			engine = new MeasureEngine(ontology);
+			formatter = new LineFormatter(engine, new LineFormatter.Dictionary(ontology));
+			identities = PairInputFormat.readIndividuals(conf);
+			indices = new int[identities.size()];
+			for (int i = 0; i < indices.length; i++)
+			{
+				indices[i] = ontology.getIndividualIndex(identities.get(i));
+			}
+			if (ontology.getOptions().getICFloor() > 0)
+			{
+				index = new AncestorIndex(ontology, indices, ontology.getOptions().getICFloor());
+			}
+			if (ontology.getOptions().getOutputFormat().equals(BinaryResults.BINARY))
+			{
+				record = new ScoreRecord();
+				BinaryResults.writeDictionary(context, ontology, identities);
+			}
+		}
+		
 		/*
 		 * map
 		 * Arguments:
-		 * 		offset: The offset of the line to process (unused).
-		 * 		line_text: A line of the input, consisting of two tab-separated
-		 * 			disease identifiers.
-		 * 		context: The object which lets us pass output to the reducer.
-		 * This function divides the work of comparing diseases, then sends the
-		 * pieces to the reducer.
+		 * 		key: Nothing (unused).
+		 * 		tile: The block of rows and columns to compare.
+		 * 		context: The object which lets us pass output to the driver.
+		 * This function compares every pair of diseases in the tile.
 		 */
-		public void map(LongWritable offset, Text line_text, Context context)
+		public void map(NullWritable key, TileInputFormat.Tile tile, Context context)
 				throws IOException, InterruptedException
 		{
-			// We can't process Text, so convert the input to a String.
-			String line = line_text.toString();
+			// The tiles of a split share their rows, so only work out what the
+			// rows need when we reach a new band.
+			if (tile.getRowStart() != band_start)
+			{
+				band_start = tile.getRowStart();
+				engine.keepClosures(Arrays.copyOfRange(indices, tile.getRowStart(), tile.getRowEnd()));
+			}
 			
-			// Extract the diseases.
-			String [] pieces = line.split("\t");
-			String first_identity = pieces[0];
-			String second_identity = pieces[1];
+			// Copy out the diseases of the column block once, so the inner
+			// loop only touches this tile's data.
+			int column_start = tile.getColumnStart();
+			int column_count = tile.getColumnEnd() - column_start;
+			String [] column_identities = new String[column_count];
+			int [] column_indices = new int[column_count];
+			for (int i = 0; i < column_count; i++)
+			{
+				column_identities[i] = identities.get(column_start + i);
+				column_indices[i] = indices[column_start + i];
+			}
+			int [] all_columns = new int[column_count];
+			for (int i = 0; i < column_count; i++)
+			{
+				all_columns[i] = i;
+			}
 			
-			// Hadoop can't handle Strings, so convert back to Text.
-			Text first_text = new Text(first_identity);
-			Text second_text = new Text(second_identity);
-						
-			// Send the pair of diseases to the reducer for processing.
-			context.write(first_text, second_text);
+			for (int row = tile.getRowStart(); row < tile.getRowEnd(); row++)
+			{
+				String row_identity = identities.get(row);
+				
+				// With an IC floor, only visit the candidates in this tile.
+				int [] columns = all_columns;
+				if (index != null)
+				{
+					IntList in_tile = new IntList();
+					for (int column : index.candidates(row))
+					{
+						if (column >= column_start && column < column_start + column_count)
+						{
+							in_tile.add(column - column_start);
+						}
+					}
+					columns = in_tile.toArray();
+				}
+				
+				for (int i : columns)
+				{
+					if (!tile.contains(row, column_start + i))
+					{
+						continue;
+					}
+					
+					// If we're writing binary output, just pass the record on.
+					long start = System.nanoTime();
+					if (record != null)
+					{
+						record.set(row, column_start + i,
+								engine.summarize(indices[row], column_indices[i]), engine.getMeasures());
+						start = counters.scored(indices[row], column_indices[i], start);
+						context.write(record, NullWritable.get());
+						counters.written(start);
+						continue;
+					}
+					
+					// Get the next line of the output.
+					formatter.clear();
+					formatter.append(row_identity, indices[row],
+							column_identities[i], column_indices[i]);
+					
+					// Pass the output to the driver.
+					line.set(formatter.getBytes(), 0, formatter.getLength());
+					start = counters.scored(indices[row], column_indices[i], start);
+					context.write(line, NullWritable.get());
+					counters.written(start);
+				}
+			}
+		}
+		
+		/*
+		 * cleanup
+		 * Arguments:
+		 * 		context: The object which lets us report counters.
+		 * This function reports what the task did once it has seen every
+		 * tile.
+		 */
+		protected void cleanup(Context context)
+				throws IOException, InterruptedException
+		{
+			counters.report();
 		}
 	}
 	
 	/*
-	 * The DiseaseComparisonMapper and DiseaseComparisonReducer classes allow
-	 * us to use MapReduce to parallelize disease comparison.
-	 */	
-	private static class DiseaseComparisonReducer extends Reducer<Text, Text, Text, Text>
+	 * The PairInputFormat and DiseaseComparisonReducer classes allow us to
+	 * use MapReduce to parallelize disease comparison.
+	 */
+	private static class DiseaseComparisonReducer extends Reducer<Text, Text, Writable, NullWritable>
 	{
 		// Keep track of the ontology so we don't rebuild it too many times.
 		private Ontology ontology = null;
 		
+		// Keep track of the engine which computes the measures, and write
+		// each line into the same buffer and text.
+		private MeasureEngine engine = null;
+		private LineFormatter formatter = null;
+		private Text line = new Text();
+		
+		// If we're writing binary output, write each pair into the same
+		// record instead.
+		private ScoreRecord record = null;
+		
+		// If we're keeping the best matches for each disease, keep track of
+		// the sorted identifiers of the diseases, the position of each in
+		// that list, and the index of each in the ontology.
+		private List<String> identities = null;
+		private Map<String, Integer> positions = null;
+		private int [] indices = null;
+		
+		// If we're pruning the search for the best matches, keep track of
+		// the bounds we search by.
+		private TopKSearch search = null;
+		
+		// If we're only comparing diseases which share a subsumer above the
+		// IC floor, keep track of the index we find them with.
+		private AncestorIndex index = null;
+		
+		// Keep track of what the task spends its time on.
+		private TaskCounters counters = null;
+		
+		/*
+		 * setup
+		 * Arguments:
+		 * 		context: The object which lets us see the job configuration.
+		 * This function gets the ontology before we process any diseases.
+		 * It is only built once per JVM, however many tasks the JVM runs.
+		 */
+		protected void setup(Context context)
+				throws IOException, InterruptedException
+		{
+			Configuration conf = context.getConfiguration();
+			ontology = SharedOntology.get(conf);
+			counters = new TaskCounters(context, ontology, SharedOntology.claimBuild());
+			engine = new MeasureEngine(ontology);
+			formatter = new LineFormatter(engine, new LineFormatter.Dictionary(ontology));
+			
+			// If the measures aren't symmetric, each first disease gets every
+			// second disease. If we're scoring all of those pairs, it pays to
+			// find the least common subsumers of its classes with all the
+			// target classes up front and reuse them.
+			Options options = ontology.getOptions();
+			boolean use_rows = !options.getSymmetric() &&
+					options.getTopK() == 0 && options.getICFloor() <= 0;
+			
+			boolean binary = options.getOutputFormat().equals(BinaryResults.BINARY);
+			if (options.getTopK() > 0 || options.getICFloor() > 0 || use_rows || binary)
+			{
+				identities = PairInputFormat.readIndividuals(conf);
+				positions = new HashMap<String, Integer>();
+				indices = new int[identities.size()];
+				for (int i = 0; i < indices.length; i++)
+				{
+					positions.put(identities.get(i), i);
+					indices[i] = ontology.getIndividualIndex(identities.get(i));
+				}
+				if (options.getTopK() > 0 && options.getPruneTopK())
+				{
+					search = new TopKSearch(ontology, indices);
+				}
+				if (options.getICFloor() > 0)
+				{
+					index = new AncestorIndex(ontology, indices, options.getICFloor());
+				}
+				if (use_rows)
+				{
+					engine.setMicaRows(new MicaRows(ontology, indices));
+				}
+				if (binary)
+				{
+					record = new ScoreRecord();
+					BinaryResults.writeDictionary(context, ontology, identities);
+				}
+			}
+		}
+		
 		/*
 		 * reduce
 		 * Arguments:
@@ -285,36 +591,139 @@ public class DiseaseComparisonDriver {
 		public void reduce(Text first_text, Iterable<Text> second_texts, Context context)
 				throws IOException, InterruptedException
 		{
-			// Construct an ontology if we don't have one already.
-			if (ontology == null)
+			// Convert the identifier for the first disease to a string, and
+			// look up its index.
+			String first_identity = first_text.toString();
+			int first = ontology.getIndividualIndex(first_identity);
+			
+			// With an IC floor, find the diseases worth comparing it with.
+			int [] candidates = null;
+			if (index != null)
 			{
-				// Get the input files.
-				Configuration conf = context.getConfiguration();
-				String class_labels = conf.get("class-labels");
-				String class_to_class = conf.get("class-to-class");
-				String individual_to_class = conf.get("individual-to-class");
-				String individual_labels = conf.get("individual-labels");
-				
-				// Build the ontology.
-				ontology = new Ontology(class_labels, class_to_class, individual_to_class, individual_labels);
+				candidates = index.candidates(positions.get(first_identity));
 			}
 			
-			// Convert the identifier for the first disease to a string.
-			String first_identity = first_text.toString();
+			// If we're keeping the best matches, only write those out.
+			int top_k = ontology.getOptions().getTopK();
+			if (top_k > 0)
+			{
+				// Keep the best matches as we score each second disease. If
+				// we're pruning, gather the second diseases first so we can
+				// score them in order of their bounds. Either way, the
+				// scoring counts now, and writing the matches counts later.
+				TopKHeap best_matches = new TopKHeap(top_k);
+				if (search != null)
+				{
+					IntList seconds = new IntList();
+					for (Text second_text : second_texts)
+					{
+						int position = positions.get(second_text.toString());
+						if (candidates == null || Arrays.binarySearch(candidates, position) >= 0)
+						{
+							seconds.add(position);
+						}
+					}
+					long start = System.nanoTime();
+					int scored = search.search(first, seconds, best_matches);
+					counters.searched(first, scored, seconds.size() - scored, start);
+				}
+				else
+				{
+					for (Text second_text : second_texts)
+					{
+						int position = positions.get(second_text.toString());
+						if (candidates != null && Arrays.binarySearch(candidates, position) < 0)
+						{
+							continue;
+						}
+						long start = System.nanoTime();
+						double score = DiseaseComparisonMeasures.maxIC(ontology, first, indices[position]);
+						best_matches.offer(score, position);
+						counters.scored(first, indices[position], start);
+					}
+				}
+				
+				// Write out the best matches, best first.
+				for (int position : best_matches.sortedMatches())
+				{
+					writePair(context, first_identity, first, identities.get(position), indices[position], true);
+				}
+				return;
+			}
 			
 			// Iterate through each possible second disease.
 			for (Text second_text : second_texts)
 			{
 				// Convert the identifier for each second disease to a string.
 				String second_identity = second_text.toString();
+				
+				// Skip it if it doesn't share a subsumer above the floor.
+				if (candidates != null &&
+						Arrays.binarySearch(candidates, positions.get(second_identity)) < 0)
+				{
+					continue;
+				}
 						
-				// Get the next line of the output.
-				String line_output = processOutput(ontology, first_identity, second_identity);
+				// Pass the next line of the output to the driver.
+				writePair(context, first_identity, first, second_identity,
+						ontology.getIndividualIndex(second_identity), false);
+			}
+		}
 				
-				// Pass the output to the driver, along with a dummy string.
-				context.write(new Text(line_output), new Text());
+		/*
+		 * writePair
+		 * Arguments:
+		 * 		context: The object which lets us pass output to the driver.
+		 * 		first_identity: The identifier for the first disease.
+		 * 		first: The index of the first disease, or -1.
+		 * 		second_identity: The identifier for the second disease.
+		 * 		second: The index of the second disease, or -1.
+		 * 		counted: Whether the pair was already counted as scored, as
+		 * 			the best matches are, so building its line or record
+		 * 			counts as writing.
+		 * This function compares the two diseases and writes out the line or
+		 * record for them.
+		 */
+		private void writePair(Context context, String first_identity, int first,
+				String second_identity, int second, boolean counted)
+				throws IOException, InterruptedException
+		{
+			long start = System.nanoTime();
+			if (record != null)
+			{
+				record.set(positions.get(first_identity), positions.get(second_identity),
+						engine.summarize(first, second), engine.getMeasures());
+				if (!counted)
+				{
+					start = counters.scored(first, second, start);
+				}
+				context.write(record, NullWritable.get());
+				counters.written(start);
+				return;
+			}
+			formatter.clear();
+			formatter.append(first_identity, first, second_identity, second);
+			line.set(formatter.getBytes(), 0, formatter.getLength());
+			if (!counted)
+			{
+				start = counters.scored(first, second, start);
 			}
-		}		
+			context.write(line, NullWritable.get());
+			counters.written(start);
+		}
+		
+		/*
+		 * cleanup
+		 * Arguments:
+		 * 		context: The object which lets us report counters.
+		 * This function reports what the task did once it has seen every
+		 * disease.
+		 */
+		protected void cleanup(Context context)
+				throws IOException, InterruptedException
+		{
+			counters.report();
+		}
 	}
 	
 	/********/
@@ -323,27 +732,72 @@ public class DiseaseComparisonDriver {
 	
 	public static void main(String [] args)
 	{		
+		boolean succeeded = true;
 		try
 		{
-			// Compare all pairs of diseases.
-			compareAllDiseases(
-				// Class labels
-				args[0],
-				// Class to class
-				args[1],
-				// Individual to class
-				args[2],
-				// Individual labels
-				args[3]
-			);
+			// Pull out the flags, leaving the input files.
+			List<String> files = new ArrayList<String>();
+			boolean local = false;
+			int threads = Runtime.getRuntime().availableProcessors();
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--local"))
+				{
+					local = true;
+				}
+				else if (args[i].equals("--threads"))
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				else
+				{
+					files.add(args[i]);
+				}
+			}
+			
+			// Compare all pairs of diseases, either on this machine or with
+			// Hadoop.
+			if (local)
+			{
+				compareAllDiseasesLocally(
+					// Class labels
+					files.get(0),
+					// Class to class
+					files.get(1),
+					// Individual labels
+					files.get(2),
+					// Individual to class
+					files.get(3),
+					threads
+				);
+			}
+			else
+			{
+				succeeded = compareAllDiseases(
+					// Class labels
+					files.get(0),
+					// Class to class
+					files.get(1),
+					// Individual labels
+					files.get(2),
+					// Individual to class
+					files.get(3)
+				);
+			}
 		}
 		catch (Exception e)
 		{
 			// Complain if something fails.
 			System.out.println(e.toString());
 			e.printStackTrace();
+			succeeded = false;
 		}
 		
+		if (!succeeded)
+		{
+			System.out.println("Disease Comparison Failed");
+			System.exit(1);
+		}
 		System.out.println("Disease Comparison Completed");		
 	}
 
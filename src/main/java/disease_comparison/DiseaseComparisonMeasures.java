@@ -1,12 +1,202 @@
 package disease_comparison;
 
-import java.util.Map;
-import java.util.Set;
-
 public class DiseaseComparisonMeasures {
 	
-	// TODO: Add comparison measures.
-	// We've only provided a test example here.
+	/************/
+	/* Measures */
+	/************/
+	
+	/*
+	 * The MaxIC class is the highest IC score of a least common subsumer of
+	 * a class from each disease.
+	 */
+	public static class MaxIC implements SimilarityMeasure
+	{
+		public String getName() { return "max_ic"; }
+		public boolean isSymmetric() { return true; }
+		public boolean needsPairs() { return true; }
+		public boolean needsClosures() { return false; }
+		public boolean needsUnsharedIC() { return false; }
+		
+		public double score(PairSummary summary)
+		{
+			return summary.getMaxIC();
+		}
+	}
+	
+	/*
+	 * The SimJ class is the Jaccard similarity of the subsumers of the two
+	 * diseases: how many they share out of how many they have between them.
+	 */
+	public static class SimJ implements SimilarityMeasure
+	{
+		public String getName() { return "sim_j"; }
+		public boolean isSymmetric() { return true; }
+		public boolean needsPairs() { return false; }
+		public boolean needsClosures() { return true; }
+		public boolean needsUnsharedIC() { return false; }
+		
+		public double score(PairSummary summary)
+		{
+			if (summary.getUnionCount() == 0)
+			{
+				return 0;
+			}
+			return (double)summary.getSharedCount() / summary.getUnionCount();
+		}
+	}
+	
+	/*
+	 * The SimGIC class is like SimJ, but weights each subsumer by its IC
+	 * score.
+	 */
+	public static class SimGIC implements SimilarityMeasure
+	{
+		public String getName() { return "sim_gic"; }
+		public boolean isSymmetric() { return true; }
+		public boolean needsPairs() { return false; }
+		public boolean needsClosures() { return true; }
+		public boolean needsUnsharedIC() { return true; }
+		
+		public double score(PairSummary summary)
+		{
+			if (summary.getUnionIC() <= 0)
+			{
+				return 0;
+			}
+			return summary.getSharedIC() / summary.getUnionIC();
+		}
+	}
+	
+	/*
+	 * The ResnikAverage class is the average IC score of the least common
+	 * subsumers of all pairs of classes.
+	 */
+	public static class ResnikAverage implements SimilarityMeasure
+	{
+		public String getName() { return "resnik_average"; }
+		public boolean isSymmetric() { return true; }
+		public boolean needsPairs() { return true; }
+		public boolean needsClosures() { return false; }
+		public boolean needsUnsharedIC() { return false; }
+		
+		public double score(PairSummary summary)
+		{
+			long pairs = (long)summary.getFirstCount() * summary.getSecondCount();
+			if (pairs == 0)
+			{
+				return 0;
+			}
+			return summary.getICTotal() / pairs;
+		}
+	}
+	
+	/*
+	 * The ResnikBestMatchAverage class matches each class with its best
+	 * partner in the other disease, by IC score of their least common
+	 * subsumer, and averages the two directions.
+	 */
+	public static class ResnikBestMatchAverage implements SimilarityMeasure
+	{
+		public String getName() { return "resnik_bma"; }
+		public boolean isSymmetric() { return true; }
+		public boolean needsPairs() { return true; }
+		public boolean needsClosures() { return false; }
+		public boolean needsUnsharedIC() { return false; }
+		
+		public double score(PairSummary summary)
+		{
+			return bestMatchAverage(summary,
+					summary.getFirstBestICTotal(), summary.getSecondBestICTotal());
+		}
+	}
+	
+	/*
+	 * The LinBestMatchAverage class is like ResnikBestMatchAverage, but
+	 * uses the Lin similarity of each pair of classes, which is the IC score
+	 * of their least common subsumer over the average of their own.
+	 */
+	public static class LinBestMatchAverage implements SimilarityMeasure
+	{
+		public String getName() { return "lin_bma"; }
+		public boolean isSymmetric() { return true; }
+		public boolean needsPairs() { return true; }
+		public boolean needsClosures() { return false; }
+		public boolean needsUnsharedIC() { return true; }
+		
+		public double score(PairSummary summary)
+		{
+			return bestMatchAverage(summary,
+					summary.getFirstBestLinTotal(), summary.getSecondBestLinTotal());
+		}
+	}
+	
+	/*
+	 * The ResnikQueryBestMatchAverage class matches each class of the first
+	 * disease, the query, with its best partner in the second, the target,
+	 * and averages over the query only. It isn't symmetric.
+	 */
+	public static class ResnikQueryBestMatchAverage implements SimilarityMeasure
+	{
+		public String getName() { return "resnik_query_bma"; }
+		public boolean isSymmetric() { return false; }
+		public boolean needsPairs() { return true; }
+		public boolean needsClosures() { return false; }
+		public boolean needsUnsharedIC() { return false; }
+		
+		public double score(PairSummary summary)
+		{
+			if (summary.getFirstCount() == 0)
+			{
+				return 0;
+			}
+			return summary.getFirstBestICTotal() / summary.getFirstCount();
+		}
+	}
+	
+	/*
+	 * The LinQueryBestMatchAverage class is like
+	 * ResnikQueryBestMatchAverage, but uses the Lin similarity.
+	 */
+	public static class LinQueryBestMatchAverage implements SimilarityMeasure
+	{
+		public String getName() { return "lin_query_bma"; }
+		public boolean isSymmetric() { return false; }
+		public boolean needsPairs() { return true; }
+		public boolean needsClosures() { return false; }
+		public boolean needsUnsharedIC() { return true; }
+		
+		public double score(PairSummary summary)
+		{
+			if (summary.getFirstCount() == 0)
+			{
+				return 0;
+			}
+			return summary.getFirstBestLinTotal() / summary.getFirstCount();
+		}
+	}
+	
+	/*
+	 * bestMatchAverage
+	 * Arguments:
+	 * 		summary: What the engine found out about the two diseases.
+	 * 		first_total: The sum of the best matches of the first profile.
+	 * 		second_total: The sum of the best matches of the second profile.
+	 * This function averages the best matches in each direction, then
+	 * averages the two directions.
+	 */
+	private static double bestMatchAverage(PairSummary summary, double first_total, double second_total)
+	{
+		if (summary.getFirstCount() == 0 || summary.getSecondCount() == 0)
+		{
+			return 0;
+		}
+		return (first_total / summary.getFirstCount() + second_total / summary.getSecondCount()) / 2;
+	}
+	
+	/*********************/
+	/* Direct Comparison */
+	/*********************/
 	
 	/*
 	 * maxIC
@@ -18,48 +208,69 @@ public class DiseaseComparisonMeasures {
 	 */
 	public static double maxIC(Ontology ontology, String first_identity, String second_identity) {
 		
-		// Get the relevant data from the ontology.
-		Map<String, Set<String>> annotation_map = ontology.getAnnotationMap();
-		Map<String, OntologyNode> node_map = ontology.getNodeMap();
+		// Look up the indices of the two diseases and compare those.
+		return maxIC(ontology,
+				ontology.getIndividualIndex(first_identity),
+				ontology.getIndividualIndex(second_identity));
 		
-		// Find all the nodes associated with each disease.
-		Set<String> first_nodes = annotation_map.get(first_identity);
-		Set<String> second_nodes = annotation_map.get(second_identity);
+	}
+	
+	/*
+	 * maxIC
+	 * Arguments:
+	 * 		ontology: The ontology in which to compare the two diseases.
+	 * 		first: The index of the first disease.
+	 * 		second: The index of the second disease.
+	 * This function computes the maxIC measure for the two given diseases.
+	 */
+	public static double maxIC(Ontology ontology, int first, int second) {
+		
+		// Keep track of the best IC score we've seen.
+		int best_lcs = bestLCS(ontology, first, second);
 		
 		// FIXME: Handle invalid sets better.
-		if (first_nodes == null || second_nodes == null)
+		if (best_lcs < 0)
 		{
 			return 0;
 		}
-
+		
+		// Return the best IC score.
+		return ontology.getICScore(best_lcs);
+		
+	}
+	
+	/*
+	 * maxIC
+	 * Arguments:
+	 * 		ontology: The ontology in which to compare the two diseases.
+	 * 		first_nodes: The indices of the classes of the first profile,
+	 * 			which needn't belong to any disease.
+	 * 		second: The index of the second disease.
+	 * This function computes the maxIC measure for the given profile and
+	 * disease.
+	 */
+	public static double maxIC(Ontology ontology, int [] first_nodes, int second) {
+		
+		// FIXME: Handle invalid sets better.
+		if (second < 0)
+		{
+			return 0;
+		}
+		
 		// Keep track of the best IC score we've seen.
+		CompressedRows profiles = ontology.getProfiles();
 		double best_ic = 0;
-		
-		// Look at the nodes associated with each annotation.
-		for (String first_node_identity : first_nodes)
+		for (int first_node : first_nodes)
 		{
-			for (String second_node_identity : second_nodes)
+			for (int j = profiles.start(second); j < profiles.end(second); j++)
 			{
-				// Find the least common subsumer for the two nodes.
-				String lcs = ontology.computeLCS(first_node_identity, second_node_identity);
-				
-				// FIXME: Handle invalid nodes better.
-				if (node_map.get(lcs) == null)
-				{
-					continue;
-				}
-				
-				double lcs_ic = node_map.get(lcs).getICScore();
-				
-				// If the LCS has a better IC score, update our best.
-				if (lcs_ic > best_ic)
+				int lcs = ontology.computeLCS(first_node, profiles.get(j));
+				if (lcs >= 0)
 				{
-					best_ic = lcs_ic;
+					best_ic = Math.max(best_ic, ontology.getICScore(lcs));
 				}
 			}
 		}
-		
-		// Return the best IC score.
 		return best_ic;
 		
 	}
@@ -68,38 +279,66 @@ public class DiseaseComparisonMeasures {
 	public static String bestLCS(Ontology ontology, String first_identity, String second_identity) {
 		
 		// Get the relevant data from the ontology.
-		Map<String, Set<String>> annotation_map = ontology.getAnnotationMap();
-		Map<String, OntologyNode> node_map = ontology.getNodeMap();
-		
-		// Find all the nodes associated with each disease.
-		Set<String> first_nodes = annotation_map.get(first_identity);
-		Set<String> second_nodes = annotation_map.get(second_identity);
+		int first = ontology.getIndividualIndex(first_identity);
+		int second = ontology.getIndividualIndex(second_identity);
 		
 		// FIXME: Handle invalid sets better.
-		if (first_nodes == null || second_nodes == null)
+		if (first < 0 || second < 0)
 		{
 			return "INVALID SETS";
 		}
+		
+		int best_lcs = bestLCS(ontology, first, second);
+		if (best_lcs < 0)
+		{
+			return "NO LCS FOUND";
+		}
+		
+		// Return the identifier of the best LCS.
+		return ontology.getClassIdentity(best_lcs);
+		
+	}
+	
+	/*
+	 * bestLCS
+	 * Arguments:
+	 * 		ontology: The ontology in which to compare the two diseases.
+	 * 		first: The index of the first disease.
+	 * 		second: The index of the second disease.
+	 * This function finds the least common subsumer with the highest IC
+	 * score over all pairs of nodes associated with the two diseases, and
+	 * returns its index, or -1 if there isn't one.
+	 */
+	public static int bestLCS(Ontology ontology, int first, int second) {
+		
+		// FIXME: Handle invalid sets better.
+		if (first < 0 || second < 0)
+		{
+			return -1;
+		}
+		
+		// Find all the nodes associated with each disease.
+		CompressedRows profiles = ontology.getProfiles();
 
 		// Keep track of the best IC score we've seen.
 		double best_ic = 0;
-		String best_lcs = "NO LCS FOUND";
+		int best_lcs = -1;
 		
 		// Look at the nodes associated with each annotation.
-		for (String first_node_identity : first_nodes)
+		for (int i = profiles.start(first); i < profiles.end(first); i++)
 		{
-			for (String second_node_identity : second_nodes)
+			for (int j = profiles.start(second); j < profiles.end(second); j++)
 			{
 				// Find the least common subsumer for the two nodes.
-				String lcs = ontology.computeLCS(first_node_identity, second_node_identity);
+				int lcs = ontology.computeLCS(profiles.get(i), profiles.get(j));
 								
 				// FIXME: Handle invalid nodes better.
-				if (node_map.get(lcs) == null)
+				if (lcs < 0)
 				{
 					continue;
 				}
 				
-				double lcs_ic = node_map.get(lcs).getICScore();
+				double lcs_ic = ontology.getICScore(lcs);
 				
 				// If the LCS has a better IC score, update our best.
 				if (lcs_ic > best_ic)
@@ -110,7 +349,7 @@ public class DiseaseComparisonMeasures {
 			}
 		}
 		
-		// Return the best IC score.
+		// Return the best LCS.
 		return best_lcs;
 		
 	}
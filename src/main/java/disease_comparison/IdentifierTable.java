@@ -0,0 +1,90 @@
+package disease_comparison;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The IdentifierTable class interns string identifiers as dense integers.
+ * Strings are only needed when reading input files and writing output, so
+ * everything in between can work with array indices instead.
+ */
+public class IdentifierTable {
+
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// Look up the index of an identifier.
+	private Map<String, Integer> index_map;
+	
+	// Look up the identifier at an index.
+	private List<String> identities;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public IdentifierTable()
+	{
+		// We haven't seen any identifiers yet.
+		index_map = new HashMap<String, Integer>();
+		identities = new ArrayList<String>();
+	}
+	
+	/************/
+	/* Mutators */
+	/************/
+	
+	/*
+	 * intern
+	 * Arguments:
+	 * 		identity: The identifier to look up.
+	 * This function returns the index of the given identifier, assigning it
+	 * the next free index if we haven't seen it before.
+	 */
+	public int intern(String identity)
+	{
+		Integer index = index_map.get(identity);
+		if (index == null)
+		{
+			index = identities.size();
+			index_map.put(identity, index);
+			identities.add(identity);
+		}
+		return index;
+	}
+	
+	/***********************/
+	/* Getters and Setters */
+	/***********************/
+	
+	/*
+	 * indexOf
+	 * Arguments:
+	 * 		identity: The identifier to look up.
+	 * This function returns the index of the given identifier, or -1 if we
+	 * haven't seen it.
+	 */
+	public int indexOf(String identity)
+	{
+		Integer index = index_map.get(identity);
+		if (index == null)
+		{
+			return -1;
+		}
+		return index;
+	}
+	
+	public String identity(int index)
+	{
+		return identities.get(index);
+	}
+	
+	public int size()
+	{
+		return identities.size();
+	}
+	
+}
@@ -0,0 +1,456 @@
+package disease_comparison;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * The IncrementalUpdate class brings the results of a previous run up to
+ * date with some new annotations, without comparing every pair again.
+ * 
+ * The ontology is read back from the previous run's snapshot, and the new
+ * annotations are added to it, which only recomputes the IC scores of the
+ * classes the changed profiles newly reach. The snapshot also records the
+ * reference IC score of each class, which the kept lines were scored
+ * with. A class has moved if its IC score is more than incremental_epsilon
+ * away from its reference. Every pair sharing a moved class is scored
+ * again, so its reference becomes its new score, while the other classes
+ * keep theirs, so small moves add up over several updates rather than
+ * being forgotten. A pair of diseases is scored again if either profile
+ * changed, or if they share a subsumer which moved, since the other least
+ * common subsumers moved too little to matter. If any measure looks at
+ * the IC scores of classes the diseases don't share, a moved subsumer of
+ * either disease is enough. Every other line of the previous results is
+ * copied over as it was, and the pairs with diseases we haven't seen
+ * before are added at the end.
+ * 
+ * With an epsilon of zero, the results are the same as a full run, apart
+ * from the order of the lines. Otherwise, each IC score behind a kept line
+ * is within epsilon of its current value, or within twice epsilon if the
+ * line was scored again for a changed profile since the class last moved.
+ */
+public class IncrementalUpdate {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The ontology the previous results came from, and the one with the new
+	// annotations.
+	private Ontology previous;
+	private Ontology current;
+	
+	// Whether every pair with each individual has to be scored again.
+	private boolean [] changed;
+	
+	// The sorted subsumers of each individual whose IC score moved.
+	private int [][] moved_subsumers;
+	private int moved_count;
+	
+	// Whether a moved subsumer of either disease is enough to score a pair
+	// again.
+	private boolean needs_unshared_ic;
+	
+	// How many lines we kept, scored again and added.
+	private long kept_count;
+	private long rescored_count;
+	private long added_count;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	/*
+	 * Arguments:
+	 * 		new_previous: The ontology the previous results came from.
+	 * 		new_current: The same ontology with the new annotations added, by
+	 * 			Ontology.addAnnotations.
+	 */
+	public IncrementalUpdate(Ontology new_previous, Ontology new_current)
+	{
+		previous = new_previous;
+		current = new_current;
+		Options options = current.getOptions();
+		double epsilon = options.getIncrementalEpsilon();
+		
+		// Find the classes whose IC scores moved away from the scores the
+		// previous results used, and the ones which became important or
+		// stopped being important. The classes which moved will be scored
+		// with their new IC scores from now on.
+		int class_count = current.getClassCount();
+		boolean [] moved = new boolean[class_count];
+		boolean [] flipped = new boolean[class_count];
+		double [] reference_ic_scores = new double[class_count];
+		moved_count = 0;
+		for (int node = 0; node < class_count; node++)
+		{
+			double before = previous.getReferenceICScore(node);
+			double after = current.getICScore(node);
+			moved[node] = before != after && !(Math.abs(after - before) <= epsilon);
+			flipped[node] = previous.isImportant(node) != current.isImportant(node);
+			reference_ic_scores[node] = moved[node] ? after : before;
+			if (moved[node])
+			{
+				moved_count++;
+			}
+		}
+		current.setReferenceICScores(reference_ic_scores);
+		
+		// If we're projecting, a class stands for its important ancestors, so
+		// it changes along with any of them.
+		CompressedRows ancestors = current.getAncestors();
+		if (options.getUseThresholding() && options.getProjectUnimportant())
+		{
+			boolean [] reprojected = new boolean[class_count];
+			for (int node = 0; node < class_count; node++)
+			{
+				for (int i = ancestors.start(node); i < ancestors.end(node); i++)
+				{
+					reprojected[node] |= flipped[ancestors.get(i)];
+				}
+			}
+			flipped = reprojected;
+		}
+		
+		// An individual has changed if it's new, gained annotations, or has a
+		// class whose importance changed, since that changes which least
+		// common subsumers thresholding allows.
+		CompressedRows previous_profiles = previous.getProfiles();
+		CompressedRows profiles = current.getProfiles();
+		int individual_count = current.getIndividualCount();
+		changed = new boolean[individual_count];
+		moved_subsumers = new int[individual_count][];
+		int [] stamps = new int[class_count];
+		Arrays.fill(stamps, -1);
+		IntList gathered = new IntList();
+		for (int individual = 0; individual < individual_count; individual++)
+		{
+			changed[individual] = individual >= previous.getIndividualCount() ||
+					previous_profiles.size(individual) != profiles.size(individual);
+			gathered.clear();
+			for (int i = profiles.start(individual); i < profiles.end(individual); i++)
+			{
+				int node = profiles.get(i);
+				changed[individual] |= flipped[node];
+				for (int j = ancestors.start(node); j < ancestors.end(node); j++)
+				{
+					int subsumer = ancestors.get(j);
+					if (moved[subsumer] && stamps[subsumer] != individual)
+					{
+						stamps[subsumer] = individual;
+						gathered.add(subsumer);
+					}
+				}
+			}
+			moved_subsumers[individual] = gathered.toArray();
+			Arrays.sort(moved_subsumers[individual]);
+		}
+		
+		needs_unshared_ic = false;
+		for (SimilarityMeasure measure : options.getMeasures())
+		{
+			needs_unshared_ic |= measure.needsUnsharedIC();
+		}
+	}
+	
+	/**************/
+	/* Comparison */
+	/**************/
+	
+	/*
+	 * needsRescoring
+	 * Arguments:
+	 * 		first: The index of the first disease, or -1.
+	 * 		second: The index of the second disease, or -1.
+	 * This function checks whether the pair's previous line might be out of
+	 * date.
+	 */
+	public boolean needsRescoring(int first, int second)
+	{
+		// Diseases without annotations still don't have any.
+		if (first < 0 || second < 0)
+		{
+			return false;
+		}
+		if (changed[first] || changed[second])
+		{
+			return true;
+		}
+		
+		int [] first_moved = moved_subsumers[first];
+		int [] second_moved = moved_subsumers[second];
+		if (needs_unshared_ic)
+		{
+			return first_moved.length > 0 || second_moved.length > 0;
+		}
+		
+		// Both lists are sorted, so look for a shared one by walking through
+		// them together.
+		int i = 0;
+		int j = 0;
+		while (i < first_moved.length && j < second_moved.length)
+		{
+			if (first_moved[i] < second_moved[j])
+			{
+				i++;
+			}
+			else if (first_moved[i] > second_moved[j])
+			{
+				j++;
+			}
+			else
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/*
+	 * run
+	 * Arguments:
+	 * 		previous_directory: The output directory of the previous run.
+	 * 		filename: The path to write the updated results to.
+	 * This function copies the previous results to the new file, scoring
+	 * the pairs which need it again, and adds the pairs with new diseases.
+	 */
+	public void run(String previous_directory, String filename) throws IOException
+	{
+		// We find the pairs by their identities, and can only merge results
+		// which hold every pair.
+		Options options = current.getOptions();
+		if (!options.getShowIdentities() || options.getTopK() > 0 || options.getICFloor() > 0 ||
+				options.getOutputFormat().equals(BinaryResults.BINARY))
+		{
+			throw new IOException("Incremental updates need text results for every pair, with identities");
+		}
+		File [] parts = new File(previous_directory).listFiles();
+		if (parts == null)
+		{
+			throw new IOException("No previous results in " + previous_directory);
+		}
+		Arrays.sort(parts);
+		int second_column = options.getShowNames() ? 2 : 1;
+		
+		LineFormatter formatter = new LineFormatter(new MeasureEngine(current),
+				new LineFormatter.Dictionary(current));
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(filename), 1 << 20);
+		kept_count = 0;
+		rescored_count = 0;
+		added_count = 0;
+		try
+		{
+			// Copy or rescore every previous line, keeping track of the
+			// diseases we've seen.
+			Set<String> seen = new HashSet<String>();
+			for (File part : parts)
+			{
+				if (!part.getName().startsWith("part-"))
+				{
+					continue;
+				}
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(new FileInputStream(part), UTF8), 1 << 16);
+				try
+				{
+					for (String line = reader.readLine(); line != null; line = reader.readLine())
+					{
+						String [] pieces = line.split("\t", second_column + 2);
+						String first_identity = pieces[0];
+						String second_identity = pieces[second_column];
+						seen.add(first_identity);
+						seen.add(second_identity);
+						int first = current.getIndividualIndex(first_identity);
+						int second = current.getIndividualIndex(second_identity);
+						if (needsRescoring(first, second))
+						{
+							writePair(formatter, output, first_identity, second_identity);
+							rescored_count++;
+						}
+						else
+						{
+							output.write(line.getBytes(UTF8));
+							output.write('\n');
+							kept_count++;
+						}
+					}
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+			
+			// Find the diseases we haven't seen before.
+			Set<String> new_identities = new HashSet<String>();
+			for (int individual = 0; individual < current.getIndividualCount(); individual++)
+			{
+				String identity = current.getIndividualIdentity(individual);
+				if (!seen.contains(identity))
+				{
+					new_identities.add(identity);
+				}
+			}
+			List<String> all_identities = new ArrayList<String>(seen);
+			all_identities.addAll(new_identities);
+			Collections.sort(all_identities);
+			List<String> sorted_new_identities = new ArrayList<String>(new_identities);
+			Collections.sort(sorted_new_identities);
+			
+			// Compare each new disease with every other, in the same orders
+			// a full run would use.
+			boolean symmetric = options.getSymmetric();
+			for (String identity : sorted_new_identities)
+			{
+				for (String other : all_identities)
+				{
+					if (other.equals(identity))
+					{
+						continue;
+					}
+					boolean other_new = new_identities.contains(other);
+					if (symmetric)
+					{
+						// Pairs of new diseases only need to be written once, and
+						// the identity which sorts last goes first.
+						if (other_new && other.compareTo(identity) > 0)
+						{
+							continue;
+						}
+						if (identity.compareTo(other) > 0)
+						{
+							writePair(formatter, output, identity, other);
+						}
+						else
+						{
+							writePair(formatter, output, other, identity);
+						}
+						added_count++;
+					}
+					else
+					{
+						writePair(formatter, output, identity, other);
+						added_count++;
+						if (!other_new)
+						{
+							writePair(formatter, output, other, identity);
+							added_count++;
+						}
+					}
+				}
+			}
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+	
+	/*
+	 * writePair
+	 * Arguments:
+	 * 		formatter: The formatter to write the line with.
+	 * 		output: Where the lines go.
+	 * 		first_identity: The identifier for the first disease.
+	 * 		second_identity: The identifier for the second disease.
+	 * This function compares the two diseases and writes out their line.
+	 */
+	private void writePair(LineFormatter formatter, OutputStream output,
+			String first_identity, String second_identity) throws IOException
+	{
+		formatter.clear();
+		formatter.append(first_identity, current.getIndividualIndex(first_identity),
+				second_identity, current.getIndividualIndex(second_identity));
+		formatter.newLine();
+		formatter.writeTo(output);
+	}
+	
+	/***********/
+	/* Getters */
+	/***********/
+	
+	public int getMovedCount()
+	{
+		return moved_count;
+	}
+	
+	public long getKeptCount()
+	{
+		return kept_count;
+	}
+	
+	public long getRescoredCount()
+	{
+		return rescored_count;
+	}
+	
+	public long getAddedCount()
+	{
+		return added_count;
+	}
+	
+	/********/
+	/* Main */
+	/********/
+	
+	public static void main(String [] args)
+	{
+		try
+		{
+			// TODO: Don't use magic file path.
+			// Read back the previous run's ontology and add the new
+			// annotations to it.
+			Options options = new Options("ontology.config");
+			Ontology previous = OntologySnapshot.read(args[0], options);
+			Ontology current = previous.addAnnotations(
+				// New individual labels
+				args[3],
+				// New individual to class
+				args[2]
+			);
+			
+			// Don't overwrite the results we're reading.
+			File previous_directory = new File(args[1]);
+			File output_directory = new File(options.getOutputDirectory());
+			if (previous_directory.getCanonicalPath().equals(output_directory.getCanonicalPath()))
+			{
+				throw new IOException("The output directory must differ from the previous results");
+			}
+			
+			// Update the results, and save the new ontology for next time.
+			IncrementalUpdate update = new IncrementalUpdate(previous, current);
+			update.run(args[1], LocalComparisonEngine.outputFile(options.getOutputDirectory()));
+			OntologySnapshot.write(current, args[4]);
+			System.out.println(update.getMovedCount() + " classes moved; kept " +
+					update.getKeptCount() + " lines, rescored " + update.getRescoredCount() +
+					" and added " + update.getAddedCount());
+		}
+		catch (Exception e)
+		{
+			// Complain if something fails.
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+		
+		System.out.println("Incremental Update Completed");
+	}
+
+}
@@ -0,0 +1,85 @@
+package disease_comparison;
+
+import java.util.Arrays;
+
+/*
+ * The IntList class is a growable list of primitive integers.
+ * It lets us collect identifiers without boxing each one.
+ */
+public class IntList {
+
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The backing storage for the list.
+	private int [] values;
+	
+	// The number of values actually in the list.
+	private int size;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public IntList()
+	{
+		this(16);
+	}
+	
+	public IntList(int initial_capacity)
+	{
+		// Always keep at least one slot so that growing by doubling works.
+		values = new int[Math.max(1, initial_capacity)];
+		size = 0;
+	}
+	
+	/************/
+	/* Mutators */
+	/************/
+	
+	public void add(int value)
+	{
+		// Double the storage if we've run out of room.
+		if (size == values.length)
+		{
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[size++] = value;
+	}
+	
+	public void set(int index, int value)
+	{
+		values[index] = value;
+	}
+	
+	public void clear()
+	{
+		size = 0;
+	}
+	
+	/***********************/
+	/* Getters and Setters */
+	/***********************/
+	
+	public int get(int index)
+	{
+		return values[index];
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	public int [] toArray()
+	{
+		return Arrays.copyOf(values, size);
+	}
+	
+}
@@ -0,0 +1,380 @@
+package disease_comparison;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ * The LcsCache class remembers least common subsumers we've already
+ * computed. It holds a fixed number of entries, keyed by a packed pair of
+ * class indices, and evicts old entries once it is full.
+ * 
+ * Entries are grouped into small sets, and each key can only live in the
+ * set its hash picks. Eviction happens within a set, using either CLOCK
+ * (evict an entry that hasn't been used since the hand last passed) or
+ * LRU (evict the entry used longest ago). Sets are guarded by a fixed
+ * number of locks, so many threads can share one cache.
+ * 
+ * Only writers take the locks. A reader reads its set optimistically and
+ * checks that nothing was written under the same lock meanwhile, only
+ * falling back to the lock if something was, so hits never contend. Hits
+ * mark their entries as used without the lock, which can lose a mark
+ * under contention, so eviction order is only approximate then. The
+ * counts are kept in adders for the same reason.
+ */
+public class LcsCache {
+
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The eviction policies we know about.
+	public static final String CLOCK = "clock";
+	public static final String LRU = "lru";
+	
+	// The value returned for keys that aren't in the cache. Real entries are
+	// class indices or -1, so this can never collide with one.
+	public static final int MISSING = Integer.MIN_VALUE;
+	
+	// How many entries share a set.
+	private static final int WAYS = 8;
+	
+	// The most locks we use to guard the sets.
+	private static final int MAX_LOCKS = 64;
+	
+	// The most sets we'll make, so the number of slots fits in an array.
+	private static final int MAX_SETS = (1 << 30) / WAYS;
+	
+	// Marks an empty slot. Packed keys are never negative.
+	private static final long EMPTY = -1L;
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The key and value in each slot, WAYS slots per set.
+	private long [] keys;
+	private int [] values;
+	
+	// For CLOCK, whether each slot has been used since the hand passed it.
+	// For LRU, when each slot was last used.
+	private int [] stamps;
+	
+	// For CLOCK, the hand of each set. For LRU, the clock of each set.
+	private int [] hands;
+	
+	// Which eviction policy we're using.
+	private boolean use_lru;
+	
+	// The locks guarding the sets.
+	private StampedLock [] locks;
+	
+	// Keep track of how well the cache is doing.
+	private LongAdder hits;
+	private LongAdder misses;
+	private LongAdder evictions;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	/*
+	 * Arguments:
+	 * 		capacity: The most entries we want to hold. This is rounded up
+	 * 			so that it fills a power of two sets, up to 2^30 entries. A
+	 * 			capacity of zero or less turns the cache off.
+	 * 		policy: The eviction policy, either "clock" or "lru".
+	 */
+	public LcsCache(int capacity, String policy)
+	{
+		int set_count = slotCount(capacity) / WAYS;
+		keys = new long[set_count * WAYS];
+		Arrays.fill(keys, EMPTY);
+		values = new int[set_count * WAYS];
+		stamps = new int[set_count * WAYS];
+		hands = new int[set_count];
+		
+		use_lru = LRU.equalsIgnoreCase(policy);
+		
+		locks = new StampedLock[Math.max(1, Math.min(set_count, MAX_LOCKS))];
+		for (int i = 0; i < locks.length; i++)
+		{
+			locks[i] = new StampedLock();
+		}
+		
+		hits = new LongAdder();
+		misses = new LongAdder();
+		evictions = new LongAdder();
+	}
+	
+	/*
+	 * slotCount
+	 * Arguments:
+	 * 		capacity: The most entries we want to hold.
+	 * This function returns how many slots a cache with the given capacity
+	 * has. The number of sets is rounded up to a power of two so we can
+	 * pick a set with a mask, and clamped so the slots fit in an array.
+	 */
+	static int slotCount(int capacity)
+	{
+		if (capacity <= 0)
+		{
+			return 0;
+		}
+		int set_count = 1;
+		while ((long)set_count * WAYS < capacity && set_count < MAX_SETS)
+		{
+			set_count *= 2;
+		}
+		return set_count * WAYS;
+	}
+	
+	/**************/
+	/* Operations */
+	/**************/
+	
+	/*
+	 * get
+	 * Arguments:
+	 * 		key: The packed pair of class indices.
+	 * This function returns the cached value for the key, or MISSING if it
+	 * isn't in the cache.
+	 */
+	public int get(long key)
+	{
+		if (hands.length == 0)
+		{
+			misses.increment();
+			return MISSING;
+		}
+		
+		// Read the set without locking it. If anything was written under its
+		// lock while we did, read it again holding the lock.
+		int set = setOf(key);
+		int first_slot = set * WAYS;
+		StampedLock lock = locks[set & (locks.length - 1)];
+		long stamp = lock.tryOptimisticRead();
+		int slot = find(key, first_slot);
+		int value = slot < 0 ? MISSING : values[slot];
+		if (!lock.validate(stamp))
+		{
+			stamp = lock.readLock();
+			try
+			{
+				slot = find(key, first_slot);
+				value = slot < 0 ? MISSING : values[slot];
+			}
+			finally
+			{
+				lock.unlockRead(stamp);
+			}
+		}
+		
+		if (slot < 0)
+		{
+			misses.increment();
+			return MISSING;
+		}
+		
+		// Note that we've used this entry. For CLOCK, only write the mark if
+		// it isn't already there, so repeated hits don't dirty the set.
+		if (use_lru)
+		{
+			stamps[slot] = ++hands[set];
+		}
+		else if (stamps[slot] == 0)
+		{
+			stamps[slot] = 1;
+		}
+		hits.increment();
+		return value;
+	}
+	
+	/*
+	 * find
+	 * Arguments:
+	 * 		key: The packed pair of class indices.
+	 * 		first_slot: The first slot of the key's set.
+	 * This function returns the slot holding the key, or -1.
+	 */
+	private int find(long key, int first_slot)
+	{
+		for (int slot = first_slot; slot < first_slot + WAYS; slot++)
+		{
+			if (keys[slot] == key)
+			{
+				return slot;
+			}
+		}
+		return -1;
+	}
+	
+	/*
+	 * put
+	 * Arguments:
+	 * 		key: The packed pair of class indices.
+	 * 		value: The value to store.
+	 * This function stores the value for the key, evicting another entry in
+	 * the same set if the set is full.
+	 */
+	public void put(long key, int value)
+	{
+		if (hands.length == 0)
+		{
+			return;
+		}
+		
+		int set = setOf(key);
+		int first_slot = set * WAYS;
+		StampedLock lock = locks[set & (locks.length - 1)];
+		long stamp = lock.writeLock();
+		try
+		{
+			// If the key is already here or there's an empty slot, use it.
+			int chosen = -1;
+			for (int slot = first_slot; slot < first_slot + WAYS; slot++)
+			{
+				if (keys[slot] == key)
+				{
+					chosen = slot;
+					break;
+				}
+				if (keys[slot] == EMPTY && chosen < 0)
+				{
+					chosen = slot;
+				}
+			}
+			
+			// Otherwise, pick a victim.
+			if (chosen < 0)
+			{
+				chosen = use_lru ? leastRecent(first_slot) : sweepClock(set, first_slot);
+				evictions.increment();
+			}
+			
+			keys[chosen] = key;
+			values[chosen] = value;
+			stamps[chosen] = use_lru ? ++hands[set] : 1;
+		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+	
+	/*
+	 * sweepClock
+	 * Arguments:
+	 * 		set: The set to evict from.
+	 * 		first_slot: The first slot of the set.
+	 * This function advances the hand of the set past recently used entries
+	 * and returns the first slot that hasn't been used since the hand last
+	 * passed it.
+	 */
+	private int sweepClock(int set, int first_slot)
+	{
+		while (true)
+		{
+			int slot = first_slot + hands[set];
+			hands[set] = (hands[set] + 1) % WAYS;
+			if (stamps[slot] == 0)
+			{
+				return slot;
+			}
+			
+			// Give the entry a second chance.
+			stamps[slot] = 0;
+		}
+	}
+	
+	/*
+	 * leastRecent
+	 * Arguments:
+	 * 		first_slot: The first slot of the set.
+	 * This function returns the slot of the set used longest ago.
+	 */
+	private int leastRecent(int first_slot)
+	{
+		int oldest = first_slot;
+		for (int slot = first_slot + 1; slot < first_slot + WAYS; slot++)
+		{
+			// Compare by difference so the set clock can wrap around.
+			if (stamps[slot] - stamps[oldest] < 0)
+			{
+				oldest = slot;
+			}
+		}
+		return oldest;
+	}
+	
+	/*
+	 * setOf
+	 * Arguments:
+	 * 		key: The packed pair of class indices.
+	 * This function picks the set a key lives in.
+	 */
+	private int setOf(long key)
+	{
+		// Mix the bits so that nearby pairs spread over the sets.
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int)key & (hands.length - 1);
+	}
+	
+	/***********************/
+	/* Getters and Setters */
+	/***********************/
+	
+	public int getCapacity()
+	{
+		return keys.length;
+	}
+	
+	public long getHits()
+	{
+		return hits.sum();
+	}
+	
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+	
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+	
+	public double getHitRate()
+	{
+		long lookups = getHits() + getMisses();
+		if (lookups == 0)
+		{
+			return 0;
+		}
+		return (double)getHits() / lookups;
+	}
+	
+	/****************/
+	/* Pretty Print */
+	/****************/
+	
+	public String toString()
+	{
+		String cache_string = "";
+		cache_string += "{";
+		cache_string += "Capacity: " + getCapacity();
+		cache_string += ", ";
+		cache_string += "Policy: " + (use_lru ? LRU : CLOCK);
+		cache_string += ", ";
+		cache_string += "Hits: " + getHits();
+		cache_string += ", ";
+		cache_string += "Misses: " + getMisses();
+		cache_string += ", ";
+		cache_string += "Evictions: " + getEvictions();
+		cache_string += "}";
+		return cache_string;
+	}
+	
+}
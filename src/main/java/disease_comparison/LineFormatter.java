@@ -0,0 +1,387 @@
+package disease_comparison;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/*
+ * The LineFormatter class writes lines of output straight into a reused
+ * byte buffer, without building any strings along the way.
+ * 
+ * The identities and names of the diseases and the identities of the
+ * classes are encoded once, up front, into a Dictionary which every
+ * formatter shares. Scores are written digit by digit. With a fixed
+ * precision (score_precision >= 0) that's all integer arithmetic, and is
+ * the fast path for big runs. Without one the output has to look the way
+ * Double.toString always has, so we let a reused StringBuilder format the
+ * score, which doesn't build a String or a byte array for each score, and
+ * copy its characters across.
+ * 
+ * A formatter reuses its buffer from line to line, so each thread needs
+ * its own.
+ */
+public class LineFormatter {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	// Powers of ten up to the largest precision we write by hand.
+	private static final long [] POWERS_OF_TEN = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+		1000000000L, 10000000000L, 100000000000L, 1000000000000L
+	};
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The engine which computes the measures for this thread.
+	private MeasureEngine engine;
+	
+	// The encoded identities and names.
+	private Dictionary dictionary;
+	
+	// What to show, copied out of the options.
+	private boolean show_identities;
+	private boolean show_names;
+	private boolean show_best_lcs;
+	private SimilarityMeasure [] measures;
+	private int precision;
+	
+	// The bytes written so far.
+	private byte [] buffer;
+	private int length;
+	
+	// Room to write the digits of a number backwards.
+	private byte [] digits;
+	
+	// Where scores without a fixed precision are formatted.
+	private StringBuilder scratch;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public LineFormatter(MeasureEngine new_engine, Dictionary new_dictionary)
+	{
+		engine = new_engine;
+		dictionary = new_dictionary;
+		
+		Options options = engine.getOntology().getOptions();
+		show_identities = options.getShowIdentities();
+		show_names = options.getShowNames();
+		show_best_lcs = options.getShowBestLCS();
+		measures = engine.getMeasures().toArray(new SimilarityMeasure[0]);
+		precision = Math.min(options.getScorePrecision(), POWERS_OF_TEN.length - 1);
+		
+		buffer = new byte[1 << 12];
+		length = 0;
+		digits = new byte[24];
+		scratch = new StringBuilder(32);
+	}
+	
+	/**************/
+	/* Formatting */
+	/**************/
+	
+	/*
+	 * clear
+	 * Arguments:
+	 * 		None
+	 * This function empties the buffer.
+	 */
+	public void clear()
+	{
+		length = 0;
+	}
+	
+	/*
+	 * append
+	 * Arguments:
+	 * 		first_identity: The identifier for the first disease.
+	 * 		first: The index of the first disease, or -1 if it has no
+	 * 			annotations.
+	 * 		second_identity: The identifier for the second disease.
+	 * 		second: The index of the second disease, or -1 if it has no
+	 * 			annotations.
+	 * This function computes the measures for the two diseases and adds a
+	 * line of output to the buffer, without the line break.
+	 */
+	public void append(String first_identity, int first, String second_identity, int second)
+	{
+		// Calculate all the similarity measures for the two diseases in one
+		// pass.
+		PairSummary summary = engine.summarize(first, second);
+		
+		// Separate the columns with tabs, but don't start or end with one.
+		int line_start = length;
+		
+		// Show identities and names if the appropriate options are chosen.
+		if (show_identities)
+		{
+			appendColumn(line_start, dictionary.identity(first, first_identity));
+		}
+		if (show_names)
+		{
+			appendColumn(line_start, dictionary.name(first, first_identity));
+		}
+		if (show_identities)
+		{
+			appendColumn(line_start, dictionary.identity(second, second_identity));
+		}
+		if (show_names)
+		{
+			appendColumn(line_start, dictionary.name(second, second_identity));
+		}
+		
+		// Show measures if the corresponding options are chosen.
+		for (SimilarityMeasure measure : measures)
+		{
+			if (length > line_start)
+			{
+				appendByte((byte)'\t');
+			}
+			appendDouble(measure.score(summary));
+		}
+		
+		// FIXME: Remove this.
+		if (show_best_lcs)
+		{
+			if (first < 0 || second < 0)
+			{
+				appendColumn(line_start, Dictionary.INVALID_SETS);
+			}
+			else if (summary.getBestLCS() < 0)
+			{
+				appendColumn(line_start, Dictionary.NO_LCS_FOUND);
+			}
+			else
+			{
+				appendColumn(line_start, dictionary.classIdentity(summary.getBestLCS()));
+			}
+		}
+	}
+	
+	/*
+	 * newLine
+	 * Arguments:
+	 * 		None
+	 * This function ends the current line.
+	 */
+	public void newLine()
+	{
+		appendByte((byte)'\n');
+	}
+	
+	/*
+	 * appendColumn
+	 * Arguments:
+	 * 		line_start: Where the current line starts in the buffer.
+	 * 		bytes: The encoded column.
+	 * This function adds a column to the current line.
+	 */
+	private void appendColumn(int line_start, byte [] bytes)
+	{
+		if (length > line_start)
+		{
+			appendByte((byte)'\t');
+		}
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+	}
+	
+	/*
+	 * appendByte
+	 * Arguments:
+	 * 		value: A byte.
+	 * This function adds a byte to the buffer.
+	 */
+	private void appendByte(byte value)
+	{
+		ensureCapacity(1);
+		buffer[length++] = value;
+	}
+	
+	/*
+	 * appendDouble
+	 * Arguments:
+	 * 		value: A score.
+	 * This function writes the score, with the fixed precision if we have
+	 * one.
+	 */
+	void appendDouble(double value)
+	{
+		// Fall back on the usual format when there's no fixed precision, or
+		// the number won't fit in a long once scaled.
+		double scaled = Math.abs(value) * POWERS_OF_TEN[Math.max(precision, 0)];
+		if (precision < 0 || Double.isNaN(value) || scaled >= 9e18)
+		{
+			// The digits, exponent and signs are all ASCII.
+			scratch.setLength(0);
+			scratch.append(value);
+			ensureCapacity(scratch.length());
+			for (int i = 0; i < scratch.length(); i++)
+			{
+				buffer[length++] = (byte)scratch.charAt(i);
+			}
+			return;
+		}
+		
+		long rounded = Math.round(scaled);
+		if (value < 0 && rounded != 0)
+		{
+			appendByte((byte)'-');
+		}
+		long whole = rounded / POWERS_OF_TEN[precision];
+		long fraction = rounded % POWERS_OF_TEN[precision];
+		
+		// Write the digits of the whole part backwards, then copy them out.
+		int count = 0;
+		do
+		{
+			digits[count++] = (byte)('0' + whole % 10);
+			whole /= 10;
+		}
+		while (whole > 0);
+		ensureCapacity(count + 1 + precision);
+		while (count > 0)
+		{
+			buffer[length++] = digits[--count];
+		}
+		
+		// Write the fraction with its leading zeros.
+		if (precision > 0)
+		{
+			buffer[length++] = '.';
+			for (int i = precision - 1; i >= 0; i--)
+			{
+				buffer[length + i] = (byte)('0' + fraction % 10);
+				fraction /= 10;
+			}
+			length += precision;
+		}
+	}
+	
+	/*
+	 * ensureCapacity
+	 * Arguments:
+	 * 		extra: How many more bytes we're about to write.
+	 * This function grows the buffer if it doesn't have room.
+	 */
+	private void ensureCapacity(int extra)
+	{
+		if (length + extra > buffer.length)
+		{
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+		}
+	}
+	
+	/*
+	 * writeTo
+	 * Arguments:
+	 * 		output: Where to write the buffer.
+	 * This function writes out everything in the buffer.
+	 */
+	public void writeTo(OutputStream output) throws IOException
+	{
+		output.write(buffer, 0, length);
+	}
+	
+	/***********/
+	/* Getters */
+	/***********/
+	
+	public byte [] getBytes()
+	{
+		return buffer;
+	}
+	
+	public int getLength()
+	{
+		return length;
+	}
+	
+	public String toString()
+	{
+		return new String(buffer, 0, length, UTF8);
+	}
+	
+	/*
+	 * The Dictionary class holds the encoded identity and name of every
+	 * disease and the encoded identity of every class. It never changes
+	 * once built, so every thread can share one.
+	 */
+	public static class Dictionary
+	{
+		static final byte [] INVALID_SETS = "INVALID SETS".getBytes(UTF8);
+		static final byte [] NO_LCS_FOUND = "NO LCS FOUND".getBytes(UTF8);
+		
+		private byte [][] individual_identities;
+		private byte [][] individual_names;
+		private byte [][] class_identities;
+		private Ontology ontology;
+		
+		public Dictionary(Ontology new_ontology)
+		{
+			ontology = new_ontology;
+			int individual_count = ontology.getIndividualCount();
+			individual_identities = new byte[individual_count][];
+			individual_names = new byte[individual_count][];
+			for (int i = 0; i < individual_count; i++)
+			{
+				String identity = ontology.getIndividualIdentity(i);
+				individual_identities[i] = identity.getBytes(UTF8);
+				individual_names[i] = String.valueOf(ontology.getAnnotationNames().get(identity)).getBytes(UTF8);
+			}
+			class_identities = new byte[ontology.getClassCount()][];
+			for (int i = 0; i < class_identities.length; i++)
+			{
+				class_identities[i] = ontology.getClassIdentity(i).getBytes(UTF8);
+			}
+		}
+		
+		/*
+		 * identity
+		 * Arguments:
+		 * 		individual: The index of a disease, or -1.
+		 * 		identity: The identifier for the disease.
+		 * This function returns the encoded identifier. Diseases without
+		 * annotations aren't in the ontology, so we encode those here.
+		 */
+		byte [] identity(int individual, String identity)
+		{
+			if (individual < 0)
+			{
+				return identity.getBytes(UTF8);
+			}
+			return individual_identities[individual];
+		}
+		
+		/*
+		 * name
+		 * Arguments:
+		 * 		individual: The index of a disease, or -1.
+		 * 		identity: The identifier for the disease.
+		 * This function returns the encoded name of the disease.
+		 */
+		byte [] name(int individual, String identity)
+		{
+			if (individual < 0)
+			{
+				return String.valueOf(ontology.getAnnotationNames().get(identity)).getBytes(UTF8);
+			}
+			return individual_names[individual];
+		}
+		
+		byte [] classIdentity(int node)
+		{
+			return class_identities[node];
+		}
+	}
+
+}
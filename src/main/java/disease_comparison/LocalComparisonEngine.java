@@ -0,0 +1,551 @@
+package disease_comparison;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+
+/*
+ * The LocalComparisonEngine class compares all pairs of diseases on one
+ * machine, without Hadoop.
+ * 
+ * The ontology is built once and shared by every thread. The pairs are cut
+ * into tiles just like TileInputFormat does, and a fork-join pool hands the
+ * tiles out to its threads, so idle threads steal work from busy ones. Each
+ * tile is scored into its own buffer, and finished buffers are streamed
+ * through a single buffered stream.
+ * 
+ * If we only want the best matches for each disease, every pair is offered
+ * to a bounded heap for each of its diseases instead, and only the heaps
+ * are written out at the end. With pruning on, each disease searches the
+ * others in order of their IC bound instead, and stops as soon as no
+ * remaining disease can get into its heap.
+ * 
+ * With an IC floor, each disease is only compared with the diseases which
+ * share a subsumer above the floor with it, found through an AncestorIndex.
+ * 
+ * In binary mode each pair becomes a ScoreRecord instead. A tile's records
+ * are collected just like its lines, then appended to a single
+ * SequenceFile under one lock, and the dictionary is written next to it.
+ */
+public class LocalComparisonEngine {
+
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// How many diseases along each side of a tile if the options don't say.
+	private static final int DEFAULT_TILE_SIZE = 64;
+	
+	// How many diseases a task scores when going row by row.
+	private static final int ROWS_PER_TASK = 16;
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The ontology in which to compare the diseases.
+	private Ontology ontology;
+	
+	// The sorted identifiers of the diseases, and the index of each in the
+	// ontology.
+	private String [] identities;
+	private int [] indices;
+	
+	// How many threads to compare diseases with.
+	private int threads;
+	
+	// Where the output lines go, shared by all the threads.
+	private OutputStream output;
+	
+	// Each thread computes its measures with its own engine and formats its
+	// lines with its own formatter, but they all share the encoded names.
+	private ThreadLocal<MeasureEngine> engines;
+	private LineFormatter.Dictionary dictionary;
+	private ThreadLocal<LineFormatter> formatters;
+	
+	// If we're writing binary output, each thread fills in its own records
+	// for a tile and they all append to the same file.
+	private SequenceFile.Writer records;
+	private ThreadLocal<PendingRecords> pending_records;
+	
+	// If we're keeping the best matches for each disease, keep track of
+	// them here, one heap per disease.
+	private TopKHeap [] best_matches;
+	
+	// If we're pruning the search for the best matches, keep track of the
+	// bounds we search by.
+	private TopKSearch search;
+	
+	// If we're only comparing diseases which share a subsumer above the IC
+	// floor, keep track of the index we find them with.
+	private AncestorIndex index;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public LocalComparisonEngine(Ontology new_ontology, List<String> sorted_identities, int new_threads)
+	{
+		ontology = new_ontology;
+		threads = Math.max(1, new_threads);
+		
+		identities = sorted_identities.toArray(new String[0]);
+		indices = new int[identities.length];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = ontology.getIndividualIndex(identities[i]);
+		}
+	}
+	
+	/**************/
+	/* Comparison */
+	/**************/
+	
+	/*
+	 * run
+	 * Arguments:
+	 * 		filename: The path to write the output to.
+	 * This function compares every pair of diseases and writes one line
+	 * for each pair.
+	 */
+	public void run(String filename) throws IOException
+	{
+		// Cut the pairs into tiles.
+		Options options = ontology.getOptions();
+		int tile_size = options.getTileSize() > 0 ? options.getTileSize() : DEFAULT_TILE_SIZE;
+		boolean triangular = options.getSymmetric();
+		List<TileInputFormat.Tile> tiles = new ArrayList<TileInputFormat.Tile>();
+		for (int row_start = 0; row_start < identities.length; row_start += tile_size)
+		{
+			int row_end = Math.min(identities.length, row_start + tile_size);
+			for (int column_start = 0; column_start < identities.length; column_start += tile_size)
+			{
+				// Tiles above the diagonal only hold pairs in the wrong order.
+				if (triangular && column_start > row_start)
+				{
+					break;
+				}
+				int column_end = Math.min(identities.length, column_start + tile_size);
+				tiles.add(new TileInputFormat.Tile(row_start, row_end, column_start, column_end, triangular));
+			}
+		}
+		
+		// If we're keeping the best matches, start with none.
+		best_matches = null;
+		if (options.getTopK() > 0)
+		{
+			best_matches = new TopKHeap[identities.length];
+			for (int i = 0; i < identities.length; i++)
+			{
+				best_matches[i] = new TopKHeap(options.getTopK());
+			}
+		}
+		
+		// If we're pruning, search each disease's matches on its own.
+		search = null;
+		if (best_matches != null && options.getPruneTopK())
+		{
+			search = new TopKSearch(ontology, indices);
+		}
+		
+		// If there's an IC floor, only look at the pairs which can reach it.
+		index = null;
+		if (options.getICFloor() > 0)
+		{
+			index = new AncestorIndex(ontology, indices, options.getICFloor());
+		}
+		
+		// Score all the tiles, or go row by row.
+		engines = new ThreadLocal<MeasureEngine>() {
+			protected MeasureEngine initialValue()
+			{
+				return new MeasureEngine(ontology);
+			}
+		};
+		dictionary = new LineFormatter.Dictionary(ontology);
+		formatters = new ThreadLocal<LineFormatter>() {
+			protected LineFormatter initialValue()
+			{
+				return new LineFormatter(engines.get(), dictionary);
+			}
+		};
+		pending_records = new ThreadLocal<PendingRecords>() {
+			protected PendingRecords initialValue()
+			{
+				return new PendingRecords();
+			}
+		};
+		Configuration conf = new Configuration();
+		output = null;
+		records = null;
+		if (options.getOutputFormat().equals(BinaryResults.BINARY))
+		{
+			records = BinaryResults.createWriter(conf, FileSystem.getLocal(conf), new Path(filename));
+		}
+		else
+		{
+			output = new BufferedOutputStream(new FileOutputStream(filename), 1 << 20);
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			if (search != null || index != null)
+			{
+				pool.invoke(new RowTask(0, identities.length));
+			}
+			else
+			{
+				pool.invoke(new TileTask(tiles, 0, tiles.size()));
+			}
+			
+			// If we kept the best matches, write them out now, best first.
+			LineFormatter formatter = formatters.get();
+			for (int row = 0; best_matches != null && row < identities.length; row++)
+			{
+				formatter.clear();
+				for (int column : best_matches[row].sortedMatches())
+				{
+					writePair(formatter, row, column);
+				}
+				flush(formatter);
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+			if (output != null)
+			{
+				output.close();
+			}
+			if (records != null)
+			{
+				records.close();
+			}
+		}
+		
+		// Binary records need the dictionary to be read.
+		if (records != null)
+		{
+			BinaryResults.writeDictionary(FileSystem.getLocal(conf), new Path(filename).getParent(),
+					ontology, Arrays.asList(identities));
+		}
+	}
+	
+	/*
+	 * writePair
+	 * Arguments:
+	 * 		formatter: This thread's formatter.
+	 * 		row: The position of the first disease.
+	 * 		column: The position of the second disease.
+	 * This function compares the two diseases and adds either a line to
+	 * the formatter or a record to this thread's pending records.
+	 */
+	private void writePair(LineFormatter formatter, int row, int column) throws IOException
+	{
+		if (records != null)
+		{
+			MeasureEngine engine = engines.get();
+			pending_records.get().next().set(row, column,
+					engine.summarize(indices[row], indices[column]), engine.getMeasures());
+			return;
+		}
+		formatter.append(identities[row], indices[row], identities[column], indices[column]);
+		formatter.newLine();
+	}
+	
+	/*
+	 * flush
+	 * Arguments:
+	 * 		formatter: This thread's formatter.
+	 * This function writes out the formatter's lines, or this thread's
+	 * pending records.
+	 */
+	private void flush(LineFormatter formatter) throws IOException
+	{
+		// Only one thread can write at a time.
+		if (records != null)
+		{
+			PendingRecords pending = pending_records.get();
+			synchronized (records)
+			{
+				for (int i = 0; i < pending.size(); i++)
+				{
+					records.append(pending.get(i), NullWritable.get());
+				}
+			}
+			pending.clear();
+			return;
+		}
+		synchronized (output)
+		{
+			formatter.writeTo(output);
+		}
+	}
+	
+	/*
+	 * scoreTile
+	 * Arguments:
+	 * 		tile: The block of rows and columns to compare.
+	 * This function compares every pair of diseases in the tile and writes
+	 * out the lines.
+	 */
+	private void scoreTile(TileInputFormat.Tile tile) throws IOException
+	{
+		// If we're keeping the best matches, offer each pair to the heaps
+		// instead of writing it. A triangular tile only sees each pair in
+		// one order, so offer it to both diseases.
+		if (best_matches != null)
+		{
+			for (int row = tile.getRowStart(); row < tile.getRowEnd(); row++)
+			{
+				for (int column = tile.getColumnStart(); column < tile.getColumnEnd(); column++)
+				{
+					if (!tile.contains(row, column))
+					{
+						continue;
+					}
+					double score = DiseaseComparisonMeasures.maxIC(ontology, indices[row], indices[column]);
+					synchronized (best_matches[row])
+					{
+						best_matches[row].offer(score, column);
+					}
+					if (ontology.getOptions().getSymmetric())
+					{
+						synchronized (best_matches[column])
+						{
+							best_matches[column].offer(score, row);
+						}
+					}
+				}
+			}
+			return;
+		}
+		
+		LineFormatter formatter = formatters.get();
+		formatter.clear();
+		for (int row = tile.getRowStart(); row < tile.getRowEnd(); row++)
+		{
+			for (int column = tile.getColumnStart(); column < tile.getColumnEnd(); column++)
+			{
+				if (!tile.contains(row, column))
+				{
+					continue;
+				}
+				writePair(formatter, row, column);
+			}
+		}
+		flush(formatter);
+	}
+	
+	/*
+	 * scoreRow
+	 * Arguments:
+	 * 		row: The position of a disease.
+	 * This function compares the disease with the diseases it should be
+	 * compared with, and either keeps the best matches or writes out the
+	 * lines. Each row has its own heap, so nothing needs locking but the
+	 * output.
+	 */
+	private void scoreRow(int row) throws IOException
+	{
+		// Without an IC floor, every other disease is a candidate.
+		if (index == null)
+		{
+			search.search(indices[row], row, best_matches[row]);
+			return;
+		}
+		int [] candidates = index.candidates(row);
+		
+		if (best_matches != null)
+		{
+			IntList others = new IntList(candidates.length);
+			for (int column : candidates)
+			{
+				if (column != row)
+				{
+					others.add(column);
+				}
+			}
+			if (search != null)
+			{
+				search.search(indices[row], others, best_matches[row]);
+				return;
+			}
+			for (int i = 0; i < others.size(); i++)
+			{
+				int column = others.get(i);
+				double score = DiseaseComparisonMeasures.maxIC(ontology, indices[row], indices[column]);
+				best_matches[row].offer(score, column);
+			}
+			return;
+		}
+		
+		// If the measures are symmetric, only compare each pair in one order.
+		boolean triangular = ontology.getOptions().getSymmetric();
+		LineFormatter formatter = formatters.get();
+		formatter.clear();
+		for (int column : candidates)
+		{
+			if (triangular ? column < row : column != row)
+			{
+				writePair(formatter, row, column);
+			}
+		}
+		flush(formatter);
+	}
+	
+	/*
+	 * The PendingRecords class holds the records a thread has filled in
+	 * for its current tile, reusing them from tile to tile.
+	 */
+	private static class PendingRecords
+	{
+		private ScoreRecord [] records = new ScoreRecord[0];
+		private int count = 0;
+		
+		/*
+		 * next
+		 * Arguments:
+		 * 		None
+		 * This function returns a record to fill in for the next pair.
+		 */
+		public ScoreRecord next()
+		{
+			if (count == records.length)
+			{
+				records = Arrays.copyOf(records, Math.max(16, 2 * records.length));
+				for (int i = count; i < records.length; i++)
+				{
+					records[i] = new ScoreRecord();
+				}
+			}
+			return records[count++];
+		}
+		
+		public ScoreRecord get(int i)
+		{
+			return records[i];
+		}
+		
+		public int size()
+		{
+			return count;
+		}
+		
+		public void clear()
+		{
+			count = 0;
+		}
+	}
+	
+	/*
+	 * The TileTask class scores a range of tiles, splitting the range in
+	 * half until it only holds a single tile.
+	 */
+	private class TileTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private List<TileInputFormat.Tile> tiles;
+		private int start;
+		private int end;
+		
+		public TileTask(List<TileInputFormat.Tile> new_tiles, int new_start, int new_end)
+		{
+			tiles = new_tiles;
+			start = new_start;
+			end = new_end;
+		}
+		
+		protected void compute()
+		{
+			if (end - start > 1)
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new TileTask(tiles, start, middle), new TileTask(tiles, middle, end));
+				return;
+			}
+			if (end > start)
+			{
+				try
+				{
+					scoreTile(tiles.get(start));
+				}
+				catch (IOException exception)
+				{
+					throw new RuntimeException(exception);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * The RowTask class scores a range of diseases row by row, splitting
+	 * the range in half until it's small.
+	 */
+	private class RowTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private int start;
+		private int end;
+		
+		public RowTask(int new_start, int new_end)
+		{
+			start = new_start;
+			end = new_end;
+		}
+		
+		protected void compute()
+		{
+			if (end - start > ROWS_PER_TASK)
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new RowTask(start, middle), new RowTask(middle, end));
+				return;
+			}
+			try
+			{
+				for (int row = start; row < end; row++)
+				{
+					scoreRow(row);
+				}
+			}
+			catch (IOException exception)
+			{
+				throw new RuntimeException(exception);
+			}
+		}
+	}
+	
+	/*
+	 * outputFile
+	 * Arguments:
+	 * 		directory_name: The output directory.
+	 * This function creates the output directory if needed and returns the
+	 * path of the file to write in it.
+	 */
+	public static String outputFile(String directory_name) throws IOException
+	{
+		File directory = new File(directory_name);
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Could not create output directory " + directory_name);
+		}
+		return new File(directory, "part-00000").getPath();
+	}
+	
+}
@@ -0,0 +1,375 @@
+package disease_comparison;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The MeasureEngine class computes every enabled measure for a pair of
+ * diseases in a single pass.
+ * 
+ * If any measure needs the least common subsumers of the pairs of classes,
+ * we find each of them once and fold it into all the pair totals at the
+ * same time. If any measure needs the shared subsumers, we merge the two
+ * closures once. The measures then read their scores off the summary.
+ * 
+ * An engine reuses its buffers from pair to pair, so each thread needs its
+ * own.
+ */
+public class MeasureEngine {
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The ontology in which to compare the diseases.
+	private Ontology ontology;
+	
+	// The measures we want, in the order we show them.
+	private List<SimilarityMeasure> measures;
+	
+	// Which passes do we need to make?
+	private boolean needs_pairs;
+	private boolean needs_closures;
+	
+	// The summary of the last pair we looked at.
+	private PairSummary summary;
+	
+	// The best IC score and Lin similarity found so far for each class of
+	// the second profile.
+	private double [] second_best_ic;
+	private double [] second_best_lin;
+	
+	// The closure of the last first disease we looked at, since we usually
+	// compare the same first disease with many others in a row.
+	private int closure_individual;
+	private int [] first_closure;
+	private double first_closure_ic;
+	
+	// The closures of a band of first diseases, kept while the band is
+	// compared with one block of diseases after another.
+	private int [] band_individuals;
+	private int [][] band_closures;
+	private double [] band_closure_ic;
+	
+	// If the same first disease is compared with many others in a row,
+	// keep track of the least common subsumers of its classes with the
+	// classes of the others.
+	private MicaRows mica_rows;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public MeasureEngine(Ontology new_ontology)
+	{
+		ontology = new_ontology;
+		Options options = ontology.getOptions();
+		measures = options.getMeasures();
+		
+		// We always need the pairs to show the best LCS.
+		needs_pairs = options.getShowBestLCS();
+		needs_closures = false;
+		for (SimilarityMeasure measure : measures)
+		{
+			needs_pairs |= measure.needsPairs();
+			needs_closures |= measure.needsClosures();
+		}
+		
+		summary = new PairSummary();
+		second_best_ic = new double[16];
+		second_best_lin = new double[16];
+		closure_individual = -1;
+		band_individuals = new int[0];
+		mica_rows = null;
+	}
+	
+	/***********/
+	/* Scoring */
+	/***********/
+	
+	/*
+	 * summarize
+	 * Arguments:
+	 * 		first: The index of the first disease, or -1.
+	 * 		second: The index of the second disease, or -1.
+	 * This function makes a single pass over the two diseases and returns
+	 * what the measures need. The summary is reused by the next call.
+	 */
+	public PairSummary summarize(int first, int second)
+	{
+		summary.clear();
+		
+		// FIXME: Handle invalid sets better.
+		if (first < 0 || second < 0)
+		{
+			return summary;
+		}
+		summary.valid = true;
+		
+		CompressedRows profiles = ontology.getProfiles();
+		summary.first_count = profiles.size(first);
+		summary.second_count = profiles.size(second);
+		
+		if (needs_pairs)
+		{
+			summarizePairs(first, second);
+		}
+		if (needs_closures)
+		{
+			summarizeClosures(first, second);
+		}
+		return summary;
+	}
+	
+	/*
+	 * score
+	 * Arguments:
+	 * 		measure: One of the enabled measures.
+	 * This function returns the score of the measure for the last pair we
+	 * summarized.
+	 */
+	public double score(SimilarityMeasure measure)
+	{
+		return measure.score(summary);
+	}
+	
+	/*
+	 * summarizePairs
+	 * Arguments:
+	 * 		first: The index of the first disease.
+	 * 		second: The index of the second disease.
+	 * This function finds the least common subsumer of every pair of
+	 * classes and adds it to the pair totals.
+	 */
+	private void summarizePairs(int first, int second)
+	{
+		CompressedRows profiles = ontology.getProfiles();
+		if (mica_rows != null)
+		{
+			mica_rows.load(first);
+		}
+		int first_start = profiles.start(first);
+		int second_start = profiles.start(second);
+		int second_count = profiles.size(second);
+		if (second_best_ic.length < second_count)
+		{
+			second_best_ic = new double[second_count];
+			second_best_lin = new double[second_count];
+		}
+		Arrays.fill(second_best_ic, 0, second_count, 0);
+		Arrays.fill(second_best_lin, 0, second_count, 0);
+		
+		for (int i = profiles.start(first); i < profiles.end(first); i++)
+		{
+			int first_node = profiles.get(i);
+			double first_ic = ontology.getICScore(first_node);
+			double best_ic = 0;
+			double best_lin = 0;
+			for (int j = 0; j < second_count; j++)
+			{
+				int second_node = profiles.get(second_start + j);
+				
+				// Find the least common subsumer for the two nodes.
+				int lcs = mica_rows != null ? mica_rows.lcs(i - first_start, second_node) :
+					ontology.computeLCS(first_node, second_node);
+				
+				// FIXME: Handle invalid nodes better.
+				if (lcs < 0)
+				{
+					continue;
+				}
+				
+				double lcs_ic = ontology.getICScore(lcs);
+				double information = first_ic + ontology.getICScore(second_node);
+				double lin = information > 0 ? 2 * lcs_ic / information : 0;
+				
+				// If the LCS has a better IC score, update our best.
+				if (lcs_ic > summary.max_ic)
+				{
+					summary.max_ic = lcs_ic;
+					summary.best_lcs = lcs;
+				}
+				summary.ic_total += lcs_ic;
+				best_ic = Math.max(best_ic, lcs_ic);
+				best_lin = Math.max(best_lin, lin);
+				second_best_ic[j] = Math.max(second_best_ic[j], lcs_ic);
+				second_best_lin[j] = Math.max(second_best_lin[j], lin);
+			}
+			summary.first_best_ic_total += best_ic;
+			summary.first_best_lin_total += best_lin;
+		}
+		
+		for (int j = 0; j < second_count; j++)
+		{
+			summary.second_best_ic_total += second_best_ic[j];
+			summary.second_best_lin_total += second_best_lin[j];
+		}
+	}
+	
+	/*
+	 * summarizeClosures
+	 * Arguments:
+	 * 		first: The index of the first disease.
+	 * 		second: The index of the second disease.
+	 * This function merges the subsumers of the two profiles and adds up
+	 * the ones they share.
+	 */
+	private void summarizeClosures(int first, int second)
+	{
+		if (closure_individual != first)
+		{
+			int kept = -1;
+			for (int i = 0; i < band_individuals.length && kept < 0; i++)
+			{
+				if (band_individuals[i] == first)
+				{
+					kept = i;
+				}
+			}
+			if (kept >= 0)
+			{
+				first_closure = band_closures[kept];
+				first_closure_ic = band_closure_ic[kept];
+			}
+			else
+			{
+				first_closure = closure(first);
+				first_closure_ic = totalIC(first_closure);
+			}
+			closure_individual = first;
+		}
+		int [] second_closure = closure(second);
+		double second_closure_ic = totalIC(second_closure);
+		
+		// Both closures are sorted, so walk through them together.
+		int i = 0;
+		int j = 0;
+		while (i < first_closure.length && j < second_closure.length)
+		{
+			if (first_closure[i] < second_closure[j])
+			{
+				i++;
+			}
+			else if (first_closure[i] > second_closure[j])
+			{
+				j++;
+			}
+			else
+			{
+				summary.shared_count++;
+				summary.shared_ic += ontology.getICScore(first_closure[i]);
+				i++;
+				j++;
+			}
+		}
+		summary.union_count = first_closure.length + second_closure.length - summary.shared_count;
+		summary.union_ic = first_closure_ic + second_closure_ic - summary.shared_ic;
+	}
+	
+	/*
+	 * closure
+	 * Arguments:
+	 * 		individual: The index of a disease.
+	 * This function returns the sorted subsumers of every class in the
+	 * disease's profile.
+	 */
+	private int [] closure(int individual)
+	{
+		CompressedRows profiles = ontology.getProfiles();
+		CompressedRows ancestors = ontology.getAncestors();
+		IntList gathered = new IntList();
+		for (int i = profiles.start(individual); i < profiles.end(individual); i++)
+		{
+			int node = profiles.get(i);
+			for (int j = ancestors.start(node); j < ancestors.end(node); j++)
+			{
+				gathered.add(ancestors.get(j));
+			}
+		}
+		
+		// Sort the subsumers and drop the duplicates.
+		int [] sorted = gathered.toArray();
+		Arrays.sort(sorted);
+		int count = 0;
+		for (int i = 0; i < sorted.length; i++)
+		{
+			if (count == 0 || sorted[count - 1] != sorted[i])
+			{
+				sorted[count++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, count);
+	}
+	
+	/*
+	 * totalIC
+	 * Arguments:
+	 * 		nodes: Some classes.
+	 * This function adds up the IC scores of the classes.
+	 */
+	private double totalIC(int [] nodes)
+	{
+		double total = 0;
+		for (int node : nodes)
+		{
+			total += ontology.getICScore(node);
+		}
+		return total;
+	}
+	
+	/***********************/
+	/* Getters and Setters */
+	/***********************/
+	
+	/*
+	 * keepClosures
+	 * Arguments:
+	 * 		individuals: The indices of a band of first diseases, -1 for
+	 * 			those with no annotations.
+	 * This function works out the closures of the band once and keeps them
+	 * until the next band, so comparing the band with several blocks of
+	 * diseases doesn't rebuild them for every block.
+	 */
+	public void keepClosures(int [] individuals)
+	{
+		if (!needs_closures)
+		{
+			return;
+		}
+		band_individuals = individuals.clone();
+		band_closures = new int[individuals.length][];
+		band_closure_ic = new double[individuals.length];
+		for (int i = 0; i < individuals.length; i++)
+		{
+			if (individuals[i] >= 0)
+			{
+				band_closures[i] = closure(individuals[i]);
+				band_closure_ic[i] = totalIC(band_closures[i]);
+			}
+		}
+	}
+	
+	/*
+	 * setMicaRows
+	 * Arguments:
+	 * 		new_mica_rows: The rows to look up least common subsumers in, or
+	 * 			null to find each of them in the ontology.
+	 * This function lets the engine reuse the least common subsumers of a
+	 * first disease across all the diseases it's compared with.
+	 */
+	public void setMicaRows(MicaRows new_mica_rows)
+	{
+		mica_rows = new_mica_rows;
+	}
+	
+	public List<SimilarityMeasure> getMeasures()
+	{
+		return measures;
+	}
+	
+	public Ontology getOntology()
+	{
+		return ontology;
+	}
+
+}
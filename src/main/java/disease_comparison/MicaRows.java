@@ -0,0 +1,143 @@
+package disease_comparison;
+
+import java.util.Arrays;
+
+/*
+ * The MicaRows class remembers, for one first disease at a time, the least
+ * common subsumer of each of its classes with every class which turns up
+ * in the profile of some target disease.
+ * 
+ * When every second disease is compared with the same first one in a row,
+ * as in the reducer, the first disease's classes meet the same target
+ * classes over and over. Filling in a row for each of its classes once
+ * means each later pair only has to look up its least common subsumers.
+ */
+public class MicaRows {
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The ontology in which to compare the diseases.
+	private Ontology ontology;
+	
+	// The column of each class in the rows, or -1 if no target has it.
+	private int [] columns;
+	
+	// The class in each column.
+	private int [] column_nodes;
+	
+	// The first disease the rows are for, or -1 if none yet.
+	private int row_individual;
+	
+	// For each class of the first disease, the least common subsumer with
+	// the class in each column.
+	private int [][] rows;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	/*
+	 * Arguments:
+	 * 		new_ontology: The ontology in which to compare the diseases.
+	 * 		targets: The index in the ontology of each target disease, or -1
+	 * 			if it has no annotations.
+	 */
+	public MicaRows(Ontology new_ontology, int [] targets)
+	{
+		ontology = new_ontology;
+		
+		// Give each class in a target profile its own column.
+		CompressedRows profiles = ontology.getProfiles();
+		columns = new int[ontology.getClassCount()];
+		Arrays.fill(columns, -1);
+		IntList nodes = new IntList();
+		for (int target : targets)
+		{
+			if (target < 0)
+			{
+				continue;
+			}
+			for (int i = profiles.start(target); i < profiles.end(target); i++)
+			{
+				int node = profiles.get(i);
+				if (columns[node] < 0)
+				{
+					columns[node] = nodes.size();
+					nodes.add(node);
+				}
+			}
+		}
+		column_nodes = nodes.toArray();
+		
+		row_individual = -1;
+		rows = new int[0][];
+	}
+	
+	/**************/
+	/* Operations */
+	/**************/
+	
+	/*
+	 * load
+	 * Arguments:
+	 * 		first: The index of the first disease.
+	 * This function fills in the rows for the first disease, unless they're
+	 * already for it.
+	 */
+	public void load(int first)
+	{
+		if (first == row_individual)
+		{
+			return;
+		}
+		
+		CompressedRows profiles = ontology.getProfiles();
+		int row_count = profiles.size(first);
+		if (rows.length < row_count)
+		{
+			int [][] grown = new int[row_count][];
+			System.arraycopy(rows, 0, grown, 0, rows.length);
+			rows = grown;
+		}
+		for (int row = 0; row < row_count; row++)
+		{
+			if (rows[row] == null)
+			{
+				rows[row] = new int[column_nodes.length];
+			}
+			int first_node = profiles.get(profiles.start(first) + row);
+			for (int column = 0; column < column_nodes.length; column++)
+			{
+				rows[row][column] = ontology.computeLCS(first_node, column_nodes[column]);
+			}
+		}
+		row_individual = first;
+	}
+	
+	/*
+	 * lcs
+	 * Arguments:
+	 * 		row: The position of a class within the first disease's profile.
+	 * 		node: The index of a class.
+	 * This function returns the least common subsumer of the two classes.
+	 * Classes no target has are looked up in the ontology instead.
+	 */
+	public int lcs(int row, int node)
+	{
+		int column = columns[node];
+		if (column < 0)
+		{
+			CompressedRows profiles = ontology.getProfiles();
+			return ontology.computeLCS(profiles.get(profiles.start(row_individual) + row), node);
+		}
+		return rows[row][column];
+	}
+	
+	public int getColumnCount()
+	{
+		return column_nodes.length;
+	}
+
+}
@@ -0,0 +1,423 @@
+package disease_comparison;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * The MicaTable class holds the most informative common ancestor (the
+ * least common subsumer with the highest IC score) of every pair of
+ * classes in a chosen set, usually the important nodes.
+ * 
+ * The table is built once, offline, and written to a file. Each task then
+ * memory-maps the file, so looking up the LCS of two classes in the table
+ * is a single array read and every task on a machine shares the same
+ * pages.
+ * 
+ * The table only agrees with computeLCS for the options it was built
+ * with. Without thresholding it holds every class. With thresholding it
+ * holds the important nodes, and picking the lowest IC scores rather than
+ * the highest gives a different set of them, so the header records both
+ * options, and a table whose options or rows don't match the ontology is
+ * refused. Projection doesn't change the LCS of two important nodes, so
+ * it doesn't matter.
+ * 
+ * The file holds a header followed by the lower triangle of the table,
+ * one row after another:
+ * 		int header_length
+ * 		int MAGIC, int VERSION
+ * 		boolean use_thresholding, boolean important_nodes_lowest_ic
+ * 		int class_count, followed by the identifier of every class
+ * 		int row_count, followed by the class of each row
+ * 		int value_width (2 or 4 bytes)
+ * 		the values, row r holding the columns 0 through r
+ * Values are positions in the list of classes, or -1 if the two classes
+ * have no common subsumer.
+ */
+public class MicaTable {
+
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// Identify the file format.
+	private static final int MAGIC = 0x4d494341;
+	private static final int VERSION = 3;
+	
+	// The value returned for pairs that aren't in the table.
+	public static final int MISSING = Integer.MIN_VALUE;
+	
+	// We can only map so much of a file at once, so we map it in chunks.
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The row of the table holding each class of the ontology, or -1 if
+	// the class isn't in the table.
+	private int [] positions;
+	
+	// The class of the ontology for each class listed in the file.
+	private int [] class_indices;
+	
+	// How many bytes each value takes.
+	private int value_width;
+	
+	// Where the values start in the file.
+	private long data_offset;
+	
+	// The mapped chunks of the file.
+	private MappedByteBuffer [] chunks;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	/*
+	 * Arguments:
+	 * 		filename: The path to a table written by build.
+	 * 		ontology: The ontology the table will be used with.
+	 * This constructor memory-maps the table and matches its classes up
+	 * with the classes of the ontology. It refuses a table built with other
+	 * thresholding options, or for other important nodes.
+	 */
+	public MicaTable(String filename, Ontology ontology) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try
+		{
+			// Read the header.
+			int header_length = file.readInt();
+			byte [] header = new byte[header_length];
+			file.readFully(header);
+			data_offset = 4 + header_length;
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(header));
+			if (input.readInt() != MAGIC || input.readInt() != VERSION)
+			{
+				throw new IOException("Not a MICA table: " + filename);
+			}
+			Options options = ontology.getOptions();
+			boolean use_thresholding = input.readBoolean();
+			boolean lowest_ic = input.readBoolean();
+			if (use_thresholding != options.getUseThresholding() ||
+					(use_thresholding && lowest_ic != options.getImportantNodesLowestIC()))
+			{
+				throw new IOException("MICA table was built with other thresholding options: " + filename);
+			}
+			
+			// Match the classes in the file up with the ontology.
+			int class_count = input.readInt();
+			class_indices = new int[class_count];
+			for (int i = 0; i < class_count; i++)
+			{
+				class_indices[i] = ontology.getClassIndex(input.readUTF());
+			}
+			
+			// Find the row holding each class.
+			positions = new int[ontology.getClassCount()];
+			Arrays.fill(positions, -1);
+			int row_count = input.readInt();
+			for (int row = 0; row < row_count; row++)
+			{
+				int node = class_indices[input.readInt()];
+				if (node >= 0)
+				{
+					positions[node] = row;
+				}
+			}
+			value_width = input.readInt();
+			
+			// The rows have to be exactly the classes computeLCS would look
+			// up in them.
+			for (int node = 0; node < positions.length; node++)
+			{
+				if ((positions[node] >= 0) != (!use_thresholding || ontology.isImportant(node)))
+				{
+					throw new IOException("MICA table was built for other important nodes: " + filename);
+				}
+			}
+			
+			// Map the values.
+			FileChannel channel = file.getChannel();
+			long data_length = channel.size() - data_offset;
+			chunks = new MappedByteBuffer[(int)((data_length + CHUNK_MASK) >>> CHUNK_BITS)];
+			for (int chunk = 0; chunk < chunks.length; chunk++)
+			{
+				long start = (long)chunk << CHUNK_BITS;
+				long length = Math.min(CHUNK_MASK + 1, data_length - start);
+				chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, data_offset + start, length);
+			}
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed.
+			file.close();
+		}
+	}
+	
+	/**********/
+	/* Lookup */
+	/**********/
+	
+	/*
+	 * lookup
+	 * Arguments:
+	 * 		first: The index of the first class.
+	 * 		second: The index of the second class.
+	 * This function returns the index of the most informative common
+	 * ancestor of the two classes, -1 if they have no common ancestor, or
+	 * MISSING if either class isn't in the table.
+	 */
+	public int lookup(int first, int second)
+	{
+		if (first < 0 || second < 0)
+		{
+			return MISSING;
+		}
+		int row = positions[first];
+		int column = positions[second];
+		if (row < 0 || column < 0)
+		{
+			return MISSING;
+		}
+		
+		// Only the lower triangle is stored.
+		if (column > row)
+		{
+			int swap = row;
+			row = column;
+			column = swap;
+		}
+		long position = (triangle(row) + column) * value_width;
+		MappedByteBuffer chunk = chunks[(int)(position >>> CHUNK_BITS)];
+		int offset = (int)(position & CHUNK_MASK);
+		int value = value_width == 2 ? chunk.getShort(offset) : chunk.getInt(offset);
+		
+		if (value < 0)
+		{
+			return -1;
+		}
+		return class_indices[value];
+	}
+	
+	/*
+	 * triangle
+	 * Arguments:
+	 * 		row: A row of the table.
+	 * This function returns how many values come before the given row.
+	 */
+	private static long triangle(int row)
+	{
+		return (long)row * (row + 1) / 2;
+	}
+	
+	/************/
+	/* Building */
+	/************/
+	
+	/*
+	 * build
+	 * Arguments:
+	 * 		ontology: The ontology to build the table for.
+	 * 		filename: The path to write the table to.
+	 * This function computes the most informative common ancestor of every
+	 * pair of classes in the table and writes the table out. If the ontology
+	 * uses thresholding, the table holds the important nodes; otherwise it
+	 * holds every class.
+	 * 
+	 * Rather than intersecting subsumers for every pair, we use the fact
+	 * that the common ancestors of a and b are a itself (if a subsumes b)
+	 * together with the common ancestors of each parent of a and b. So,
+	 * visiting classes parents first, the row of a is the best of a and the
+	 * rows of its parents. A row is dropped once all of the children of its
+	 * class have used it.
+	 */
+	public static void build(Ontology ontology, String filename) throws IOException
+	{
+		int class_count = ontology.getClassCount();
+		Options options = ontology.getOptions();
+		boolean use_thresholding = options.getUseThresholding();
+		CompressedRows parents = ontology.getParents();
+		CompressedRows children = ontology.getChildren();
+		CompressedRows descendants = ontology.getDescendants();
+		int [] order = ontology.getTopologicalOrder();
+		
+		// Rows are numbered in the order we'll finish them, so that when we
+		// finish a row we already know every column it needs to write.
+		int [] positions = new int[class_count];
+		Arrays.fill(positions, -1);
+		IntList row_classes = new IntList();
+		for (int node : order)
+		{
+			if (!use_thresholding || ontology.isImportant(node))
+			{
+				positions[node] = row_classes.size();
+				row_classes.add(node);
+			}
+		}
+		int row_count = row_classes.size();
+		
+		// Write the header.
+		ByteArrayOutputStream header_bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(header_bytes);
+		header.writeInt(MAGIC);
+		header.writeInt(VERSION);
+		header.writeBoolean(use_thresholding);
+		header.writeBoolean(options.getImportantNodesLowestIC());
+		header.writeInt(class_count);
+		for (int node = 0; node < class_count; node++)
+		{
+			header.writeUTF(ontology.getClassIdentity(node));
+		}
+		header.writeInt(row_count);
+		for (int row = 0; row < row_count; row++)
+		{
+			header.writeInt(row_classes.get(row));
+		}
+		int width = class_count <= Short.MAX_VALUE ? 2 : 4;
+		header.writeInt(width);
+		header.close();
+		
+		DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		try
+		{
+			output.writeInt(header_bytes.size());
+			header_bytes.writeTo(output);
+			
+			// Keep track of how many children still need each row.
+			int [][] rows = new int[class_count][];
+			int [] waiting = new int[class_count];
+			for (int node = 0; node < class_count; node++)
+			{
+				waiting[node] = children.size(node);
+			}
+			
+			for (int node : order)
+			{
+				// The class is its own best common ancestor with each of its
+				// descendants in the table.
+				int [] row = new int[row_count];
+				Arrays.fill(row, -1);
+				for (int i = descendants.start(node); i < descendants.end(node); i++)
+				{
+					int column = positions[descendants.get(i)];
+					if (column >= 0)
+					{
+						row[column] = node;
+					}
+				}
+				
+				// Otherwise, take the best common ancestor through any parent.
+				for (int i = parents.start(node); i < parents.end(node); i++)
+				{
+					int parent = parents.get(i);
+					int [] parent_row = rows[parent];
+					for (int column = 0; column < row_count; column++)
+					{
+						row[column] = better(ontology, row[column], parent_row[column]);
+					}
+					
+					// Drop the parent's row once no other child needs it.
+					if (--waiting[parent] == 0)
+					{
+						rows[parent] = null;
+					}
+				}
+				
+				// Write out the finished row.
+				int position = positions[node];
+				for (int column = 0; position >= 0 && column <= position; column++)
+				{
+					if (width == 2)
+					{
+						output.writeShort(row[column]);
+					}
+					else
+					{
+						output.writeInt(row[column]);
+					}
+				}
+				
+				if (waiting[node] > 0)
+				{
+					rows[node] = row;
+				}
+			}
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+	
+	/*
+	 * better
+	 * Arguments:
+	 * 		ontology: The ontology the classes are in.
+	 * 		first: The index of a class, or -1.
+	 * 		second: The index of a class, or -1.
+	 * This function returns whichever class has the higher IC score. Ties
+	 * go to the lower index, which is how computeLCS breaks them.
+	 */
+	private static int better(Ontology ontology, int first, int second)
+	{
+		if (first < 0)
+		{
+			return second;
+		}
+		if (second < 0)
+		{
+			return first;
+		}
+		double first_ic = ontology.getICScore(first);
+		double second_ic = ontology.getICScore(second);
+		if (first_ic > second_ic || (first_ic == second_ic && first < second))
+		{
+			return first;
+		}
+		return second;
+	}
+	
+	/********/
+	/* Main */
+	/********/
+	
+	public static void main(String [] args)
+	{
+		try
+		{
+			// Build the ontology and write out its table.
+			Ontology ontology = new Ontology(
+				// Class labels
+				args[0],
+				// Class to class
+				args[1],
+				// Individual labels
+				args[2],
+				// Individual to class
+				args[3]
+			);
+			build(ontology, args[4]);
+		}
+		catch (Exception e)
+		{
+			// Complain if something fails.
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+		
+		System.out.println("MICA Table Completed");
+	}
+	
+}
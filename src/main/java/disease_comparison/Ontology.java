@@ -1,28 +1,15 @@
 package disease_comparison;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
-
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.*;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
-import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Ontology {
 
@@ -30,32 +17,79 @@ public class Ontology {
 	/* Instance Variables */
 	/**********************/
 	
-	// Keep track of the actual ontology.
-	private DirectedGraph<OntologyNode, DefaultEdge> graph;
+	// It's inefficient to pass around strings, so we intern every class
+	// identifier as an index and only use strings for input and output.
+	private IdentifierTable classes;
+	
+	// Keep track of the name of each class, indexed like the classes.
+	private List<String> class_names;
+	
+	// Keep track of the actual ontology. The parents and children of each
+	// class are stored as compressed rows of class indices.
+	private CompressedRows parents;
+	private CompressedRows children;
+	
+	// Keep track of the transitive closure of the ontology. Each row holds
+	// every ancestor (or descendant) of a class, including the class itself.
+	private CompressedRows ancestors;
+	private CompressedRows descendants;
+	
+	// Keep track of every class ordered so that parents come before their
+	// children.
+	private int [] topological_order;
+	
+	// Keep track of how many individuals are annotated to each class or
+	// any of its descendants, and the IC score that follows from that.
+	private int [] annotated_counts;
+	private double [] ic_scores;
 	
-	// It's inefficient to pass around nodes, so we pass around strings and
-	// keep a table of identifiers.
-	private Map<String, OntologyNode> node_map;
+	// Keep track of the IC scores that the results an incremental update
+	// keeps were scored with, if they aren't the IC scores themselves.
+	private double [] reference_ic_scores;
 	
-	// Keep track of all the nodes each disease is associated with.
-	private Map<String, Set<String>> annotation_map;
+	// Intern every individual (disease or gene) identifier as well.
+	private IdentifierTable individuals;
+	
+	// Keep track of all the classes each individual is associated with.
+	private CompressedRows profiles;
+	
+	// Keep track of the individuals directly annotated to each class.
+	private CompressedRows given_annotations;
 	
 	// Keep track of the names of diseases.
 	private Map<String, String> annotation_names;
 	
 	// Keep track of the least common subsumers we've seen so we don't repeat
-	// too much work.
-	private Map<String, String> lcs_cache;
+	// too much work. The two class indices are packed into one key.
+	private LcsCache lcs_cache;
+	
+	// If we've built a table of least common subsumers, keep it here.
+	private MicaTable mica_table;
 	
 	// Keep track of the root of the graph.
-	private String root;
+	private int root;
 	
 	// Hold all the options for the ontology.
 	private Options options;
 	
 	// If we are using thresholding, keep track of the nodes with the
 	// highest IC scores.
-	private Set<String> important_nodes;
+	private boolean [] important_nodes;
+	
+	// If we're projecting the classes which aren't important, keep track of
+	// the class each one is projected onto, and the important subsumers of
+	// those which aren't important themselves.
+	private int [] representatives;
+	private CompressedRows projections;
+	
+	// Keep track of how long each phase of building took, in milliseconds,
+	// and how many times thresholding sent a pair straight to the root.
+	private long parse_millis;
+	private long root_millis;
+	private long closure_millis;
+	private long ic_millis;
+	private long important_nodes_millis;
+	private LongAdder root_shortcuts;
 
 	/****************/
 	/* Constructors */
@@ -64,47 +98,166 @@ public class Ontology {
 	public Ontology(String class_labels, String class_to_class,
 			String individual_labels, String individual_to_class)
 	{
-		// Create a blank ontology.
-		graph = new DefaultDirectedGraph<OntologyNode, DefaultEdge>(DefaultEdge.class);
+		// TODO: Don't use magic file path.
+		// Get parameters from the configuration file.
+		this(class_labels, class_to_class, individual_labels, individual_to_class,
+				new Options("./ontology.config"));
+	}
+	
+	public Ontology(String class_labels, String class_to_class,
+			String individual_labels, String individual_to_class, Options options)
+	{
+		// Hold onto the parameters we were given.
+		this.options = options;
 		
-		// We don't have any nodes, so our lookup table is empty.
-		node_map = new HashMap<String, OntologyNode>();
+		// We don't have any classes or individuals yet.
+		classes = new IdentifierTable();
+		class_names = new ArrayList<String>();
+		individuals = new IdentifierTable();
 				
 		// We haven't yet seen any diseases.
-		annotation_map = new HashMap<String, Set<String>>();
 		annotation_names = new HashMap<String, String>();
 		
-		// We haven't yet computed the LCS for any pairs of nodes.
-		lcs_cache = new HashMap<String, String>();
-		
 		// We don't yet have a graph, so we don't know the root yet.
-		root = "Empty Graph";
-		
-		// We haven't yet read in parameters, so just pick values.
-		options = new Options();
-				
-		// We haven't yet seen nodes, so we don't know which are important.
-		important_nodes = new HashSet<String>();
+		root = -1;
 		
-		// TODO: Don't use magic file path.
-		// Get parameters from the configuration file.
-		options.configure("./ontology.config");
+		// We haven't yet computed the LCS for any pairs of nodes.
+		lcs_cache = new LcsCache(options.getLcsCacheSize(), options.getLcsCachePolicy());
+		root_shortcuts = new LongAdder();
 		
 		// Parse the input files and fill in the ontology appropriately.
+		// The edges and annotations are collected as lists of index pairs
+		// and packed into compressed rows once we've seen every class.
+		IntList edge_children = new IntList();
+		IntList edge_parents = new IntList();
+		IntList annotation_individuals = new IntList();
+		IntList annotation_classes = new IntList();
+		long phase_start = System.nanoTime();
 		parseClassLabels(class_labels);
-		parseClassToClass(class_to_class);
-		parseIndividualToClass(individual_to_class);
+		parseClassToClass(class_to_class, edge_children, edge_parents);
+		parseIndividualToClass(individual_to_class, annotation_individuals, annotation_classes);
 		parseIndividualLabels(individual_labels);
-				
+		
+		// Build the adjacency and annotation rows.
+		int class_count = classes.size();
+		parents = new CompressedRows(class_count, edge_children, edge_parents);
+		children = parents.transpose(class_count);
+		profiles = new CompressedRows(individuals.size(), annotation_individuals, annotation_classes);
+		given_annotations = profiles.transpose(class_count);
+		parse_millis = millisSince(phase_start);
+		
+		// We haven't yet seen nodes, so we don't know which are important.
+		annotated_counts = new int[class_count];
+		ic_scores = new double[class_count];
+		important_nodes = new boolean[class_count];
+		
+		phase_start = System.nanoTime();
 		findRoot();
+		root_millis = millisSince(phase_start);
+		
+		// Build the ancestor and descendant closures once so we never have
+		// to search the graph again.
+		phase_start = System.nanoTime();
+		computeClosure();
+		closure_millis = millisSince(phase_start);
 		
 		// Get the IC score for every node.
+		phase_start = System.nanoTime();
 		computeAllICScores();
+		ic_millis = millisSince(phase_start);
 		
 		// If we're using thresholding, find the important nodes.
 		if (options.getUseThresholding())
 		{
+			phase_start = System.nanoTime();
 			findImportantNodes();
+			important_nodes_millis = millisSince(phase_start);
+		}
+		
+		// If we have a table of least common subsumers, load it.
+		if (options.getMicaTable() != null)
+		{
+			loadMicaTable(options.getMicaTable());
+		}
+	}
+	
+	/*
+	 * Arguments:
+	 * 		classes: The identifiers of the classes.
+	 * 		class_names: The name of each class.
+	 * 		parents: The parents of each class.
+	 * 		children: The children of each class.
+	 * 		ancestors: The subsumers of each class, including itself.
+	 * 		descendants: The classes each class subsumes, including itself.
+	 * 		topological_order: Every class, parents before children.
+	 * 		annotated_counts: The number of individuals annotated to each
+	 * 			class or its descendants.
+	 * 		ic_scores: The IC score of each class.
+	 * 		individuals: The identifiers of the individuals.
+	 * 		profiles: The classes each individual is annotated to.
+	 * 		annotation_names: The name of each individual.
+	 * 		root: The index of the root, or -1.
+	 * 		important_nodes: Whether each class is important, or null to find
+	 * 			the important nodes again from the IC scores.
+	 * 		options: The options for the ontology.
+	 * This constructor restores an ontology that has already been built,
+	 * such as one read back by OntologySnapshot.
+	 */
+	Ontology(IdentifierTable classes, List<String> class_names,
+			CompressedRows parents, CompressedRows children,
+			CompressedRows ancestors, CompressedRows descendants,
+			int [] topological_order, int [] annotated_counts, double [] ic_scores,
+			IdentifierTable individuals, CompressedRows profiles,
+			Map<String, String> annotation_names, int root, boolean [] important_nodes,
+			Options options)
+	{
+		this.classes = classes;
+		this.class_names = class_names;
+		this.parents = parents;
+		this.children = children;
+		this.ancestors = ancestors;
+		this.descendants = descendants;
+		this.topological_order = topological_order;
+		this.annotated_counts = annotated_counts;
+		this.ic_scores = ic_scores;
+		this.individuals = individuals;
+		this.profiles = profiles;
+		this.annotation_names = annotation_names;
+		this.root = root;
+		this.important_nodes = important_nodes;
+		this.options = options;
+		
+		// The annotations of each class are only needed to compute IC
+		// scores, which we already have.
+		int class_count = classes.size();
+		
+		// If we weren't given the important nodes, find them again, which
+		// projects the other classes too if we need to. Otherwise, the
+		// projections only depend on the closure and the important nodes,
+		// so they're cheap to rebuild.
+		if (important_nodes == null)
+		{
+			this.important_nodes = new boolean[class_count];
+			if (options.getUseThresholding())
+			{
+				long phase_start = System.nanoTime();
+				findImportantNodes();
+				important_nodes_millis = millisSince(phase_start);
+			}
+		}
+		else if (options.getUseThresholding() && options.getProjectUnimportant())
+		{
+			projectClasses();
+		}
+		
+		// We haven't yet computed the LCS for any pairs of nodes.
+		lcs_cache = new LcsCache(options.getLcsCacheSize(), options.getLcsCachePolicy());
+		root_shortcuts = new LongAdder();
+		
+		// If we have a table of least common subsumers, load it.
+		if (options.getMicaTable() != null)
+		{
+			loadMicaTable(options.getMicaTable());
 		}
 	}
 	
@@ -119,7 +272,7 @@ public class Ontology {
 	 * 			The input file must be formatted in two tab-separated columns.
 	 * 			The first column holds the identifier and the second holds the
 	 * 			name.
-	 * This function constructs a node for each line in the input file with the
+	 * This function assigns an index to each line in the input file with the
 	 * given identifier and name.
 	 */
 	private void parseClassLabels(String filename)
@@ -128,26 +281,21 @@ public class Ontology {
 		try
 		{
 			// Construct a node from each line of the input file.
-			for (Scanner sc = new Scanner(new File(filename)); sc.hasNext(); )
+			TsvReader.Columns lines = TsvReader.read(filename);
+			for (int line = 0; line < lines.size(); line++)
 			{
 				// Build the node.
-				String line = sc.nextLine();
-				String [] pieces = line.split("\t");
-				String identity = pieces[0];
-				String name = pieces[1];
-				OntologyNode new_node = new OntologyNode(identity, name);
-								
-				// Add the node to the graph.
-				graph.addVertex(new_node);
+				String identity = lines.first(line);
+				String name = lines.second(line);
 				
 				// Add the node to our lookup table.
-				node_map.put(identity, new_node);
+				internClass(identity, name);
 			}
 		}
-		catch (FileNotFoundException exception)
+		catch (IOException exception)
 		{
 			// If we're given a bad file, let the user know.
-			System.out.println("Class Label file not found at:");
+			System.out.println("Class Label file could not be read at:");
 			System.out.println(filename);
 		}
 	}
@@ -159,45 +307,50 @@ public class Ontology {
 	 * 			The input file must be formatted in two tab-separated columns.
 	 * 			The first column holds the identifier of the child node, and
 	 * 			the second column holds the identifier of the parent node.
-	 * This function constructs the edges of the graph.
+	 * 		edge_children: The list to add the child index of each edge to.
+	 * 		edge_parents: The list to add the parent index of each edge to.
+	 * This function collects the edges of the graph.
 	 */
-	private void parseClassToClass(String filename)
+	private void parseClassToClass(String filename, IntList edge_children, IntList edge_parents)
 	{
 		// Add edges to the graph.
 		try
 		{
 			// Construct an edge from each line of the input file.
-			for (Scanner sc = new Scanner(new File(filename)); sc.hasNext(); )
+			TsvReader.Columns lines = TsvReader.read(filename);
+			for (int line = 0; line < lines.size(); line++)
 			{
-				String line = sc.nextLine();
-				String [] pieces = line.split("\t");
-				String child_identity = pieces[0];
-				String parent_identity = pieces[1];
+				String child_identity = lines.first(line);
+				String parent_identity = lines.second(line);
 				
 				// TODO: Handle unnamed nodes better.
 				// If either node does not exist, create it and add it to the graph.
-				if (!graph.containsVertex(node_map.get(child_identity)))
+				int child = classes.indexOf(child_identity);
+				if (child < 0)
+				{
+					child = internClass(child_identity, "unnamed");
+				}
+				int parent = classes.indexOf(parent_identity);
+				if (parent < 0)
 				{
-					OntologyNode child_node = new OntologyNode(child_identity, "unnamed");
-					node_map.put(child_identity, child_node);
-					graph.addVertex(child_node);
+					parent = internClass(parent_identity, "unnamed");
 				}
-				if (!graph.containsVertex(node_map.get(parent_identity)))
+				
+				// A class can't be its own parent.
+				if (child == parent)
 				{
-					OntologyNode parent_node = new OntologyNode(parent_identity, "unnamed");
-					node_map.put(parent_identity, parent_node);
-					graph.addVertex(parent_node);
+					continue;
 				}
 				
-				// Find the nodes corresponding to each of the two identifiers
-				// and build the edge between them.
-				graph.addEdge(node_map.get(child_identity), node_map.get(parent_identity));
+				// Remember the edge between the two nodes.
+				edge_children.add(child);
+				edge_parents.add(parent);
 			}
 		}
-		catch (FileNotFoundException exception)
+		catch (IOException exception)
 		{
 			// If we're given a bad file, let the user know.
-			System.out.println("Class To Class file not found at:");
+			System.out.println("Class To Class file could not be read at:");
 			System.out.println(filename);
 		}
 	}
@@ -209,50 +362,42 @@ public class Ontology {
 	 * 			The input file must be formatted in two tab-separated columns.
 	 * 			The first column holds the identifier of the annotation, and
 	 * 			the second column holds the identifier of the associated node.
-	 * This function counts the annotations on each node.
+	 * 		annotation_individuals: The list to add the individual index of
+	 * 			each annotation to.
+	 * 		annotation_classes: The list to add the class index of each
+	 * 			annotation to.
+	 * This function collects the annotations on each node.
 	 */
-	private void parseIndividualToClass(String filename)
+	private void parseIndividualToClass(String filename,
+			IntList annotation_individuals, IntList annotation_classes)
 	{
 		// Read in annotations.
 		try
 		{
 			// Add an annotation for each line of the input file.
-			for (Scanner sc = new Scanner(new File(filename)); sc.hasNext(); )
+			TsvReader.Columns lines = TsvReader.read(filename);
+			for (int line = 0; line < lines.size(); line++)
 			{
-				String line = sc.nextLine();
-				String [] pieces = line.split("\t");
-				String annotation_identity = pieces[0];
-				String node_identity = pieces[1];
-				OntologyNode node = node_map.get(node_identity);
+				String annotation_identity = lines.first(line);
+				String node_identity = lines.second(line);
+				int node = classes.indexOf(node_identity);
 				
 				// FIXME: Handle invalid nodes better.
-				if (node == null)
+				if (node < 0)
 				{
 					continue;
 				}
 				
-				// Add an annotation to the node count.
-				node.addGivenAnnotation(annotation_identity);
-				
-				// Add an annotation to the disease.
-				if (annotation_map.containsKey(annotation_identity))
-				{
-					annotation_map.get(annotation_identity).add(node_identity);
-				}
-				else
-				{
-					// If we haven't seen this disease before, build a new set
-					// of node identifiers to map this disease to.
-					Set<String> annotation_nodes = new HashSet<String>();
-					annotation_nodes.add(node_identity);
-					annotation_map.put(annotation_identity, annotation_nodes);
-				}
+				// Add an annotation to the disease. If we haven't seen this
+				// disease before, it gets the next free index.
+				annotation_individuals.add(individuals.intern(annotation_identity));
+				annotation_classes.add(node);
 			}
 		}
-		catch (FileNotFoundException exception)
+		catch (IOException exception)
 		{
 			// If we're given a bad file, let the user know.
-			System.out.println("Individual To Class file not found at:");
+			System.out.println("Individual To Class file could not be read at:");
 			System.out.println(filename);
 		}
 	}
@@ -272,203 +417,255 @@ public class Ontology {
 		try
 		{
 			// Add an annotation label for each line of the input file.
-			for (Scanner sc = new Scanner(new File(filename)); sc.hasNext(); )
+			TsvReader.Columns lines = TsvReader.read(filename);
+			for (int line = 0; line < lines.size(); line++)
 			{
-				String line = sc.nextLine();
-				String [] pieces = line.split("\t");
-				String annotation_identity = pieces[0];
-				String annotation_name = pieces[1];
+				String annotation_identity = lines.first(line);
+				String annotation_name = lines.second(line);
 				
 				// Save the name.
 				annotation_names.put(annotation_identity, annotation_name);
 			}
 		}
-		catch (FileNotFoundException exception)
+		catch (IOException exception)
 		{
 			// If we're given a bad file, let the user know.
-			System.out.println("Individual Labels file not found at:");
+			System.out.println("Individual Labels file could not be read at:");
 			System.out.println(filename);
 		}
 	}
 	
-	/********************/
-	/* Graph Operations */
-	/********************/
-	
 	/*
-	 * directedNeighbors
+	 * loadMicaTable
 	 * Arguments:
-	 * 		identity: The identifier of the node whose neighbors we want.
-	 * 		out_edges: A boolean specifying whether we want to follow outgoing
-	 * 			or incoming edges.
-	 * This function returns the set of identifiers for neighbors of the given
-	 * node in the correct direction.
-	 * 
-	 * This is a helper function for children and parents.
+	 * 		filename: The path to a table built by MicaTable.
+	 * This function memory-maps the table of least common subsumers.
 	 */
-	private Set<String> directedNeighbors(String identity, boolean out_edges)
+	private void loadMicaTable(String filename)
 	{
-		// Look up the node.
-		OntologyNode node = node_map.get(identity);
-		
-		// Keep track of the neighbors.
-		HashSet<String> neighbors = new HashSet<String>();
-		
-		// Find all the edges in the correct direction.
-		Set<DefaultEdge> edges;
-		if (out_edges)
-		{
-			edges = graph.outgoingEdgesOf(node);
-		}
-		else
+		try
 		{
-			edges = graph.incomingEdgesOf(node);
+			mica_table = new MicaTable(filename, this);
 		}
-		
-		// Follow each edge to get the neighbor.
-		for (DefaultEdge edge : edges)
+		catch (IOException exception)
 		{
-			if (out_edges)
-			{
-				// If we're looking at outgoing edges, we want the node at the
-				// end of each edge.
-				neighbors.add(graph.getEdgeTarget(edge).getIdentity());
-			}
-			else
-			{
-				// If we're looking at incoming edges, we want the node at the
-				// start of each edge.
-				neighbors.add(graph.getEdgeSource(edge).getIdentity());
-			}
+			// If we're given a bad file, let the user know and carry on
+			// without it.
+			System.out.println("MICA table could not be read at:");
+			System.out.println(filename);
+			System.out.println(exception.getMessage());
 		}
-		
-		return neighbors;
 	}
 	
 	/*
-	 * children
+	 * internClass
 	 * Arguments:
-	 * 		identity: The identifier of the node whose children we want.
-	 * This function returns the set of identifiers for children of the given
-	 * node.
+	 * 		identity: The identifier of the class.
+	 * 		name: The name of the class.
+	 * This function assigns an index to the class if it doesn't have one,
+	 * records its name and returns the index.
 	 */
-	@SuppressWarnings("unused")
-	private Set<String> children(String identity)
+	private int internClass(String identity, String name)
 	{
-		// Call the helper function.
-		return directedNeighbors(identity, false);
-		
+		int index = classes.intern(identity);
+		if (index == class_names.size())
+		{
+			class_names.add(name);
+		}
+		else
+		{
+			class_names.set(index, name);
+		}
+		return index;
 	}
 	
-	/*
-	 * parents
-	 * Arguments:
-	 * 		identity: The identifier of the node whose parents we want.
-	 * This function returns the set of identifiers for parents of the given
-	 * node.
-	 */
-	private Set<String> parents(String identity)
-	{
-		// Call the helper function.
-		return directedNeighbors(identity, true);
-		
-	}
+	/********************/
+	/* Graph Operations */
+	/********************/
 	
 	/*
 	 * directedRelatives
 	 * Arguments:
-	 * 		identity: The identifier of the node whose relatives we want.
-	 *      out_edges: A boolean specifying whether we want to follow outgoing
-	 * 			or incoming edges.
-	 * This function returns the set of identifiers for relatives of the given
-	 * node in the correct direction.
+	 * 		node: The index of the node whose relatives we want.
+	 *      neighbors: The parents or children of every node, depending on
+	 *      	which direction we want to follow.
+	 * This function returns the indices of relatives of the given node in
+	 * the correct direction, including the node itself.
 	 * 
-	 * This is a helper function for descendants and subsumers.
+	 * This is a helper function for computeClosure.
 	 */
-	private Set<String> directedRelatives(String identity, boolean out_edges)
+	private int [] directedRelatives(int node, CompressedRows neighbors)
 	{
-		// Keep track of the identifiers for nodes.
-		HashSet<String> relatives = new HashSet<String>();
+		// Keep track of the nodes we've seen.
+		BitSet seen = new BitSet(classes.size());
 		
-		// Keep track of the identifiers for nodes we still have to expand.
-		LinkedList<String> unexplored = new LinkedList<String>();
-
-		unexplored.add(identity);
-		relatives.add(identity);
+		// The relatives double as a queue: everything past the explored
+		// position still has to be expanded.
+		IntList relatives = new IntList();
+		relatives.add(node);
+		seen.set(node);
 		
-		// As long we still have unexpanded descendants, continue exploring.
-		while (!unexplored.isEmpty())
+		// As long we still have unexpanded relatives, continue exploring.
+		for (int explored = 0; explored < relatives.size(); explored++)
 		{
-			// Choose a descendant to explore.
-			String relative = unexplored.pop();
+			// Choose a relative to explore.
+			int relative = relatives.get(explored);
 			
-			for (String neighbor_identity : directedNeighbors(relative, out_edges))
+			for (int i = neighbors.start(relative); i < neighbors.end(relative); i++)
 			{
-				// Check if we've already seen the child.
-				if (relatives.contains(neighbor_identity))
+				// Check if we've already seen the neighbor.
+				int neighbor = neighbors.get(i);
+				if (seen.get(neighbor))
 				{
 					continue;
 				}
 				
 				// Otherwise, we've seen it now, and we should explore it later.
-				relatives.add(neighbor_identity);
-				unexplored.add(neighbor_identity);
+				seen.set(neighbor);
+				relatives.add(neighbor);
 			}
 		}
 		
-		return relatives;
-		
+		return relatives.toArray();
 	}
 	
 	/*
-	 * descendants
+	 * findRoot
 	 * Arguments:
-	 * 		identity: The identifier of the node whose descendants we want.
-	 * This function returns the set of identifiers for descendants of the given
-	 * node.
+	 * 		None
+	 * This function finds the root of the ontology and stores it.
 	 */
-	private Set<String> descendants(String identity)
+	private void findRoot()
 	{
-		// Call the helper function.
-		return directedRelatives(identity, false);		
+		// If there are no nodes, there is no root.
+		if (classes.size() == 0)
+		{
+			return;
+		}
+		
+		// So long as the possible root has ancestors, we're not done. If we
+		// haven't found the root yet, the root is an ancestor of our
+		// possible root, so we try again with a parent.
+		int possible_root = 0;
+		while (parents.size(possible_root) > 0)
+		{
+			possible_root = parents.get(parents.start(possible_root));
+		}
+		
+		// Our possible root no longer has parents, so it is actually the root. 
+		root = possible_root;
 	}
 	
 	/*
-	 * findRoot
+	 * topologicalOrder
 	 * Arguments:
 	 * 		None
-	 * This function finds the root of the ontology and stores it.
+	 * This function returns the indices of every node ordered so that each
+	 * node comes after all of its parents. Nodes caught in a cycle can't be
+	 * ordered, so they are left off the end.
 	 */
-	private void findRoot()
-	{		
-		// Keep track of our possible root and nodes to consider.
-		String possible_root = "Empty Graph";
-		Set<String> node_set = node_map.keySet();
+	private IntList topologicalOrder()
+	{
+		// Count the parents we still have to visit for each node.
+		int [] waiting = new int[classes.size()];
+		IntList order = new IntList(classes.size());
+		for (int node = 0; node < classes.size(); node++)
+		{
+			waiting[node] = parents.size(node);
+			if (waiting[node] == 0)
+			{
+				order.add(node);
+			}
+		}
 		
-		// So long as the possible root has ancestors, we're not done. 
-		while (!node_set.isEmpty())
+		// Once every parent of a child has been visited, visit the child.
+		for (int visited = 0; visited < order.size(); visited++)
 		{
-			// If we haven't found the root yet, the root is an ancestor of
-			// our possible root, so we try again with the parents.
-			possible_root = node_set.iterator().next();
-			node_set = parents(possible_root);
+			int node = order.get(visited);
+			for (int i = children.start(node); i < children.end(node); i++)
+			{
+				int child = children.get(i);
+				if (--waiting[child] == 0)
+				{
+					order.add(child);
+				}
+			}
 		}
 		
-		// Our possible root no longer has parents, so it is actually the root. 
-		root = possible_root;		
+		return order;
 	}
-
+	
 	/*
-	 * subsumers
+	 * computeClosure
 	 * Arguments:
-	 * 		identity: The identifier of the node whose subsumers we want.
-	 * This function returns the set of identifiers for subsumers of the given
-	 * node.
+	 * 		None
+	 * This function finds the subsumers and descendants of every node and
+	 * stores them.
 	 */
-	private Set<String> subsumers(String identity)
+	private void computeClosure()
 	{
-		// Call the helper function.
-		return directedRelatives(identity, true);
+		int class_count = classes.size();
+		int [][] subsumers = new int[class_count][];
+		
+		// Visiting parents before children means the subsumers of a node are
+		// just the node plus the subsumers of its parents.
+		IntList order = topologicalOrder();
+		topological_order = order.toArray();
+		BitSet seen = new BitSet(class_count);
+		IntList relatives = new IntList();
+		for (int visited = 0; visited < order.size(); visited++)
+		{
+			int node = order.get(visited);
+			relatives.clear();
+			relatives.add(node);
+			seen.set(node);
+			for (int i = parents.start(node); i < parents.end(node); i++)
+			{
+				for (int subsumer : subsumers[parents.get(i)])
+				{
+					if (!seen.get(subsumer))
+					{
+						seen.set(subsumer);
+						relatives.add(subsumer);
+					}
+				}
+			}
+			
+			// Keep each row sorted so rows can be intersected by merging.
+			subsumers[node] = relatives.toArray();
+			Arrays.sort(subsumers[node]);
+			for (int subsumer : subsumers[node])
+			{
+				seen.clear(subsumer);
+			}
+		}
+		
+		// FIXME: Cycles shouldn't happen, but if they do, fall back on
+		// searching the graph for the nodes we couldn't order.
+		for (int node = 0; node < class_count; node++)
+		{
+			if (subsumers[node] == null)
+			{
+				subsumers[node] = directedRelatives(node, parents);
+				Arrays.sort(subsumers[node]);
+			}
+		}
+		
+		// Pack the rows together.
+		int [] offsets = new int[class_count + 1];
+		for (int node = 0; node < class_count; node++)
+		{
+			offsets[node + 1] = offsets[node] + subsumers[node].length;
+		}
+		int [] entries = new int[offsets[class_count]];
+		for (int node = 0; node < class_count; node++)
+		{
+			System.arraycopy(subsumers[node], 0, entries, offsets[node], subsumers[node].length);
+		}
+		ancestors = new CompressedRows(offsets, entries);
+		
+		// The descendants are the same relation in the opposite direction.
+		descendants = ancestors.transpose(class_count);
 	}
 	
 	/***********************/
@@ -478,31 +675,28 @@ public class Ontology {
 	/*
 	 * computeIC
 	 * Arguments:
-	 * 		identity: The identifier of the node whose IC score we want.
-	 * This function computes the IC score for the given node and stores it
-	 * in the node.
+	 * 		node: The index of the node whose IC score we want.
+	 * This function computes the IC score for the given node from its
+	 * descendants and stores it.
 	 * 
 	 * This is a helper function for computeAllICScores.
 	 */
-	private void computeIC(String identity)
+	private void computeIC(int node)
 	{
-		// Look up the node.
-		OntologyNode node = node_map.get(identity); 
-		
 		// Keep track of the annotated diseases we've seen.
-		HashSet<String> derived_annotations = new HashSet<String>();
+		BitSet derived_annotations = new BitSet(individuals.size());
 		
 		// Find which diseases are annotated to each descendant.
-		for (String descendant_identity : descendants(identity))
+		for (int d = descendants.start(node); d < descendants.end(node); d++)
 		{
-			derived_annotations.addAll(node_map.get(descendant_identity).getGivenAnnotations());
+			int descendant = descendants.get(d);
+			for (int i = given_annotations.start(descendant); i < given_annotations.end(descendant); i++)
+			{
+				derived_annotations.set(given_annotations.get(i));
+			}
 		}
 		
-		// Compute the IC score from the number of annotations.
-		double probability = (double)derived_annotations.size() / annotation_map.size();
-				
-		// Compute the negative log of the probability.
-		node.setICScore(-Math.log(probability) / Math.log(2));
+		setAnnotatedCount(node, derived_annotations.cardinality());
 	}
 	
 	/*
@@ -513,11 +707,90 @@ public class Ontology {
 	 */
 	private void computeAllICScores()
 	{
-		// Compute the IC score for each node.
-		for (String identity : node_map.keySet())
+		// FIXME: Cycles shouldn't happen, but if they do we can't sweep the
+		// graph, so compute each IC score from the descendants instead.
+		if (topological_order.length < classes.size())
 		{
-			computeIC(identity);
+			for (int node = 0; node < classes.size(); node++)
+			{
+				computeIC(node);
+			}
+			return;
 		}
+		
+		// Keep track of the diseases annotated to each node or its
+		// descendants. We only hold onto a set until every child has added
+		// to it and the node has passed it along to its parents, so most
+		// nodes never have one at all.
+		BitSet [] derived_annotations = new BitSet[classes.size()];
+		
+		// Walking backwards, every child comes before its parents.
+		for (int visited = topological_order.length - 1; visited >= 0; visited--)
+		{
+			int node = topological_order[visited];
+			BitSet node_annotations = derived_annotations[node];
+			derived_annotations[node] = null;
+			
+			// Add the diseases annotated directly to this node.
+			if (given_annotations.size(node) > 0 && node_annotations == null)
+			{
+				node_annotations = new BitSet(individuals.size());
+			}
+			for (int i = given_annotations.start(node); i < given_annotations.end(node); i++)
+			{
+				node_annotations.set(given_annotations.get(i));
+			}
+			
+			// Nodes with no annotated descendants are skipped entirely.
+			if (node_annotations == null)
+			{
+				setAnnotatedCount(node, 0);
+				continue;
+			}
+			setAnnotatedCount(node, node_annotations.cardinality());
+			
+			// Pass the diseases along to each parent. The first parent
+			// without a set of its own just takes ours, since we're done
+			// with it.
+			boolean handed_off = false;
+			for (int i = parents.start(node); i < parents.end(node); i++)
+			{
+				int parent = parents.get(i);
+				if (derived_annotations[parent] != null)
+				{
+					derived_annotations[parent].or(node_annotations);
+				}
+				else if (!handed_off)
+				{
+					derived_annotations[parent] = node_annotations;
+					handed_off = true;
+				}
+				else
+				{
+					derived_annotations[parent] = (BitSet)node_annotations.clone();
+				}
+			}
+		}
+	}
+	
+	/*
+	 * setAnnotatedCount
+	 * Arguments:
+	 * 		node: The index of the node.
+	 * 		count: The number of diseases annotated to the node or any of
+	 * 			its descendants.
+	 * This function stores the count for the given node along with the IC
+	 * score that follows from it.
+	 */
+	private void setAnnotatedCount(int node, int count)
+	{
+		annotated_counts[node] = count;
+		
+		// Compute the IC score from the number of annotations.
+		double probability = (double)count / individuals.size();
+				
+		// Compute the negative log of the probability.
+		ic_scores[node] = -Math.log(probability) / Math.log(2);
 	}
 	
 	/*
@@ -525,37 +798,49 @@ public class Ontology {
 	 * Arguments:
 	 * 		None
 	 * This function finds up to max_important_nodes nodes with sufficiently
-	 * high IC scores and stores them in important_nodes.
+	 * high IC scores and marks them in important_nodes.
+	 * 
+	 * If important_nodes_lowest_ic is set, we want the nodes with the lowest
+	 * IC scores instead. Every ancestor of such a node is one too, so when
+	 * we're projecting, every node has important ancestors to be projected
+	 * onto, and the LCS of two projections is exact whenever the real LCS
+	 * is important. Otherwise, a node with no important ancestor is
+	 * projected onto the root.
 	 */
 	private void findImportantNodes()
 	{
 		// We use a modified version of quickselect to get the important nodes.
 		
 		// Keep track of all nodes still being considered.
-		Set<String> node_set = new HashSet<String>();
-		node_set.addAll(node_map.keySet());
+		IntList node_set = new IntList(classes.size());
+		for (int node = 0; node < classes.size(); node++)
+		{
+			node_set.add(node);
+		}
 		
 		// Keep track of the important nodes.
 		int available_space = options.getMaxImportantNodes();
 		
 		// Keep track of those elements with IC score larger than the pivot,
 		// those with IC score equal to the pivot, and those with IC score
-		// less than the pivot.
-		Set<String> large = new HashSet<String>();
-		Set<String> equal = new HashSet<String>();
-		Set<String> small = new HashSet<String>();
+		// less than the pivot. If we want the lowest IC scores, flip them so
+		// the lowest count as largest.
+		double direction = options.getImportantNodesLowestIC() ? -1 : 1;
+		IntList large = new IntList();
+		IntList equal = new IntList();
+		IntList small = new IntList();
 		
 		while (node_set.size() > available_space)
 		{
 			// Keep a pivot for partitioning.
-			String pivot = node_set.iterator().next();
-			double pivot_ic = node_map.get(pivot).getICScore();
+			double pivot_ic = direction * ic_scores[node_set.get(0)];
 			
 			// Partition the nodes by IC score.
-			for (String current_node : node_set)
-			{				
+			for (int i = 0; i < node_set.size(); i++)
+			{
 				// Check each node against the pivot and partition accordingly.
-				double current_ic = node_map.get(current_node).getICScore();
+				int current_node = node_set.get(i);
+				double current_ic = direction * ic_scores[current_node];
 				if (current_ic > pivot_ic)
 				{
 					large.add(current_node);
@@ -574,7 +859,9 @@ public class Ontology {
 			// throw out all the small nodes and recurse on the large ones.
 			if (large.size() > available_space)
 			{
-				node_set.retainAll(large);
+				IntList swap = node_set;
+				node_set = large;
+				large = swap;
 				large.clear();
 				equal.clear();
 				small.clear();
@@ -582,7 +869,7 @@ public class Ontology {
 			}
 			
 			// Otherwise, all the large nodes are important.
-			important_nodes.addAll(large);
+			markImportant(large);
 			available_space -= large.size();
 			
 			// If we've got more elements with equal IC scores than available
@@ -594,18 +881,121 @@ public class Ontology {
 			}
 			
 			// Otherwise, the equal node are important too.
-			important_nodes.addAll(equal);
+			markImportant(equal);
 			available_space -= equal.size();
 			
 			// Recurse on the small nodes.
-			node_set.retainAll(small);
+			IntList swap = node_set;
+			node_set = small;
+			small = swap;
 			large.clear();
 			equal.clear();
 			small.clear();
 		}
 		
 		// When we have space for all the remaining nodes, they're all important.
-		important_nodes.addAll(node_set);
+		markImportant(node_set);
+		
+		if (options.getProjectUnimportant())
+		{
+			projectClasses();
+		}
+	}
+	
+	/*
+	 * markImportant
+	 * Arguments:
+	 * 		nodes: The indices of the nodes to mark.
+	 * This function marks each of the given nodes as important.
+	 * 
+	 * This is a helper function for findImportantNodes.
+	 */
+	private void markImportant(IntList nodes)
+	{
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			important_nodes[nodes.get(i)] = true;
+		}
+	}
+	
+	/*
+	 * projectClasses
+	 * Arguments:
+	 * 		None
+	 * This function finds the class each class which isn't important is
+	 * projected onto. A class stands for its important subsumers, which are
+	 * the subsumers of its most specific important ancestors, so classes
+	 * with the same most specific important ancestors give the same least
+	 * common subsumers and share one representative. If there's only one,
+	 * that's the representative. Otherwise, the first class we see with them
+	 * is, and we keep its important subsumers to compare against.
+	 */
+	private void projectClasses()
+	{
+		int class_count = classes.size();
+		representatives = new int[class_count];
+		IntList projected_classes = new IntList();
+		IntList projected_subsumers = new IntList();
+		IntList candidates = new IntList();
+		IntList most_specific = new IntList();
+		
+		// IntBuffers compare by their contents.
+		Map<IntBuffer, Integer> shared = new HashMap<IntBuffer, Integer>();
+		for (int node = 0; node < class_count; node++)
+		{
+			if (important_nodes[node])
+			{
+				representatives[node] = node;
+				continue;
+			}
+			
+			// Gather the important ancestors, and keep the ones which aren't
+			// above another.
+			candidates.clear();
+			for (int i = ancestors.start(node); i < ancestors.end(node); i++)
+			{
+				if (important_nodes[ancestors.get(i)])
+				{
+					candidates.add(ancestors.get(i));
+				}
+			}
+			most_specific.clear();
+			for (int i = 0; i < candidates.size(); i++)
+			{
+				int candidate = candidates.get(i);
+				boolean below_others = true;
+				for (int j = 0; j < candidates.size() && below_others; j++)
+				{
+					int other = candidates.get(j);
+					below_others = other == candidate || !ancestors.contains(other, candidate);
+				}
+				if (below_others)
+				{
+					most_specific.add(candidate);
+				}
+			}
+			
+			// Without important ancestors, the class goes to the root.
+			if (most_specific.size() <= 1)
+			{
+				representatives[node] = most_specific.size() == 1 ? most_specific.get(0) : -1;
+				continue;
+			}
+			IntBuffer key = IntBuffer.wrap(most_specific.toArray());
+			Integer representative = shared.get(key);
+			if (representative == null)
+			{
+				shared.put(key, node);
+				representative = node;
+				for (int i = 0; i < candidates.size(); i++)
+				{
+					projected_classes.add(node);
+					projected_subsumers.add(candidates.get(i));
+				}
+			}
+			representatives[node] = representative;
+		}
+		projections = new CompressedRows(class_count, projected_classes, projected_subsumers);
 	}
 	
 	/*
@@ -613,78 +1003,344 @@ public class Ontology {
 	 * Arguments:
 	 * 		first_identity: The identifier for the first node.
 	 * 		second_identity: The identifier for the second node.
-	 * This function computes the least common subsumer for two nodes.
+	 * This function computes the least common subsumer for two nodes and
+	 * returns its identifier.
 	 */
 	public String computeLCS(String first_identity, String second_identity)
 	{
-		// If we've already computed the LCS for this pair, check the cache
-		// to get it.
-		String combined_identity = first_identity + "\t" + second_identity;
-		if (lcs_cache.containsKey(combined_identity))
+		int lcs = computeLCS(classes.indexOf(first_identity), classes.indexOf(second_identity));
+		if (lcs < 0)
 		{
-			return lcs_cache.get(combined_identity);
+			return "NO SUBSUMERS";
 		}
-		
+		return classes.identity(lcs);
+	}
+	
+	/*
+	 * computeLCS
+	 * Arguments:
+	 * 		first: The index of the first node.
+	 * 		second: The index of the second node.
+	 * This function computes the least common subsumer for two nodes and
+	 * returns its index, or -1 if there isn't one.
+	 */
+	public int computeLCS(int first, int second)
+	{
 		// If we're using thresholding, make sure both nodes are sufficiently
 		// important.
 		if (options.getUseThresholding())
 		{
+			// If we're projecting, swap in the classes the nodes are
+			// projected onto.
+			if (representatives != null && first >= 0 && second >= 0)
+			{
+				first = representatives[first];
+				second = representatives[second];
+			}
+			
 			// If we don't have important nodes, assume the root is the LCS.
-			if (! (important_nodes.contains(first_identity)	&&
-					important_nodes.contains(second_identity)))
+			if (first < 0 || second < 0 ||
+					(!(important_nodes[first] && important_nodes[second]) && representatives == null))
 			{
+				root_shortcuts.increment();
 				return root;
 			}
 		}
 		
-		// Get all the subsumers for both of the given nodes.
-		Set<String> first_subsumers = subsumers(first_identity);
-		Set<String> second_subsumers = subsumers(second_identity);
+		// Unknown nodes have no subsumers.
+		if (first < 0 || second < 0)
+		{
+			return -1;
+		}
+		
+		// If both nodes are in the table, just read the LCS out of it.
+		if (mica_table != null)
+		{
+			int lcs = mica_table.lookup(first, second);
+			if (lcs != MicaTable.MISSING)
+			{
+				return lcs;
+			}
+		}
 		
-		// Find the common subsumers of the two nodes.
-		Set<String> common_subsumers = new HashSet<String>(first_subsumers);
-		common_subsumers.retainAll(second_subsumers);
+		// If we've already computed the LCS for this pair, check the cache
+		// to get it. The LCS doesn't depend on the order of the pair, so we
+		// only store it under one order.
+		long combined_identity = packPair(first, second);
+		int cached = lcs_cache.get(combined_identity);
+		if (cached != LcsCache.MISSING)
+		{
+			return cached;
+		}
 		
 		// Keep track of the best common subsumer.
-		String best_subsumer = "NO SUBSUMERS";
+		int best_subsumer = -1;
 		double best_ic = -1;
 		
-		// Check each common subsumer against the best so far.
-		for (String subsumer : common_subsumers)
+		// Both rows of subsumers are sorted, so we can find the common
+		// subsumers by walking through them together. A projected node only
+		// has its important subsumers.
+		CompressedRows first_rows = important_nodes[first] || representatives == null ? ancestors : projections;
+		CompressedRows second_rows = important_nodes[second] || representatives == null ? ancestors : projections;
+		int i = first_rows.start(first);
+		int j = second_rows.start(second);
+		int first_end = first_rows.end(first);
+		int second_end = second_rows.end(second);
+		while (i < first_end && j < second_end)
 		{
-			double subsumer_ic = node_map.get(subsumer).getICScore(); 
-			if (subsumer_ic > best_ic)
+			int first_subsumer = first_rows.get(i);
+			int second_subsumer = second_rows.get(j);
+			if (first_subsumer < second_subsumer)
 			{
-				best_subsumer = subsumer;
-				best_ic = subsumer_ic;
+				i++;
+			}
+			else if (first_subsumer > second_subsumer)
+			{
+				j++;
+			}
+			else
+			{
+				// Check each common subsumer against the best so far.
+				double subsumer_ic = ic_scores[first_subsumer];
+				if (subsumer_ic > best_ic)
+				{
+					best_subsumer = first_subsumer;
+					best_ic = subsumer_ic;
+				}
+				i++;
+				j++;
 			}
 		}
 		
 		// Cache the result.
 		lcs_cache.put(combined_identity, best_subsumer);
 		
-		// Cache the result in the opposite order so we don't compute that.
-		String other_combined_identity = second_identity + "\t" + first_identity;
-		lcs_cache.put(other_combined_identity, best_subsumer);
-		
-		// Return the identifier of the least common subsumer.
+		// Return the index of the least common subsumer.
 		return best_subsumer;
 	}
 	
+	/*
+	 * packPair
+	 * Arguments:
+	 * 		first: The index of the first node.
+	 * 		second: The index of the second node.
+	 * This function packs an unordered pair of indices into a single key.
+	 */
+	private static long packPair(int first, int second)
+	{
+		if (first > second)
+		{
+			int swap = first;
+			first = second;
+			second = swap;
+		}
+		return ((long)first << 32) | (second & 0xffffffffL);
+	}
+	
+	/*
+	 * millisSince
+	 * Arguments:
+	 * 		start: A time from System.nanoTime.
+	 * This function returns the milliseconds since the start.
+	 */
+	private static long millisSince(long start)
+	{
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	/***********/
+	/* Updates */
+	/***********/
+	
+	/*
+	 * addAnnotations
+	 * Arguments:
+	 * 		individual_labels: The path to a file of names for any new
+	 * 			individuals, formatted like the individual labels file.
+	 * 		individual_to_class: The path to a file of new annotations,
+	 * 			formatted like the annotations file.
+	 * This function returns a copy of the ontology with the new annotations
+	 * added, leaving this one as it was. Individuals we haven't seen get the
+	 * next free indices. Only the classes a changed profile newly reaches
+	 * get new annotated counts, and only their IC scores are recomputed,
+	 * unless the number of individuals changed, which moves every score.
+	 */
+	Ontology addAnnotations(String individual_labels, String individual_to_class)
+	{
+		// Copy the individuals, so new ones don't show up in this ontology.
+		IdentifierTable new_individuals = new IdentifierTable();
+		for (int individual = 0; individual < individuals.size(); individual++)
+		{
+			new_individuals.intern(individuals.identity(individual));
+		}
+		Ontology updated = new Ontology(classes, class_names, parents, children, ancestors, descendants,
+				topological_order, annotated_counts.clone(), ic_scores.clone(),
+				new_individuals, profiles, new HashMap<String, String>(annotation_names),
+				root, important_nodes.clone(), options);
+		
+		// The least common subsumers in a table may no longer be right.
+		updated.mica_table = null;
+		
+		// Read the new annotations and names.
+		IntList annotation_individuals = new IntList();
+		IntList annotation_classes = new IntList();
+		updated.parseIndividualToClass(individual_to_class, annotation_individuals, annotation_classes);
+		updated.parseIndividualLabels(individual_labels);
+		
+		// Add the new annotations to the profiles.
+		boolean [] changed = new boolean[new_individuals.size()];
+		for (int i = 0; i < annotation_individuals.size(); i++)
+		{
+			changed[annotation_individuals.get(i)] = true;
+		}
+		for (int individual = 0; individual < individuals.size(); individual++)
+		{
+			for (int i = profiles.start(individual); i < profiles.end(individual); i++)
+			{
+				annotation_individuals.add(individual);
+				annotation_classes.add(profiles.get(i));
+			}
+		}
+		int class_count = classes.size();
+		updated.profiles = new CompressedRows(new_individuals.size(), annotation_individuals, annotation_classes);
+		updated.given_annotations = updated.profiles.transpose(class_count);
+		
+		// Count each changed individual towards the subsumers it didn't
+		// reach before. Marking the old subsumers with the individual's own
+		// stamp saves clearing them each time.
+		int [] stamps = new int[class_count];
+		Arrays.fill(stamps, -1);
+		IntList reached = new IntList();
+		for (int individual = 0; individual < changed.length; individual++)
+		{
+			if (!changed[individual])
+			{
+				continue;
+			}
+			if (individual < individuals.size())
+			{
+				for (int i = profiles.start(individual); i < profiles.end(individual); i++)
+				{
+					int node = profiles.get(i);
+					for (int j = ancestors.start(node); j < ancestors.end(node); j++)
+					{
+						stamps[ancestors.get(j)] = individual;
+					}
+				}
+			}
+			CompressedRows new_profiles = updated.profiles;
+			for (int i = new_profiles.start(individual); i < new_profiles.end(individual); i++)
+			{
+				int node = new_profiles.get(i);
+				for (int j = ancestors.start(node); j < ancestors.end(node); j++)
+				{
+					int subsumer = ancestors.get(j);
+					if (stamps[subsumer] != individual)
+					{
+						stamps[subsumer] = individual;
+						updated.annotated_counts[subsumer]++;
+						reached.add(subsumer);
+					}
+				}
+			}
+		}
+		
+		// Recompute the IC scores which moved.
+		if (new_individuals.size() != individuals.size())
+		{
+			for (int node = 0; node < class_count; node++)
+			{
+				updated.setAnnotatedCount(node, updated.annotated_counts[node]);
+			}
+		}
+		else
+		{
+			for (int i = 0; i < reached.size(); i++)
+			{
+				int node = reached.get(i);
+				updated.setAnnotatedCount(node, updated.annotated_counts[node]);
+			}
+		}
+		
+		// The important nodes follow from the IC scores.
+		if (options.getUseThresholding())
+		{
+			Arrays.fill(updated.important_nodes, false);
+			updated.findImportantNodes();
+		}
+		return updated;
+	}
+	
 	/***********************/
 	/* Getters and Setters */
 	/***********************/
 
-	public DirectedGraph<OntologyNode, DefaultEdge> getGraph() {
-		return graph;
+	public int getClassCount() {
+		return classes.size();
 	}
-
-	public Map<String, OntologyNode> getNodeMap() {
-		return node_map;
+	
+	public int getClassIndex(String identity) {
+		return classes.indexOf(identity);
 	}
-
-	public Map<String, Set<String>> getAnnotationMap() {
-		return annotation_map;
+	
+	public String getClassIdentity(int index) {
+		return classes.identity(index);
+	}
+	
+	public String getClassName(int index) {
+		return class_names.get(index);
+	}
+	
+	public int getAnnotatedCount(int index) {
+		return annotated_counts[index];
+	}
+	
+	public int [] getTopologicalOrder() {
+		return topological_order;
+	}
+	
+	public double getICScore(int index) {
+		return ic_scores[index];
+	}
+	
+	public double getReferenceICScore(int index) {
+		return reference_ic_scores == null ? ic_scores[index] : reference_ic_scores[index];
+	}
+	
+	void setReferenceICScores(double [] reference_ic_scores) {
+		this.reference_ic_scores = reference_ic_scores;
+	}
+	
+	public CompressedRows getParents() {
+		return parents;
+	}
+	
+	public CompressedRows getChildren() {
+		return children;
+	}
+	
+	public CompressedRows getAncestors() {
+		return ancestors;
+	}
+	
+	public CompressedRows getDescendants() {
+		return descendants;
+	}
+	
+	public int getIndividualCount() {
+		return individuals.size();
+	}
+	
+	public int getIndividualIndex(String identity) {
+		return individuals.indexOf(identity);
+	}
+	
+	public String getIndividualIdentity(int index) {
+		return individuals.identity(index);
+	}
+	
+	public CompressedRows getProfiles() {
+		return profiles;
 	}
 
 	public Map<String, String> getAnnotationNames() {
@@ -692,15 +1348,51 @@ public class Ontology {
 	}
 	
 	public String getRoot() {
+		if (root < 0)
+		{
+			return "Empty Graph";
+		}
+		return classes.identity(root);
+	}
+	
+	public int getRootIndex() {
 		return root;
 	}
 
+	public long getParseMillis() {
+		return parse_millis;
+	}
+	
+	public long getRootMillis() {
+		return root_millis;
+	}
+	
+	public long getClosureMillis() {
+		return closure_millis;
+	}
+	
+	public long getICMillis() {
+		return ic_millis;
+	}
+	
+	public long getImportantNodesMillis() {
+		return important_nodes_millis;
+	}
+	
+	public long getRootShortcuts() {
+		return root_shortcuts.sum();
+	}
+	
+	public LcsCache getLcsCache() {
+		return lcs_cache;
+	}
+
 	public Options getOptions() {
 		return options;
 	}
 
-	public Set<String> getImportantNodes() {
-		return important_nodes;
+	public boolean isImportant(int index) {
+		return important_nodes[index];
 	}
 	
 }
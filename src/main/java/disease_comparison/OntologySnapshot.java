@@ -0,0 +1,392 @@
+package disease_comparison;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The OntologySnapshot class writes a fully built ontology to a binary
+ * file and reads it back. Reading a snapshot skips parsing, building the
+ * closure, computing IC scores and finding important nodes.
+ * 
+ * The file is memory-mapped, and the relations between classes and
+ * individuals, which make up most of it, are read in place as views of the
+ * mapping rather than copied, so every JVM on a machine shares the same
+ * pages and only touches the rows it uses. The relations are stored in
+ * both directions, so nothing has to be transposed, and each one starts
+ * on a four-byte boundary. The identifiers, names and per-class arrays
+ * are still copied into each JVM's heap, so reading a snapshot takes time
+ * in proportion to the number of classes and individuals, but not to the
+ * size of the closure.
+ * 
+ * The important nodes depend on the thresholding options, so the snapshot
+ * records the ones it was built with. If the options we read it with are
+ * different, the important nodes are found again from the IC scores, just
+ * as building the ontology from scratch would.
+ * 
+ * The file holds, in order:
+ * 		int MAGIC, int VERSION
+ * 		the thresholding options (use_thresholding, max_important_nodes,
+ * 		important_nodes_lowest_ic)
+ * 		the class identifiers and class names
+ * 		the parents and children of each class (compressed rows)
+ * 		the subsumers and descendants of each class (compressed rows)
+ * 		the topological order, annotated counts, IC scores and reference
+ * 		IC scores
+ * 		the individual identifiers
+ * 		the profile of each individual (compressed rows)
+ * 		the individual names
+ * 		the root and the important nodes
+ * Every number is big-endian, every array is preceded by its length and
+ * every string is stored as UTF-8 preceded by its length in bytes.
+ */
+public class OntologySnapshot {
+
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// Identify the file format. Bump the version whenever the layout
+	// changes.
+	private static final int MAGIC = 0x4f4e5453;
+	private static final int VERSION = 6;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/***********/
+	/* Writing */
+	/***********/
+	
+	/*
+	 * write
+	 * Arguments:
+	 * 		ontology: The ontology to save.
+	 * 		filename: The path to write the snapshot to.
+	 * This function writes the ontology out as a snapshot.
+	 */
+	public static void write(Ontology ontology, String filename) throws IOException
+	{
+		DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		try
+		{
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			
+			// Write the options the important nodes were found with.
+			Options options = ontology.getOptions();
+			output.writeBoolean(options.getUseThresholding());
+			output.writeInt(options.getMaxImportantNodes());
+			output.writeBoolean(options.getImportantNodesLowestIC());
+			
+			// Write the classes.
+			int class_count = ontology.getClassCount();
+			output.writeInt(class_count);
+			for (int node = 0; node < class_count; node++)
+			{
+				writeString(output, ontology.getClassIdentity(node));
+			}
+			for (int node = 0; node < class_count; node++)
+			{
+				writeString(output, ontology.getClassName(node));
+			}
+			writeRows(output, ontology.getParents());
+			writeRows(output, ontology.getChildren());
+			writeRows(output, ontology.getAncestors());
+			writeRows(output, ontology.getDescendants());
+			writeInts(output, ontology.getTopologicalOrder());
+			for (int node = 0; node < class_count; node++)
+			{
+				output.writeInt(ontology.getAnnotatedCount(node));
+			}
+			for (int node = 0; node < class_count; node++)
+			{
+				output.writeDouble(ontology.getICScore(node));
+			}
+			for (int node = 0; node < class_count; node++)
+			{
+				output.writeDouble(ontology.getReferenceICScore(node));
+			}
+			
+			// Write the individuals.
+			int individual_count = ontology.getIndividualCount();
+			output.writeInt(individual_count);
+			for (int individual = 0; individual < individual_count; individual++)
+			{
+				writeString(output, ontology.getIndividualIdentity(individual));
+			}
+			writeRows(output, ontology.getProfiles());
+			Map<String, String> annotation_names = ontology.getAnnotationNames();
+			output.writeInt(annotation_names.size());
+			for (Map.Entry<String, String> entry : annotation_names.entrySet())
+			{
+				writeString(output, entry.getKey());
+				writeString(output, entry.getValue());
+			}
+			
+			// Write the root and the important nodes.
+			output.writeInt(ontology.getRootIndex());
+			IntList important_nodes = new IntList();
+			for (int node = 0; node < class_count; node++)
+			{
+				if (ontology.isImportant(node))
+				{
+					important_nodes.add(node);
+				}
+			}
+			writeInts(output, important_nodes.toArray());
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+	
+	private static void writeString(DataOutputStream output, String value) throws IOException
+	{
+		byte [] bytes = value.getBytes(UTF8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+	
+	private static void writeInts(DataOutputStream output, int [] values) throws IOException
+	{
+		output.writeInt(values.length);
+		for (int value : values)
+		{
+			output.writeInt(value);
+		}
+	}
+	
+	private static void writeRows(DataOutputStream output, CompressedRows rows) throws IOException
+	{
+		// Line the rows up so they can be read in place.
+		while (output.size() % 4 != 0)
+		{
+			output.writeByte(0);
+		}
+		int row_count = rows.rowCount();
+		output.writeInt(row_count + 1);
+		for (int row = 0; row < row_count; row++)
+		{
+			output.writeInt(rows.start(row));
+		}
+		output.writeInt(rows.entryCount());
+		
+		// The entries follow, preceded by their number, which is also where
+		// the last row ends.
+		output.writeInt(rows.entryCount());
+		for (int i = 0; i < rows.entryCount(); i++)
+		{
+			output.writeInt(rows.get(i));
+		}
+	}
+	
+	/***********/
+	/* Reading */
+	/***********/
+	
+	/*
+	 * read
+	 * Arguments:
+	 * 		filename: The path to a snapshot written by write.
+	 * This function reads a snapshot back into an ontology, using the
+	 * options in ontology.config.
+	 */
+	public static Ontology read(String filename) throws IOException
+	{
+		// TODO: Don't use magic file path.
+		return read(filename, new Options("./ontology.config"));
+	}
+	
+	/*
+	 * read
+	 * Arguments:
+	 * 		filename: The path to a snapshot written by write.
+	 * 		options: The options for the ontology.
+	 * This function reads a snapshot back into an ontology.
+	 */
+	public static Ontology read(String filename, Options options) throws IOException
+	{
+		// Map the whole file.
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		MappedByteBuffer input;
+		try
+		{
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Snapshot is too large to map: " + filename);
+			}
+			input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed.
+			file.close();
+		}
+		
+		if (input.getInt() != MAGIC)
+		{
+			throw new IOException("Not an ontology snapshot: " + filename);
+		}
+		int version = input.getInt();
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported snapshot version " + version + ": " + filename);
+		}
+		
+		// Check whether the important nodes were found the way we'd find
+		// them, including whether we picked the lowest IC scores rather than
+		// the highest. Projection follows from the important nodes, so it's
+		// redone on reading either way.
+		boolean use_thresholding = input.get() != 0;
+		int max_important_nodes = input.getInt();
+		boolean lowest_ic = input.get() != 0;
+		boolean same_thresholding = use_thresholding == options.getUseThresholding() &&
+				(!use_thresholding || (max_important_nodes == options.getMaxImportantNodes() &&
+						lowest_ic == options.getImportantNodesLowestIC()));
+		
+		// Read the classes.
+		int class_count = input.getInt();
+		IdentifierTable classes = new IdentifierTable();
+		for (int node = 0; node < class_count; node++)
+		{
+			classes.intern(readString(input));
+		}
+		List<String> class_names = new ArrayList<String>(class_count);
+		for (int node = 0; node < class_count; node++)
+		{
+			class_names.add(readString(input));
+		}
+		CompressedRows parents = readRows(input);
+		CompressedRows children = readRows(input);
+		CompressedRows ancestors = readRows(input);
+		CompressedRows descendants = readRows(input);
+		int [] topological_order = readInts(input);
+		int [] annotated_counts = new int[class_count];
+		input.asIntBuffer().get(annotated_counts);
+		input.position(input.position() + 4 * class_count);
+		double [] ic_scores = new double[class_count];
+		input.asDoubleBuffer().get(ic_scores);
+		input.position(input.position() + 8 * class_count);
+		double [] reference_ic_scores = new double[class_count];
+		input.asDoubleBuffer().get(reference_ic_scores);
+		input.position(input.position() + 8 * class_count);
+		
+		// Read the individuals.
+		int individual_count = input.getInt();
+		IdentifierTable individuals = new IdentifierTable();
+		for (int individual = 0; individual < individual_count; individual++)
+		{
+			individuals.intern(readString(input));
+		}
+		CompressedRows profiles = readRows(input);
+		int name_count = input.getInt();
+		Map<String, String> annotation_names = new HashMap<String, String>();
+		for (int i = 0; i < name_count; i++)
+		{
+			String identity = readString(input);
+			annotation_names.put(identity, readString(input));
+		}
+		
+		// Read the root and the important nodes. If they were found with
+		// other options, leave the ontology to find them again.
+		int root = input.getInt();
+		boolean [] important_nodes = new boolean[class_count];
+		for (int node : readInts(input))
+		{
+			important_nodes[node] = true;
+		}
+		if (!same_thresholding)
+		{
+			important_nodes = null;
+		}
+		
+		Ontology ontology = new Ontology(classes, class_names, parents, children, ancestors, descendants,
+				topological_order, annotated_counts, ic_scores,
+				individuals, profiles, annotation_names, root, important_nodes,
+				options);
+		ontology.setReferenceICScores(reference_ic_scores);
+		return ontology;
+	}
+	
+	private static String readString(ByteBuffer input)
+	{
+		byte [] bytes = new byte[input.getInt()];
+		input.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	private static int [] readInts(ByteBuffer input)
+	{
+		int [] values = new int[input.getInt()];
+		input.asIntBuffer().get(values);
+		input.position(input.position() + 4 * values.length);
+		return values;
+	}
+	
+	private static CompressedRows readRows(ByteBuffer input)
+	{
+		input.position((input.position() + 3) & ~3);
+		IntBuffer offsets = viewInts(input);
+		IntBuffer entries = viewInts(input);
+		return new CompressedRows(offsets, entries);
+	}
+	
+	private static IntBuffer viewInts(ByteBuffer input)
+	{
+		int length = input.getInt();
+		IntBuffer values = input.asIntBuffer();
+		values.limit(length);
+		input.position(input.position() + 4 * length);
+		return values;
+	}
+	
+	/********/
+	/* Main */
+	/********/
+	
+	public static void main(String [] args)
+	{
+		try
+		{
+			// Build the ontology and save it, using the configuration file
+			// the job will use if we're given one.
+			// TODO: Don't use magic file path.
+			Options options = new Options(args.length > 5 ? args[5] : "./ontology.config");
+			Ontology ontology = new Ontology(
+				// Class labels
+				args[0],
+				// Class to class
+				args[1],
+				// Individual labels
+				args[2],
+				// Individual to class
+				args[3],
+				options
+			);
+			write(ontology, args[4]);
+		}
+		catch (Exception e)
+		{
+			// Complain if something fails.
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+		
+		System.out.println("Ontology Snapshot Completed");
+	}
+	
+}
@@ -2,6 +2,8 @@ package disease_comparison;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class Options {
@@ -18,10 +20,53 @@ public class Options {
 	// How many nodes do we want to consider?
 	private int max_important_nodes;
 	
+	// Should a class which isn't important stand in for its most specific
+	// important ancestors, rather than sending its pairs to the root?
+	private boolean project_unimportant;
+	
+	// Should the important nodes be the ones with the lowest IC scores
+	// rather than the highest? Every ancestor of such a node is one too, so
+	// projection never has to send a class to the root.
+	private boolean important_nodes_lowest_ic;
+	
+	// Where is the prebuilt snapshot of the ontology, if we've saved one?
+	private String ontology_snapshot;
+	
+	// Where is the table of least common subsumers for the important
+	// nodes, if we've built one?
+	private String mica_table;
+	
+	/* Cache Options */
+	
+	// How many least common subsumers do we want to remember?
+	private int lcs_cache_size;
+	
+	// How do we pick which least common subsumer to forget?
+	private String lcs_cache_policy;
+	
+	/* Job Options */
+	
+	// How many pieces do we want to cut the pairs of diseases into?
+	private int pair_splits;
+	
+	// How many reducers do we want? Zero leaves it to Hadoop.
+	private int reduce_tasks;
+	
+	// Do we want to hand the diseases out to the reducers by their
+	// estimated work, rather than by their hash?
+	private boolean balance_reducers;
+	
+	// How many diseases along each side of a tile, if we're comparing
+	// diseases tile by tile? Zero means we aren't.
+	private int tile_size;
+	
 	/* Output Options */
 	
 	// What directory do we want to use for output files?
 	private String output_directory;
+	
+	// Do we want lines of text, or binary records with a dictionary?
+	private String output_format;
 
 	// Do we want to output identities?
 	private boolean show_identities;
@@ -31,7 +76,37 @@ public class Options {
 	
 	// Which measures do we want to show?
 	private boolean show_max_ic;
-	// TODO: Add other measures.
+	private boolean show_sim_j;
+	private boolean show_sim_gic;
+	private boolean show_resnik_average;
+	private boolean show_resnik_bma;
+	private boolean show_lin_bma;
+	private boolean show_resnik_query_bma;
+	private boolean show_lin_query_bma;
+	
+	// Do we want to show the least common subsumer behind the maxIC score?
+	private boolean show_best_lcs;
+	
+	// How many digits after the decimal point do we want in scores? Below
+	// zero means we write them however Java writes doubles, which is slower
+	// than writing a fixed number of digits.
+	private int score_precision;
+	
+	// How many of the best matches do we want to keep for each disease?
+	// Zero means we want every pair.
+	private int top_k;
+	
+	// When keeping the best matches, should we skip pairs which can't beat
+	// the ones we have?
+	private boolean prune_top_k;
+	
+	// Should we only compare diseases which share a subsumer with at least
+	// this IC score? Zero means we compare every pair.
+	private double ic_floor;
+	
+	// When updating previous results, how far can an IC score move before
+	// the pairs which share the class are scored again?
+	private double incremental_epsilon;
 	
 	// Are all the measures symmetric?
 	private boolean symmetric;
@@ -45,15 +120,74 @@ public class Options {
 		// By default, we shouldn't use thresholding.
 		use_thresholding = false;
 		max_important_nodes = -1;
+		project_unimportant = false;
+		important_nodes_lowest_ic = false;
+		
+		// By default, we don't have a snapshot or a table of least common
+		// subsumers.
+		ontology_snapshot = null;
+		mica_table = null;
+		
+		// By default, remember about a million least common subsumers and
+		// forget them in CLOCK order.
+		lcs_cache_size = 1 << 20;
+		lcs_cache_policy = LcsCache.CLOCK;
+		
+		// By default, cut the pairs of diseases into a handful of pieces.
+		pair_splits = 16;
+		
+		// By default, let Hadoop pick the number of reducers, and balance
+		// the work across them.
+		reduce_tasks = 0;
+		balance_reducers = true;
+		
+		// By default, we compare diseases pair by pair rather than in tiles.
+		tile_size = 0;
 		
 		// By default, we should put all our output files in a directory
 		// called "output".
 		output_directory = "output";
 		
+		// By default, we write lines of text.
+		output_format = BinaryResults.TEXT;
+		
 		// By default, we want to show everything.
 		show_identities = true;
 		show_names = true;
 		show_max_ic = true;
+		show_sim_j = false;
+		show_sim_gic = false;
+		show_resnik_average = false;
+		show_resnik_bma = false;
+		show_lin_bma = false;
+		show_resnik_query_bma = false;
+		show_lin_query_bma = false;
+		show_best_lcs = true;
+		score_precision = -1;
+		
+		// By default, we want every pair, and if we only want the best
+		// matches we still score every pair.
+		top_k = 0;
+		prune_top_k = false;
+		
+		// By default, we compare every pair, however little they share.
+		ic_floor = 0;
+		
+		// By default, an incremental update scores a pair again whenever a
+		// shared subsumer moves at all.
+		incremental_epsilon = 0;
+	}
+	
+	/*
+	 * Arguments:
+	 * 		filename: The path to the configuration file.
+	 * This constructor starts from the defaults and then reads the
+	 * configuration file.
+	 */
+	public Options(String filename)
+	{
+		this();
+		configure(filename);
 	}
 	
 	/*****************/
@@ -101,10 +235,54 @@ public class Options {
 				{
 					max_important_nodes = Integer.parseInt(value);
 				}
+				if (parameter.equals("project_unimportant"))
+				{
+					project_unimportant = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("important_nodes_lowest_ic"))
+				{
+					important_nodes_lowest_ic = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("ontology_snapshot"))
+				{
+					ontology_snapshot = value;
+				}
+				if (parameter.equals("mica_table"))
+				{
+					mica_table = value;
+				}
+				if (parameter.equals("lcs_cache_size"))
+				{
+					lcs_cache_size = Integer.parseInt(value);
+				}
+				if (parameter.equals("lcs_cache_policy"))
+				{
+					lcs_cache_policy = value;
+				}
+				if (parameter.equals("pair_splits"))
+				{
+					pair_splits = Integer.parseInt(value);
+				}
+				if (parameter.equals("reduce_tasks"))
+				{
+					reduce_tasks = Integer.parseInt(value);
+				}
+				if (parameter.equals("balance_reducers"))
+				{
+					balance_reducers = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("tile_size"))
+				{
+					tile_size = Integer.parseInt(value);
+				}
 				if (parameter.equals("output_directory"))
 				{
 					output_directory = value;
 				}
+				if (parameter.equals("output_format"))
+				{
+					output_format = value;
+				}
 				if (parameter.equals("show_identities"))
 				{
 					show_identities = Boolean.parseBoolean(value);
@@ -117,6 +295,58 @@ public class Options {
 				{
 					show_max_ic = Boolean.parseBoolean(value);
 				}
+				if (parameter.equals("show_sim_j"))
+				{
+					show_sim_j = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("show_sim_gic"))
+				{
+					show_sim_gic = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("show_resnik_average"))
+				{
+					show_resnik_average = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("show_resnik_bma"))
+				{
+					show_resnik_bma = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("show_lin_bma"))
+				{
+					show_lin_bma = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("show_resnik_query_bma"))
+				{
+					show_resnik_query_bma = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("show_lin_query_bma"))
+				{
+					show_lin_query_bma = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("show_best_lcs"))
+				{
+					show_best_lcs = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("score_precision"))
+				{
+					score_precision = Integer.parseInt(value);
+				}
+				if (parameter.equals("top_k"))
+				{
+					top_k = Integer.parseInt(value);
+				}
+				if (parameter.equals("prune_top_k"))
+				{
+					prune_top_k = Boolean.parseBoolean(value);
+				}
+				if (parameter.equals("ic_floor"))
+				{
+					ic_floor = Double.parseDouble(value);
+				}
+				if (parameter.equals("incremental_epsilon"))
+				{
+					incremental_epsilon = Double.parseDouble(value);
+				}
 				if (parameter.equals("symmetric"))
 				{
 					symmetric = Boolean.parseBoolean(value);
@@ -150,11 +380,55 @@ public class Options {
 	{
 		// Check if any asymmetric measure is used.
 		symmetric = true;
-		
-		// TODO: Currently, no asymmetric measures are implemented.
-		// We could handle them with
-		// symmetric &= !show_iccs;
-		// or something similar.
+		for (SimilarityMeasure measure : getMeasures())
+		{
+			symmetric &= measure.isSymmetric();
+		}
+	}
+	
+	/*
+	 * getMeasures
+	 * Arguments:
+	 * 		None
+	 * This function returns the measures we want to show, in the order we
+	 * show them.
+	 */
+	public List<SimilarityMeasure> getMeasures()
+	{
+		List<SimilarityMeasure> measures = new ArrayList<SimilarityMeasure>();
+		if (show_max_ic)
+		{
+			measures.add(new DiseaseComparisonMeasures.MaxIC());
+		}
+		if (show_sim_j)
+		{
+			measures.add(new DiseaseComparisonMeasures.SimJ());
+		}
+		if (show_sim_gic)
+		{
+			measures.add(new DiseaseComparisonMeasures.SimGIC());
+		}
+		if (show_resnik_average)
+		{
+			measures.add(new DiseaseComparisonMeasures.ResnikAverage());
+		}
+		if (show_resnik_bma)
+		{
+			measures.add(new DiseaseComparisonMeasures.ResnikBestMatchAverage());
+		}
+		if (show_lin_bma)
+		{
+			measures.add(new DiseaseComparisonMeasures.LinBestMatchAverage());
+		}
+		if (show_resnik_query_bma)
+		{
+			measures.add(new DiseaseComparisonMeasures.ResnikQueryBestMatchAverage());
+		}
+		if (show_lin_query_bma)
+		{
+			measures.add(new DiseaseComparisonMeasures.LinQueryBestMatchAverage());
+		}
+		return measures;
 	}
 
 	/***********************/
@@ -177,6 +451,86 @@ public class Options {
 		this.max_important_nodes = max_important_nodes;
 	}
 
+	public boolean getProjectUnimportant() {
+		return project_unimportant;
+	}
+
+	public void setProjectUnimportant(boolean project_unimportant) {
+		this.project_unimportant = project_unimportant;
+	}
+
+	public boolean getImportantNodesLowestIC() {
+		return important_nodes_lowest_ic;
+	}
+
+	public void setImportantNodesLowestIC(boolean important_nodes_lowest_ic) {
+		this.important_nodes_lowest_ic = important_nodes_lowest_ic;
+	}
+
+	public String getOntologySnapshot() {
+		return ontology_snapshot;
+	}
+
+	public void setOntologySnapshot(String ontology_snapshot) {
+		this.ontology_snapshot = ontology_snapshot;
+	}
+
+	public String getMicaTable() {
+		return mica_table;
+	}
+
+	public void setMicaTable(String mica_table) {
+		this.mica_table = mica_table;
+	}
+
+	public int getLcsCacheSize() {
+		return lcs_cache_size;
+	}
+
+	public void setLcsCacheSize(int lcs_cache_size) {
+		this.lcs_cache_size = lcs_cache_size;
+	}
+
+	public String getLcsCachePolicy() {
+		return lcs_cache_policy;
+	}
+
+	public void setLcsCachePolicy(String lcs_cache_policy) {
+		this.lcs_cache_policy = lcs_cache_policy;
+	}
+
+	public int getPairSplits() {
+		return pair_splits;
+	}
+
+	public void setPairSplits(int pair_splits) {
+		this.pair_splits = pair_splits;
+	}
+
+	public int getReduceTasks() {
+		return reduce_tasks;
+	}
+
+	public void setReduceTasks(int reduce_tasks) {
+		this.reduce_tasks = reduce_tasks;
+	}
+
+	public boolean getBalanceReducers() {
+		return balance_reducers;
+	}
+
+	public void setBalanceReducers(boolean balance_reducers) {
+		this.balance_reducers = balance_reducers;
+	}
+
+	public int getTileSize() {
+		return tile_size;
+	}
+
+	public void setTileSize(int tile_size) {
+		this.tile_size = tile_size;
+	}
+
 	public String getOutputDirectory() {
 		return output_directory;
 	}
@@ -185,6 +539,14 @@ public class Options {
 		this.output_directory = output_directory;
 	}
 
+	public String getOutputFormat() {
+		return output_format;
+	}
+
+	public void setOutputFormat(String output_format) {
+		this.output_format = output_format;
+	}
+
 	public boolean getShowIdentities() {
 		return show_identities;
 	}
@@ -209,6 +571,110 @@ public class Options {
 		this.show_max_ic = show_max_ic;
 	}
 
+	public boolean getShowSimJ() {
+		return show_sim_j;
+	}
+
+	public void setShowSimJ(boolean show_sim_j) {
+		this.show_sim_j = show_sim_j;
+	}
+
+	public boolean getShowSimGIC() {
+		return show_sim_gic;
+	}
+
+	public void setShowSimGIC(boolean show_sim_gic) {
+		this.show_sim_gic = show_sim_gic;
+	}
+
+	public boolean getShowResnikAverage() {
+		return show_resnik_average;
+	}
+
+	public void setShowResnikAverage(boolean show_resnik_average) {
+		this.show_resnik_average = show_resnik_average;
+	}
+
+	public boolean getShowResnikBMA() {
+		return show_resnik_bma;
+	}
+
+	public void setShowResnikBMA(boolean show_resnik_bma) {
+		this.show_resnik_bma = show_resnik_bma;
+	}
+
+	public boolean getShowLinBMA() {
+		return show_lin_bma;
+	}
+
+	public void setShowLinBMA(boolean show_lin_bma) {
+		this.show_lin_bma = show_lin_bma;
+	}
+
+	public boolean getShowResnikQueryBMA() {
+		return show_resnik_query_bma;
+	}
+
+	public void setShowResnikQueryBMA(boolean show_resnik_query_bma) {
+		this.show_resnik_query_bma = show_resnik_query_bma;
+	}
+
+	public boolean getShowLinQueryBMA() {
+		return show_lin_query_bma;
+	}
+
+	public void setShowLinQueryBMA(boolean show_lin_query_bma) {
+		this.show_lin_query_bma = show_lin_query_bma;
+	}
+
+	public boolean getShowBestLCS() {
+		return show_best_lcs;
+	}
+
+	public void setShowBestLCS(boolean show_best_lcs) {
+		this.show_best_lcs = show_best_lcs;
+	}
+
+	public int getScorePrecision() {
+		return score_precision;
+	}
+
+	public void setScorePrecision(int score_precision) {
+		this.score_precision = score_precision;
+	}
+
+	public int getTopK() {
+		return top_k;
+	}
+
+	public void setTopK(int top_k) {
+		this.top_k = top_k;
+	}
+
+	public boolean getPruneTopK() {
+		return prune_top_k;
+	}
+
+	public void setPruneTopK(boolean prune_top_k) {
+		this.prune_top_k = prune_top_k;
+	}
+
+	public double getICFloor() {
+		return ic_floor;
+	}
+
+	public void setICFloor(double ic_floor) {
+		this.ic_floor = ic_floor;
+	}
+
+	public double getIncrementalEpsilon() {
+		return incremental_epsilon;
+	}
+
+	public void setIncrementalEpsilon(double incremental_epsilon) {
+		this.incremental_epsilon = incremental_epsilon;
+	}
+
 	public boolean getSymmetric() {
 		return symmetric;
 	}
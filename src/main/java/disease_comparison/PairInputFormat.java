@@ -0,0 +1,357 @@
+package disease_comparison;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/*
+ * The PairInputFormat class feeds every pair of individuals to the
+ * mappers without writing the pairs out first.
+ * 
+ * The only input is the list of individual identifiers. Number the
+ * individuals 0 to n - 1 in sorted order. The pairs (i, j) with i != j
+ * are then numbered row by row, and each split covers a range of those
+ * numbers. If the measures are symmetric we only need the triangle of
+ * pairs with j < i, which is exactly the pairs whose first identifier
+ * sorts after the second. Each record reader walks its range and hands
+ * out the identifiers of each pair as (first, second).
+ */
+public class PairInputFormat extends InputFormat<Text, Text> {
+
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The configuration keys for the input format.
+	public static final String INDIVIDUALS = "pair-individuals";
+	public static final String SPLITS = "pair-splits";
+	public static final String TRIANGULAR = "pair-triangular";
+	
+	/*****************/
+	/* Configuration */
+	/*****************/
+	
+	/*
+	 * setIndividuals
+	 * Arguments:
+	 * 		conf: The configuration of the job.
+	 * 		fs: The file system the job runs on.
+	 * 		path: Where to write the list of individuals.
+	 * 		identities: The identifiers of the individuals.
+	 * 		splits: How many splits to cut the pairs into.
+	 * 		triangular: Whether to only generate each pair in one order.
+	 * This function writes the sorted list of individuals and points the
+	 * input format at it.
+	 */
+	public static void setIndividuals(Configuration conf, FileSystem fs, Path path,
+			Collection<String> identities, int splits, boolean triangular) throws IOException
+	{
+		List<String> sorted_identities = new ArrayList<String>(identities);
+		Collections.sort(sorted_identities);
+		
+		PrintWriter writer = new PrintWriter(fs.create(path, true));
+		for (String identity : sorted_identities)
+		{
+			writer.println(identity);
+		}
+		writer.close();
+		
+		conf.set(INDIVIDUALS, fs.makeQualified(path).toString());
+		conf.setInt(SPLITS, splits);
+		conf.setBoolean(TRIANGULAR, triangular);
+	}
+	
+	/*
+	 * readIndividuals
+	 * Arguments:
+	 * 		conf: The configuration of the job.
+	 * This function reads back the sorted list of individuals.
+	 */
+	public static List<String> readIndividuals(Configuration conf) throws IOException
+	{
+		Path path = new Path(conf.get(INDIVIDUALS));
+		FileSystem fs = path.getFileSystem(conf);
+		List<String> identities = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), "UTF-8"));
+		try
+		{
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				identities.add(line);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return identities;
+	}
+	
+	/*
+	 * pairCount
+	 * Arguments:
+	 * 		individual_count: The number of individuals.
+	 * 		triangular: Whether we only generate each pair in one order.
+	 * This function returns how many pairs there are.
+	 */
+	public static long pairCount(long individual_count, boolean triangular)
+	{
+		if (individual_count < 2)
+		{
+			return 0;
+		}
+		long pairs = individual_count * (individual_count - 1);
+		return triangular ? pairs / 2 : pairs;
+	}
+	
+	/*
+	 * pairAt
+	 * Arguments:
+	 * 		pair: The number of a pair.
+	 * 		individual_count: The number of individuals.
+	 * 		triangular: Whether we only generate each pair in one order.
+	 * This function returns the indices of the two individuals in the given
+	 * pair, as {first, second}.
+	 */
+	public static int [] pairAt(long pair, long individual_count, boolean triangular)
+	{
+		if (!triangular)
+		{
+			// Every row has n - 1 pairs, skipping the individual itself.
+			long first = pair / (individual_count - 1);
+			long second = pair % (individual_count - 1);
+			if (second >= first)
+			{
+				second++;
+			}
+			return new int [] { (int)first, (int)second };
+		}
+		
+		// Row i starts at pair i (i - 1) / 2. Guess the row, then fix up any
+		// rounding error.
+		long first = (long)((1 + Math.sqrt(1 + 8.0 * pair)) / 2);
+		while (first * (first - 1) / 2 > pair)
+		{
+			first--;
+		}
+		while ((first + 1) * first / 2 <= pair)
+		{
+			first++;
+		}
+		long second = pair - first * (first - 1) / 2;
+		return new int [] { (int)first, (int)second };
+	}
+	
+	/****************/
+	/* Input Format */
+	/****************/
+	
+	/*
+	 * getSplits
+	 * Arguments:
+	 * 		context: The job.
+	 * This function cuts the pairs into evenly sized ranges.
+	 */
+	public List<InputSplit> getSplits(JobContext context) throws IOException
+	{
+		Configuration conf = context.getConfiguration();
+		long pairs = pairCount(readIndividuals(conf).size(), conf.getBoolean(TRIANGULAR, true));
+		int split_count = (int)Math.max(1, Math.min(conf.getInt(SPLITS, 1), pairs));
+		
+		List<InputSplit> splits = new ArrayList<InputSplit>();
+		for (int split = 0; split < split_count; split++)
+		{
+			long start = pairs * split / split_count;
+			long end = pairs * (split + 1) / split_count;
+			if (end > start)
+			{
+				splits.add(new PairSplit(start, end));
+			}
+		}
+		return splits;
+	}
+	
+	public RecordReader<Text, Text> createRecordReader(InputSplit split, TaskAttemptContext context)
+	{
+		return new PairRecordReader();
+	}
+	
+	/**********/
+	/* Splits */
+	/**********/
+	
+	/*
+	 * The PairSplit class describes a range of pair numbers.
+	 */
+	public static class PairSplit extends InputSplit implements Writable
+	{
+		// The first pair in the range, and the pair just past the end.
+		private long start;
+		private long end;
+		
+		public PairSplit()
+		{
+			// Hadoop needs this to read splits back in.
+		}
+		
+		public PairSplit(long new_start, long new_end)
+		{
+			start = new_start;
+			end = new_end;
+		}
+		
+		public long getStart()
+		{
+			return start;
+		}
+		
+		public long getEnd()
+		{
+			return end;
+		}
+		
+		public long getLength()
+		{
+			return end - start;
+		}
+		
+		public String [] getLocations()
+		{
+			// The pairs are generated, so they don't live anywhere.
+			return new String[0];
+		}
+		
+		public void write(DataOutput output) throws IOException
+		{
+			output.writeLong(start);
+			output.writeLong(end);
+		}
+		
+		public void readFields(DataInput input) throws IOException
+		{
+			start = input.readLong();
+			end = input.readLong();
+		}
+	}
+	
+	/******************/
+	/* Record Readers */
+	/******************/
+	
+	/*
+	 * The PairRecordReader class walks through a range of pairs, handing out
+	 * the identifiers of each.
+	 */
+	public static class PairRecordReader extends RecordReader<Text, Text>
+	{
+		// The sorted identifiers of the individuals.
+		private List<String> identities;
+		
+		// Whether we only generate each pair in one order.
+		private boolean triangular;
+		
+		// The range we're walking, and how far we've got.
+		private long start;
+		private long end;
+		private long current;
+		
+		// The indices of the next pair.
+		private int first;
+		private int second;
+		
+		// The identifiers we hand out, reused for every pair.
+		private Text first_text = new Text();
+		private Text second_text = new Text();
+		
+		public void initialize(InputSplit split, TaskAttemptContext context) throws IOException
+		{
+			Configuration conf = context.getConfiguration();
+			identities = readIndividuals(conf);
+			triangular = conf.getBoolean(TRIANGULAR, true);
+			
+			PairSplit pair_split = (PairSplit)split;
+			start = pair_split.getStart();
+			end = pair_split.getEnd();
+			current = start;
+			
+			// Find the first pair of the range.
+			if (start < end)
+			{
+				int [] pair = pairAt(start, identities.size(), triangular);
+				first = pair[0];
+				second = pair[1];
+			}
+		}
+		
+		public boolean nextKeyValue()
+		{
+			if (current >= end)
+			{
+				return false;
+			}
+			
+			// Hand out the current pair.
+			first_text.set(identities.get(first));
+			second_text.set(identities.get(second));
+			current++;
+			
+			// Step to the next pair, moving to the next row at the end of
+			// this one.
+			second++;
+			if (second == first && !triangular)
+			{
+				second++;
+			}
+			int row_end = triangular ? first : identities.size();
+			if (second >= row_end)
+			{
+				first++;
+				second = 0;
+			}
+			return true;
+		}
+		
+		public Text getCurrentKey()
+		{
+			return first_text;
+		}
+		
+		public Text getCurrentValue()
+		{
+			return second_text;
+		}
+		
+		public float getProgress()
+		{
+			if (end == start)
+			{
+				return 1;
+			}
+			return (float)(current - start) / (end - start);
+		}
+		
+		public void close()
+		{
+			// We only read the list of individuals, and that's closed already.
+		}
+	}
+	
+}
@@ -0,0 +1,275 @@
+package disease_comparison;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/*
+ * The PairPartitioner class decides which reducer gets each first
+ * individual by the work it brings, rather than by its hash.
+ * 
+ * In triangular mode the individual at position i in sorted order is the
+ * first of i pairs, so the individuals which sort last bring most of the
+ * work. The work in an individual's row is estimated as the number of its
+ * pairs plus its profile size times the total profile size of its seconds,
+ * since comparing two profiles looks at every pair of their classes. The
+ * driver hands the rows out most expensive first, each to the reducer with
+ * the least work so far, and writes the plan out for the tasks to read.
+ */
+public class PairPartitioner extends Partitioner<Text, Text> implements Configurable {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The configuration key for the plan.
+	public static final String PLAN = "pair-partition-plan";
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	private Configuration conf;
+	
+	// The reducer for each first individual, read from the plan when we
+	// first need it.
+	private Map<Text, Integer> reducers;
+	
+	/************/
+	/* Planning */
+	/************/
+	
+	/*
+	 * rowCosts
+	 * Arguments:
+	 * 		sizes: The profile size of each individual, in sorted order.
+	 * 		triangular: Whether we only generate each pair in one order.
+	 * This function estimates the work in each individual's row of pairs.
+	 */
+	public static double [] rowCosts(int [] sizes, boolean triangular)
+	{
+		long total = 0;
+		for (int size : sizes)
+		{
+			total += size;
+		}
+		
+		double [] costs = new double[sizes.length];
+		long before = 0;
+		for (int i = 0; i < sizes.length; i++)
+		{
+			// A triangular row only pairs with the individuals before it.
+			long pairs = triangular ? i : sizes.length - 1;
+			long seconds = triangular ? before : total - sizes[i];
+			costs[i] = pairs + (double)sizes[i] * seconds;
+			before += sizes[i];
+		}
+		return costs;
+	}
+	
+	/*
+	 * assign
+	 * Arguments:
+	 * 		costs: The estimated work in each row.
+	 * 		reducer_count: How many reducers there are.
+	 * This function hands the rows out, most expensive first, each to the
+	 * reducer with the least work so far, and returns the reducer for each
+	 * row.
+	 */
+	public static int [] assign(final double [] costs, int reducer_count)
+	{
+		// Order the rows by cost, breaking ties by position.
+		Integer [] order = new Integer[costs.length];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second)
+			{
+				int by_cost = Double.compare(costs[second], costs[first]);
+				return by_cost != 0 ? by_cost : first.compareTo(second);
+			}
+		});
+		
+		// Keep the reducers ordered by their work so far, breaking ties by
+		// number.
+		final double [] loads = new double[reducer_count];
+		PriorityQueue<Integer> least_loaded = new PriorityQueue<Integer>(reducer_count,
+				new Comparator<Integer>() {
+			public int compare(Integer first, Integer second)
+			{
+				int by_load = Double.compare(loads[first], loads[second]);
+				return by_load != 0 ? by_load : first.compareTo(second);
+			}
+		});
+		for (int reducer = 0; reducer < reducer_count; reducer++)
+		{
+			least_loaded.add(reducer);
+		}
+		
+		int [] assignments = new int[costs.length];
+		for (int row : order)
+		{
+			int reducer = least_loaded.poll();
+			assignments[row] = reducer;
+			loads[reducer] += costs[row];
+			least_loaded.add(reducer);
+		}
+		return assignments;
+	}
+	
+	/*
+	 * hashAssignments
+	 * Arguments:
+	 * 		identities: The sorted identifiers of the individuals.
+	 * 		reducer_count: How many reducers there are.
+	 * This function returns the reducer Hadoop's default partitioner would
+	 * send each row to, for comparison.
+	 */
+	public static int [] hashAssignments(List<String> identities, int reducer_count)
+	{
+		int [] assignments = new int[identities.size()];
+		for (int i = 0; i < assignments.length; i++)
+		{
+			assignments[i] = (new Text(identities.get(i)).hashCode() & Integer.MAX_VALUE) % reducer_count;
+		}
+		return assignments;
+	}
+	
+	/*
+	 * balance
+	 * Arguments:
+	 * 		costs: The estimated work in each row.
+	 * 		assignments: The reducer for each row.
+	 * 		reducer_count: How many reducers there are.
+	 * This function returns the work of the busiest reducer over the
+	 * average work, so 1 is perfectly balanced.
+	 */
+	public static double balance(double [] costs, int [] assignments, int reducer_count)
+	{
+		double [] loads = new double[reducer_count];
+		double total = 0;
+		for (int i = 0; i < costs.length; i++)
+		{
+			loads[assignments[i]] += costs[i];
+			total += costs[i];
+		}
+		double busiest = 0;
+		for (double load : loads)
+		{
+			busiest = Math.max(busiest, load);
+		}
+		return total > 0 ? busiest * reducer_count / total : 1;
+	}
+	
+	/*
+	 * setPlan
+	 * Arguments:
+	 * 		conf: The configuration of the job.
+	 * 		fs: The file system the job runs on.
+	 * 		path: Where to write the plan.
+	 * 		identities: The sorted identifiers of the individuals.
+	 * 		assignments: The reducer for each individual.
+	 * This function writes the plan and points the partitioner at it.
+	 */
+	public static void setPlan(Configuration conf, FileSystem fs, Path path,
+			List<String> identities, int [] assignments) throws IOException
+	{
+		PrintWriter writer = new PrintWriter(fs.create(path, true));
+		for (int i = 0; i < assignments.length; i++)
+		{
+			writer.println(identities.get(i) + "\t" + assignments[i]);
+		}
+		writer.close();
+		
+		conf.set(PLAN, fs.makeQualified(path).toString());
+	}
+	
+	/*
+	 * readPlan
+	 * Arguments:
+	 * 		conf: The configuration of the job.
+	 * This function reads back the reducer for each individual.
+	 */
+	private static Map<Text, Integer> readPlan(Configuration conf) throws IOException
+	{
+		Path path = new Path(conf.get(PLAN));
+		FileSystem fs = path.getFileSystem(conf);
+		Map<Text, Integer> plan = new HashMap<Text, Integer>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), "UTF-8"));
+		try
+		{
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				String [] pieces = line.split("\t");
+				plan.put(new Text(pieces[0]), Integer.parseInt(pieces[1]));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return plan;
+	}
+	
+	/***************/
+	/* Partitioner */
+	/***************/
+	
+	/*
+	 * getPartition
+	 * Arguments:
+	 * 		key: The identifier of the first individual.
+	 * 		value: The identifier of the second individual (unused).
+	 * 		partitions: How many reducers there are.
+	 * This function looks up the reducer the plan gave the first individual.
+	 * Anything the plan doesn't cover is hashed, as Hadoop would.
+	 */
+	public int getPartition(Text key, Text value, int partitions)
+	{
+		if (reducers == null)
+		{
+			try
+			{
+				reducers = readPlan(conf);
+			}
+			catch (IOException exception)
+			{
+				throw new RuntimeException(exception);
+			}
+		}
+		Integer reducer = reducers.get(key);
+		if (reducer == null || reducer >= partitions)
+		{
+			return (key.hashCode() & Integer.MAX_VALUE) % partitions;
+		}
+		return reducer;
+	}
+	
+	public void setConf(Configuration new_conf)
+	{
+		conf = new_conf;
+		reducers = null;
+	}
+	
+	public Configuration getConf()
+	{
+		return conf;
+	}
+
+}
@@ -0,0 +1,158 @@
+package disease_comparison;
+
+/*
+ * The PairSummary class holds what a single pass over two profiles finds
+ * out about them, which is everything the measures need.
+ * 
+ * The pair totals come from finding the least common subsumer of every
+ * class in the first profile with every class in the second. The closure
+ * totals come from the subsumers of each profile as a whole.
+ */
+public class PairSummary {
+
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// Do both diseases have annotations?
+	boolean valid;
+	
+	// How many classes are in each profile?
+	int first_count;
+	int second_count;
+	
+	// The least common subsumer with the highest IC score, or -1 if none
+	// scored above zero, and its IC score.
+	int best_lcs;
+	double max_ic;
+	
+	// The sum of the IC scores of the least common subsumers of all pairs.
+	double ic_total;
+	
+	// The sum over the first profile of the best IC score against the
+	// second profile, and the other way around.
+	double first_best_ic_total;
+	double second_best_ic_total;
+	
+	// The same sums, but of the Lin similarity of each pair of classes.
+	double first_best_lin_total;
+	double second_best_lin_total;
+	
+	// How many subsumers the profiles share, and how many they have between
+	// them.
+	int shared_count;
+	int union_count;
+	
+	// The sum of the IC scores of those subsumers.
+	double shared_ic;
+	double union_ic;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public PairSummary()
+	{
+		clear();
+	}
+	
+	/*
+	 * clear
+	 * Arguments:
+	 * 		None
+	 * This function resets the summary so it can be reused for another
+	 * pair.
+	 */
+	void clear()
+	{
+		valid = false;
+		first_count = 0;
+		second_count = 0;
+		best_lcs = -1;
+		max_ic = 0;
+		ic_total = 0;
+		first_best_ic_total = 0;
+		second_best_ic_total = 0;
+		first_best_lin_total = 0;
+		second_best_lin_total = 0;
+		shared_count = 0;
+		union_count = 0;
+		shared_ic = 0;
+		union_ic = 0;
+	}
+	
+	/***********/
+	/* Getters */
+	/***********/
+	
+	public boolean isValid()
+	{
+		return valid;
+	}
+	
+	public int getFirstCount()
+	{
+		return first_count;
+	}
+	
+	public int getSecondCount()
+	{
+		return second_count;
+	}
+	
+	public int getBestLCS()
+	{
+		return best_lcs;
+	}
+	
+	public double getMaxIC()
+	{
+		return max_ic;
+	}
+	
+	public double getICTotal()
+	{
+		return ic_total;
+	}
+	
+	public double getFirstBestICTotal()
+	{
+		return first_best_ic_total;
+	}
+	
+	public double getSecondBestICTotal()
+	{
+		return second_best_ic_total;
+	}
+	
+	public double getFirstBestLinTotal()
+	{
+		return first_best_lin_total;
+	}
+	
+	public double getSecondBestLinTotal()
+	{
+		return second_best_lin_total;
+	}
+	
+	public int getSharedCount()
+	{
+		return shared_count;
+	}
+	
+	public int getUnionCount()
+	{
+		return union_count;
+	}
+	
+	public double getSharedIC()
+	{
+		return shared_ic;
+	}
+	
+	public double getUnionIC()
+	{
+		return union_ic;
+	}
+	
+}
@@ -0,0 +1,387 @@
+package disease_comparison;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * The QueryServer class answers requests for the best matches of a single
+ * profile against every disease, without running a job.
+ * 
+ * It builds the ontology once and keeps it, along with its least common
+ * subsumer cache, for as long as it runs. It listens on localhost and
+ * gives each connection its own thread to read requests with, which hands
+ * each request to a fixed pool of worker threads, so idle clients don't
+ * hold up the workers. A connection which sends nothing for too long is
+ * closed. Requests are lines of text:
+ * 
+ * 		QUERY <k> <class> <class> ...
+ * 
+ * which asks for the k best maxIC matches for the profile made of the
+ * given classes. The answer is one line per match, best first,
+ * 
+ * 		<identity>	<name>	<maxIC>
+ * 
+ * followed by a line saying how many matches there were and how long the
+ * request took in milliseconds,
+ * 
+ * 		OK	<matches>	<milliseconds>
+ * 
+ * or a single line starting with ERROR if the request made no sense.
+ * QUIT closes the connection.
+ */
+public class QueryServer {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// Where to listen if we aren't told.
+	public static final int DEFAULT_PORT = 9876;
+	
+	// The most matches a single request can ask for.
+	private static final int MAX_TOP_K = 10000;
+	
+	// How long a connection can sit idle before we close it, if we aren't
+	// told.
+	public static final int DEFAULT_IDLE_SECONDS = 300;
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The ontology in which to compare the profiles.
+	private Ontology ontology;
+	
+	// The search over every disease in the ontology, by position, which is
+	// the same as its index in the ontology.
+	private TopKSearch search;
+	
+	// The socket we listen on and the threads which answer requests.
+	private volatile ServerSocket server_socket;
+	private ExecutorService workers;
+	
+	// How long a connection can sit idle before we close it.
+	private int idle_millis;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public QueryServer(Ontology new_ontology)
+	{
+		ontology = new_ontology;
+		int [] indices = new int[ontology.getIndividualCount()];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = i;
+		}
+		search = new TopKSearch(ontology, indices);
+		idle_millis = DEFAULT_IDLE_SECONDS * 1000;
+	}
+	
+	/***********/
+	/* Serving */
+	/***********/
+	
+	/*
+	 * serve
+	 * Arguments:
+	 * 		port: The port on localhost to listen on, or 0 for any free one.
+	 * 		threads: How many requests to answer at once.
+	 * This function accepts connections until the server is closed.
+	 */
+	public void serve(int port, int threads) throws IOException
+	{
+		workers = Executors.newFixedThreadPool(Math.max(1, threads));
+		server_socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		try
+		{
+			while (!server_socket.isClosed())
+			{
+				Socket socket;
+				try
+				{
+					socket = server_socket.accept();
+				}
+				catch (IOException exception)
+				{
+					// Closing the server socket interrupts the accept.
+					if (server_socket.isClosed())
+					{
+						break;
+					}
+					throw exception;
+				}
+				socket.setSoTimeout(idle_millis);
+				Thread reader = new Thread(new Connection(socket), "query-connection");
+				reader.setDaemon(true);
+				reader.start();
+			}
+		}
+		finally
+		{
+			workers.shutdown();
+		}
+	}
+	
+	/*
+	 * close
+	 * Arguments:
+	 * 		None
+	 * This function stops accepting connections.
+	 */
+	public void close() throws IOException
+	{
+		if (server_socket != null)
+		{
+			server_socket.close();
+		}
+	}
+	
+	/*
+	 * getPort
+	 * Arguments:
+	 * 		None
+	 * This function returns the port we're listening on, or -1 if we
+	 * haven't started yet.
+	 */
+	public int getPort()
+	{
+		ServerSocket listening = server_socket;
+		return listening != null ? listening.getLocalPort() : -1;
+	}
+	
+	public void setIdleSeconds(int idle_seconds)
+	{
+		idle_millis = Math.max(0, idle_seconds) * 1000;
+	}
+	
+	/*
+	 * answer
+	 * Arguments:
+	 * 		request: One line of a request.
+	 * This function works out the answer to the request, including the
+	 * final OK or ERROR line.
+	 */
+	public String answer(String request)
+	{
+		long start_time = System.nanoTime();
+		String [] pieces = request.trim().split("\\s+");
+		if (pieces.length < 3 || !pieces[0].equals("QUERY"))
+		{
+			return "ERROR\tExpected QUERY <k> <class> <class> ...\n";
+		}
+		
+		// Work out how many matches we want.
+		int top_k;
+		try
+		{
+			top_k = Integer.parseInt(pieces[1]);
+		}
+		catch (NumberFormatException exception)
+		{
+			return "ERROR\tBad number of matches " + pieces[1] + "\n";
+		}
+		if (top_k < 1 || top_k > MAX_TOP_K)
+		{
+			return "ERROR\tNumber of matches must be between 1 and " + MAX_TOP_K + "\n";
+		}
+		
+		// Look up the classes of the profile, skipping ones we don't know.
+		IntList query = new IntList(pieces.length - 2);
+		List<String> unknown = new ArrayList<String>();
+		for (int i = 2; i < pieces.length; i++)
+		{
+			int node = ontology.getClassIndex(pieces[i]);
+			if (node < 0)
+			{
+				unknown.add(pieces[i]);
+			}
+			else
+			{
+				query.add(node);
+			}
+		}
+		if (query.isEmpty())
+		{
+			return "ERROR\tNo known classes in " + unknown + "\n";
+		}
+		
+		// Find the best matches.
+		TopKHeap best_matches = new TopKHeap(top_k);
+		search.search(query.toArray(), best_matches);
+		
+		// Write them out, best first.
+		StringBuilder response = new StringBuilder();
+		int [] matches = best_matches.sortedMatches();
+		double [] scores = best_matches.sortedScores();
+		for (int i = 0; i < matches.length; i++)
+		{
+			String identity = ontology.getIndividualIdentity(matches[i]);
+			response.append(identity).append('\t');
+			response.append(ontology.getAnnotationNames().get(identity)).append('\t');
+			response.append(scores[i]).append('\n');
+		}
+		double milliseconds = (System.nanoTime() - start_time) / 1e6;
+		response.append("OK\t").append(matches.length).append('\t');
+		response.append(String.format("%.3f", milliseconds)).append('\n');
+		return response.toString();
+	}
+	
+	/*
+	 * The Connection class reads the requests on one connection, one line
+	 * at a time, and has the workers answer each of them, until the client
+	 * hangs up, says QUIT, or stays quiet for too long.
+	 */
+	private class Connection implements Runnable
+	{
+		private Socket socket;
+		
+		public Connection(Socket new_socket)
+		{
+			socket = new_socket;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), "UTF-8"));
+				Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+				String request;
+				while ((request = reader.readLine()) != null)
+				{
+					if (request.trim().equals("QUIT"))
+					{
+						break;
+					}
+					if (request.trim().isEmpty())
+					{
+						continue;
+					}
+					final String line = request;
+					Future<String> response = workers.submit(new Callable<String>() {
+						public String call()
+						{
+							return answer(line);
+						}
+					});
+					writer.write(response.get());
+					writer.flush();
+				}
+			}
+			catch (SocketTimeoutException exception)
+			{
+				// The client has been quiet too long, so hang up on it.
+			}
+			catch (IOException exception)
+			{
+				// The client went away; there's nobody to tell.
+			}
+			catch (InterruptedException exception)
+			{
+				// We're shutting down.
+			}
+			catch (ExecutionException exception)
+			{
+				System.out.println(exception.getCause().toString());
+			}
+			finally
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException exception)
+				{
+					// Nothing more to do.
+				}
+			}
+		}
+	}
+	
+	/********/
+	/* Main */
+	/********/
+	
+	public static void main(String [] args)
+	{
+		try
+		{
+			// Pull out the flags, leaving the input files.
+			List<String> files = new ArrayList<String>();
+			int port = DEFAULT_PORT;
+			int threads = Runtime.getRuntime().availableProcessors();
+			int idle_seconds = DEFAULT_IDLE_SECONDS;
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--port"))
+				{
+					port = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--threads"))
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--idle-seconds"))
+				{
+					idle_seconds = Integer.parseInt(args[++i]);
+				}
+				else
+				{
+					files.add(args[i]);
+				}
+			}
+			
+			// TODO: Don't use magic file path.
+			// Build the ontology once, or read it back if it's already built.
+			Options options = new Options("ontology.config");
+			Ontology ontology;
+			if (options.getOntologySnapshot() != null)
+			{
+				ontology = OntologySnapshot.read(options.getOntologySnapshot(), options);
+			}
+			else
+			{
+				ontology = new Ontology(
+					// Class labels
+					files.get(0),
+					// Class to class
+					files.get(1),
+					// Individual labels
+					files.get(2),
+					// Individual to class
+					files.get(3),
+					options
+				);
+			}
+			
+			QueryServer server = new QueryServer(ontology);
+			server.setIdleSeconds(idle_seconds);
+			System.out.println("Query Server listening on localhost:" + port);
+			server.serve(port, threads);
+		}
+		catch (Exception e)
+		{
+			// Complain if something fails.
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package disease_comparison;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.io.Writable;
+
+/*
+ * The ScoreRecord class is one line of binary output: the positions of the
+ * two diseases in the sorted list of diseases, the index of their best
+ * least common subsumer, and the score of each measure as a float.
+ * 
+ * The dictionary file written next to the records turns the numbers back
+ * into identifiers, names and measure names.
+ */
+public class ScoreRecord implements Writable {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// What goes in place of the best least common subsumer when there
+	// isn't one, or when one of the diseases has no annotations.
+	public static final int NO_LCS_FOUND = -1;
+	public static final int INVALID_SETS = -2;
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The positions of the two diseases.
+	private int first;
+	private int second;
+	
+	// The index in the ontology of the best least common subsumer.
+	private int best_lcs;
+	
+	// The score of each measure, in the order they're shown.
+	private float [] scores;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public ScoreRecord()
+	{
+		scores = new float[0];
+	}
+	
+	/**************/
+	/* Operations */
+	/**************/
+	
+	/*
+	 * set
+	 * Arguments:
+	 * 		first_position: The position of the first disease.
+	 * 		second_position: The position of the second disease.
+	 * 		summary: What the engine found out about the two diseases.
+	 * 		measures: The measures to record, in order.
+	 * This function fills in the record for a pair of diseases.
+	 */
+	public void set(int first_position, int second_position, PairSummary summary,
+			List<SimilarityMeasure> measures)
+	{
+		first = first_position;
+		second = second_position;
+		if (!summary.isValid())
+		{
+			best_lcs = INVALID_SETS;
+		}
+		else
+		{
+			best_lcs = summary.getBestLCS() < 0 ? NO_LCS_FOUND : summary.getBestLCS();
+		}
+		if (scores.length != measures.size())
+		{
+			scores = new float[measures.size()];
+		}
+		for (int i = 0; i < scores.length; i++)
+		{
+			scores[i] = (float)measures.get(i).score(summary);
+		}
+	}
+	
+	public void write(DataOutput output) throws IOException
+	{
+		output.writeInt(first);
+		output.writeInt(second);
+		output.writeInt(best_lcs);
+		output.writeByte(scores.length);
+		for (float score : scores)
+		{
+			output.writeFloat(score);
+		}
+	}
+	
+	public void readFields(DataInput input) throws IOException
+	{
+		first = input.readInt();
+		second = input.readInt();
+		best_lcs = input.readInt();
+		int count = input.readUnsignedByte();
+		if (scores.length != count)
+		{
+			scores = new float[count];
+		}
+		for (int i = 0; i < count; i++)
+		{
+			scores[i] = input.readFloat();
+		}
+	}
+	
+	/***********/
+	/* Getters */
+	/***********/
+	
+	public int getFirst()
+	{
+		return first;
+	}
+	
+	public int getSecond()
+	{
+		return second;
+	}
+	
+	public int getBestLCS()
+	{
+		return best_lcs;
+	}
+	
+	public float [] getScores()
+	{
+		return scores;
+	}
+	
+}
@@ -0,0 +1,175 @@
+package disease_comparison;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/*
+ * The SharedOntology class gets the input files to every task and builds
+ * the ontology at most once per task JVM.
+ * 
+ * The driver ships the input files (or a prebuilt snapshot) through the
+ * DistributedCache, so they don't have to exist on every node. Each task
+ * then asks for the ontology in setup(). The first task in a JVM builds
+ * it, and any later task of the same job that reuses the JVM gets the same
+ * ontology back without rebuilding it.
+ */
+public class SharedOntology {
+
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The configuration keys for the files we ship.
+	public static final String CLASS_LABELS = "class-labels";
+	public static final String CLASS_TO_CLASS = "class-to-class";
+	public static final String INDIVIDUAL_TO_CLASS = "individual-to-class";
+	public static final String INDIVIDUAL_LABELS = "individual-labels";
+	public static final String ONTOLOGY_CONFIG = "ontology-config";
+	public static final String ONTOLOGY_SNAPSHOT = "ontology-snapshot";
+	public static final String MICA_TABLE = "mica-table";
+	
+	// The configuration key telling tasks which job's ontology they need.
+	public static final String SIGNATURE = "ontology-signature";
+	
+	/********************/
+	/* Static Variables */
+	/********************/
+	
+	// The ontology built in this JVM, and the job it was built for.
+	private static Ontology ontology = null;
+	private static String ontology_signature = null;
+	
+	// Whether a task has claimed the last build, to report its timings.
+	private static boolean build_claimed = true;
+	
+	/***********/
+	/* Driving */
+	/***********/
+	
+	/*
+	 * ship
+	 * Arguments:
+	 * 		conf: The configuration of the job.
+	 * 		fs: The file system the job runs on.
+	 * 		cache_directory: The directory to stage files in.
+	 * 		key: The configuration key for the file.
+	 * 		filename: The local path to the file.
+	 * This function copies the file into the staging directory and adds it
+	 * to the DistributedCache, so every task gets a local copy. The local
+	 * path is kept in the configuration as a fallback for runners that
+	 * don't localize the cache.
+	 */
+	public static void ship(Configuration conf, FileSystem fs, Path cache_directory,
+			String key, String filename) throws IOException
+	{
+		Path staged = new Path(cache_directory, key);
+		fs.copyFromLocalFile(false, true, new Path(filename), staged);
+		URI staged_uri = fs.makeQualified(staged).toUri();
+		DistributedCache.addCacheFile(staged_uri, conf);
+		conf.set(key, filename);
+	}
+	
+	/*********/
+	/* Tasks */
+	/*********/
+	
+	/*
+	 * get
+	 * Arguments:
+	 * 		conf: The configuration of the task.
+	 * This function returns the ontology for the task's job, building it
+	 * from the cached files if this JVM hasn't already built it.
+	 */
+	public static synchronized Ontology get(Configuration conf) throws IOException
+	{
+		// If this JVM already built the ontology for this job, reuse it.
+		String signature = conf.get(SIGNATURE, "");
+		if (ontology != null && signature.equals(ontology_signature))
+		{
+			return ontology;
+		}
+		
+		// Get the options from the shipped configuration file. The table
+		// of least common subsumers was shipped too, so point at our copy.
+		Options options = new Options(resolve(conf, ONTOLOGY_CONFIG));
+		String mica_table = resolve(conf, MICA_TABLE);
+		if (mica_table != null)
+		{
+			options.setMicaTable(mica_table);
+		}
+		
+		// Build the ontology, or read it back if it's already built.
+		String ontology_snapshot = resolve(conf, ONTOLOGY_SNAPSHOT);
+		if (ontology_snapshot != null)
+		{
+			ontology = OntologySnapshot.read(ontology_snapshot, options);
+		}
+		else
+		{
+			ontology = new Ontology(
+					resolve(conf, CLASS_LABELS),
+					resolve(conf, CLASS_TO_CLASS),
+					resolve(conf, INDIVIDUAL_LABELS),
+					resolve(conf, INDIVIDUAL_TO_CLASS),
+					options);
+		}
+		ontology_signature = signature;
+		build_claimed = false;
+		
+		return ontology;
+	}
+	
+	/*
+	 * claimBuild
+	 * Arguments:
+	 * 		None
+	 * This function returns true for the first task to ask after the
+	 * ontology was built, and false for every other, so the build is only
+	 * counted once.
+	 */
+	public static synchronized boolean claimBuild()
+	{
+		boolean claimed = !build_claimed;
+		build_claimed = true;
+		return claimed;
+	}
+	
+	/*
+	 * resolve
+	 * Arguments:
+	 * 		conf: The configuration of the task.
+	 * 		key: The configuration key for the file.
+	 * This function returns the path to the task's local copy of the file,
+	 * falling back on the path in the configuration, or null if the file
+	 * wasn't shipped.
+	 */
+	private static String resolve(Configuration conf, String key) throws IOException
+	{
+		String filename = conf.get(key);
+		if (filename == null)
+		{
+			return null;
+		}
+		
+		// Look for the file among the local copies of the cache.
+		Path [] local_files = DistributedCache.getLocalCacheFiles(conf);
+		if (local_files != null)
+		{
+			for (Path local_file : local_files)
+			{
+				if (local_file.getName().equals(key))
+				{
+					return local_file.toString();
+				}
+			}
+		}
+		
+		return filename;
+	}
+	
+}
@@ -0,0 +1,68 @@
+package disease_comparison;
+
+/*
+ * The SimilarityMeasure interface is what each measure of similarity
+ * between two diseases provides.
+ * 
+ * Measures don't look at the ontology themselves. The MeasureEngine makes
+ * one pass over the two profiles for all the enabled measures together,
+ * collecting what they need into a PairSummary, and each measure just
+ * reads its score off the summary.
+ */
+public interface SimilarityMeasure {
+
+	/*
+	 * getName
+	 * Arguments:
+	 * 		None
+	 * This function returns the name of the measure, as used in the
+	 * configuration file.
+	 */
+	public String getName();
+	
+	/*
+	 * isSymmetric
+	 * Arguments:
+	 * 		None
+	 * This function checks whether comparing A with B always gives the same
+	 * score as comparing B with A.
+	 */
+	public boolean isSymmetric();
+	
+	/*
+	 * needsPairs
+	 * Arguments:
+	 * 		None
+	 * This function checks whether the measure needs the least common
+	 * subsumer of every pair of classes in the two profiles.
+	 */
+	public boolean needsPairs();
+	
+	/*
+	 * needsClosures
+	 * Arguments:
+	 * 		None
+	 * This function checks whether the measure needs the subsumers shared
+	 * by the two profiles.
+	 */
+	public boolean needsClosures();
+	
+	/*
+	 * needsUnsharedIC
+	 * Arguments:
+	 * 		None
+	 * This function checks whether the measure looks at the IC scores of
+	 * classes the two diseases don't share. If it doesn't, the score can
+	 * only move as far as the IC scores of their shared subsumers do.
+	 */
+	public boolean needsUnsharedIC();
+	
+	/*
+	 * score
+	 * Arguments:
+	 * 		summary: What the engine found out about the two diseases.
+	 * This function computes the measure for the two diseases.
+	 */
+	public double score(PairSummary summary);
+	
+}
@@ -0,0 +1,443 @@
+package disease_comparison;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * The SyntheticOntology class writes the four files the Ontology
+ * constructor reads, for an ontology and annotations made up at random, so
+ * runs can be sized and benchmarked at full scale without real data.
+ * 
+ * The classes are laid out in levels below the root, the sizes of which
+ * grow by the branching factor until the deepest level. Every class has a
+ * parent on the level above it, and some have a second parent anywhere
+ * above that, which keeps the graph acyclic. The profile sizes of the
+ * individuals, and how often each class is used in a profile, both follow
+ * power laws, so a few individuals have very large profiles and a few
+ * classes are used by many individuals. The same seed always gives the
+ * same files.
+ */
+public class SyntheticOntology {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The names of the files we write, in the order the Ontology constructor
+	// takes them.
+	public static final String CLASS_LABELS = "class-labels.tsv";
+	public static final String CLASS_TO_CLASS = "class-to-class.tsv";
+	public static final String INDIVIDUAL_LABELS = "individual-labels.tsv";
+	public static final String INDIVIDUAL_TO_CLASS = "individual-to-class.tsv";
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The shape of the class hierarchy.
+	private int class_count = 15000;
+	private int depth = 12;
+	private double branching = 3;
+	private double extra_parent_probability = 0.2;
+	
+	// The shape of the annotations.
+	private int individual_count = 50000;
+	private double profile_exponent = 1.5;
+	private int max_profile_size = 1000;
+	private double popularity_exponent = 1;
+	
+	private long seed = 1;
+	
+	// How much the last call to write produced.
+	private long edge_count;
+	private long annotation_count;
+	
+	/***********/
+	/* Writing */
+	/***********/
+	
+	/*
+	 * write
+	 * Arguments:
+	 * 		directory: The directory to write the files to. It is created if
+	 * 			it doesn't exist.
+	 * This function generates the ontology and annotations and writes them
+	 * out, returning the paths of the class labels, class to class,
+	 * individual labels and individual to class files.
+	 */
+	public String [] write(String directory) throws IOException
+	{
+		File parent = new File(directory);
+		parent.mkdirs();
+		String [] files = {
+			new File(parent, CLASS_LABELS).getPath(),
+			new File(parent, CLASS_TO_CLASS).getPath(),
+			new File(parent, INDIVIDUAL_LABELS).getPath(),
+			new File(parent, INDIVIDUAL_TO_CLASS).getPath()
+		};
+		Random random = new Random(seed);
+		writeClasses(random, files[0], files[1]);
+		writeIndividuals(random, files[2], files[3]);
+		return files;
+	}
+	
+	/*
+	 * writeClasses
+	 * Arguments:
+	 * 		random: The source of randomness.
+	 * 		labels_file: The path to write the class labels to.
+	 * 		edges_file: The path to write the class to class edges to.
+	 * This function writes out the class hierarchy. The classes are numbered
+	 * level by level, starting with the root.
+	 */
+	private void writeClasses(Random random, String labels_file, String edges_file) throws IOException
+	{
+		int [] level_starts = levelStarts();
+		Writer labels = open(labels_file);
+		Writer edges = open(edges_file);
+		edge_count = 0;
+		try
+		{
+			labels.write(classIdentity(0) + "\tsynthetic class 0\n");
+			for (int level = 1; level < level_starts.length - 1; level++)
+			{
+				int above_start = level_starts[level - 1];
+				int above_count = level_starts[level] - above_start;
+				for (int node = level_starts[level]; node < level_starts[level + 1]; node++)
+				{
+					labels.write(classIdentity(node) + "\tsynthetic class " + node + "\n");
+					int parent = above_start + random.nextInt(above_count);
+					edges.write(classIdentity(node) + "\t" + classIdentity(parent) + "\n");
+					edge_count++;
+					
+					// A second parent can come from any level above, apart from
+					// the root, which is already an ancestor.
+					if (level > 1 && random.nextDouble() < extra_parent_probability)
+					{
+						int second_parent = 1 + random.nextInt(level_starts[level] - 1);
+						if (second_parent != parent)
+						{
+							edges.write(classIdentity(node) + "\t" + classIdentity(second_parent) + "\n");
+							edge_count++;
+						}
+					}
+				}
+			}
+		}
+		finally
+		{
+			labels.close();
+			edges.close();
+		}
+	}
+	
+	/*
+	 * levelStarts
+	 * Arguments:
+	 * 		None
+	 * This function splits the classes into levels. Every level gets at
+	 * least one class, and the rest are shared out in proportion to the
+	 * powers of the branching factor. It returns the first class of each
+	 * level, with the class count at the end.
+	 */
+	private int [] levelStarts()
+	{
+		int below_root = class_count - 1;
+		int levels = Math.max(1, Math.min(depth, below_root));
+		double [] weights = new double[levels];
+		double total_weight = 0;
+		for (int level = 0; level < levels; level++)
+		{
+			weights[level] = Math.pow(branching, level);
+			total_weight += weights[level];
+		}
+		
+		int [] level_starts = new int[levels + 2];
+		level_starts[0] = 0;
+		level_starts[1] = 1;
+		int spare = Math.max(0, below_root - levels);
+		for (int level = 0; level < levels; level++)
+		{
+			int size = 1 + (int) (spare * (weights[level] / total_weight));
+			level_starts[level + 2] = level_starts[level + 1] + size;
+		}
+		
+		// Rounding down leaves a few over, which go on the deepest level.
+		level_starts[levels + 1] = class_count;
+		return level_starts;
+	}
+	
+	/*
+	 * writeIndividuals
+	 * Arguments:
+	 * 		random: The source of randomness.
+	 * 		labels_file: The path to write the individual labels to.
+	 * 		annotations_file: The path to write the individual to class
+	 * 			annotations to.
+	 * This function writes out the individuals and their profiles. Each
+	 * profile holds distinct classes, never the root.
+	 */
+	private void writeIndividuals(Random random, String labels_file, String annotations_file)
+			throws IOException
+	{
+		// The larger a profile or the more popular a class, the less likely
+		// it is. Shuffle the classes so popularity has nothing to do with
+		// depth.
+		int candidate_count = class_count - 1;
+		int largest_profile = Math.max(1, Math.min(max_profile_size, candidate_count / 2));
+		double [] size_weights = powerLaw(largest_profile, profile_exponent);
+		double [] popularity_weights = powerLaw(candidate_count, popularity_exponent);
+		int [] by_popularity = new int[candidate_count];
+		for (int i = 0; i < candidate_count; i++)
+		{
+			by_popularity[i] = 1 + i;
+		}
+		for (int i = candidate_count - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			int swap = by_popularity[i];
+			by_popularity[i] = by_popularity[j];
+			by_popularity[j] = swap;
+		}
+		
+		Writer labels = open(labels_file);
+		Writer annotations = open(annotations_file);
+		int [] stamps = new int[class_count];
+		Arrays.fill(stamps, -1);
+		annotation_count = 0;
+		try
+		{
+			for (int individual = 0; individual < individual_count; individual++)
+			{
+				String identity = individualIdentity(individual);
+				labels.write(identity + "\tsynthetic individual " + individual + "\n");
+				
+				// Draw classes until the profile is full, giving up on the
+				// largest profiles if the popular classes keep coming back.
+				int profile_size = 1 + sample(random, size_weights);
+				int picked = 0;
+				for (int draws = 0; picked < profile_size && draws < 100 * profile_size; draws++)
+				{
+					int node = by_popularity[sample(random, popularity_weights)];
+					if (stamps[node] != individual)
+					{
+						stamps[node] = individual;
+						annotations.write(identity + "\t" + classIdentity(node) + "\n");
+						picked++;
+					}
+				}
+				annotation_count += picked;
+			}
+		}
+		finally
+		{
+			labels.close();
+			annotations.close();
+		}
+	}
+	
+	/*
+	 * powerLaw
+	 * Arguments:
+	 * 		count: How many ranks there are.
+	 * 		exponent: How quickly the weights fall.
+	 * This function returns the running totals of the weights 1 / k^exponent
+	 * for k from 1 to count, ready for sample.
+	 */
+	private static double [] powerLaw(int count, double exponent)
+	{
+		double [] cumulative = new double[count];
+		double total = 0;
+		for (int k = 1; k <= count; k++)
+		{
+			total += Math.pow(k, -exponent);
+			cumulative[k - 1] = total;
+		}
+		return cumulative;
+	}
+	
+	/*
+	 * sample
+	 * Arguments:
+	 * 		random: The source of randomness.
+	 * 		cumulative: Running totals of the weights, from powerLaw.
+	 * This function picks a rank with probability proportional to its
+	 * weight.
+	 */
+	private static int sample(Random random, double [] cumulative)
+	{
+		double target = random.nextDouble() * cumulative[cumulative.length - 1];
+		int index = Arrays.binarySearch(cumulative, target);
+		if (index < 0)
+		{
+			index = -index - 1;
+		}
+		return Math.min(index, cumulative.length - 1);
+	}
+	
+	private static Writer open(String filename) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), UTF8), 1 << 16);
+	}
+	
+	public static String classIdentity(int node)
+	{
+		return String.format("SYN:%07d", node);
+	}
+	
+	public static String individualIdentity(int individual)
+	{
+		return String.format("IND:%07d", individual);
+	}
+	
+	/***********/
+	/* Setters */
+	/***********/
+	
+	public void setClassCount(int new_class_count)
+	{
+		class_count = Math.max(2, new_class_count);
+	}
+	
+	public void setDepth(int new_depth)
+	{
+		depth = new_depth;
+	}
+	
+	public void setBranching(double new_branching)
+	{
+		branching = new_branching;
+	}
+	
+	public void setExtraParentProbability(double new_extra_parent_probability)
+	{
+		extra_parent_probability = new_extra_parent_probability;
+	}
+	
+	public void setIndividualCount(int new_individual_count)
+	{
+		individual_count = new_individual_count;
+	}
+	
+	public void setProfileExponent(double new_profile_exponent)
+	{
+		profile_exponent = new_profile_exponent;
+	}
+	
+	public void setMaxProfileSize(int new_max_profile_size)
+	{
+		max_profile_size = new_max_profile_size;
+	}
+	
+	public void setPopularityExponent(double new_popularity_exponent)
+	{
+		popularity_exponent = new_popularity_exponent;
+	}
+	
+	public void setSeed(long new_seed)
+	{
+		seed = new_seed;
+	}
+	
+	/***********/
+	/* Getters */
+	/***********/
+	
+	public int getClassCount()
+	{
+		return class_count;
+	}
+	
+	public int getIndividualCount()
+	{
+		return individual_count;
+	}
+	
+	public long getEdgeCount()
+	{
+		return edge_count;
+	}
+	
+	public long getAnnotationCount()
+	{
+		return annotation_count;
+	}
+	
+	/********/
+	/* Main */
+	/********/
+	
+	public static void main(String [] args)
+	{
+		try
+		{
+			// Pull out the flags, leaving the output directory.
+			SyntheticOntology generator = new SyntheticOntology();
+			String directory = ".";
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--classes"))
+				{
+					generator.setClassCount(Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--depth"))
+				{
+					generator.setDepth(Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--branching"))
+				{
+					generator.setBranching(Double.parseDouble(args[++i]));
+				}
+				else if (args[i].equals("--extra-parents"))
+				{
+					generator.setExtraParentProbability(Double.parseDouble(args[++i]));
+				}
+				else if (args[i].equals("--individuals"))
+				{
+					generator.setIndividualCount(Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--profile-exponent"))
+				{
+					generator.setProfileExponent(Double.parseDouble(args[++i]));
+				}
+				else if (args[i].equals("--max-profile-size"))
+				{
+					generator.setMaxProfileSize(Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--popularity-exponent"))
+				{
+					generator.setPopularityExponent(Double.parseDouble(args[++i]));
+				}
+				else if (args[i].equals("--seed"))
+				{
+					generator.setSeed(Long.parseLong(args[++i]));
+				}
+				else
+				{
+					directory = args[i];
+				}
+			}
+			
+			generator.write(directory);
+			System.out.println("Wrote " + generator.getClassCount() + " classes, " +
+					generator.getEdgeCount() + " edges, " + generator.getIndividualCount() +
+					" individuals and " + generator.getAnnotationCount() + " annotations to " + directory);
+		}
+		catch (Exception e)
+		{
+			// Complain if something fails.
+			System.out.println(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package disease_comparison;
+
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/*
+ * The TaskCounters class reports what a map or reduce task spent its time
+ * on as Hadoop counters, so slow jobs can be compared in the job history.
+ * 
+ * The ontology is shared by every task a JVM runs, so its LCS cache and
+ * shortcut counts only ever grow. We note them when the task starts and
+ * report the difference when it finishes. The build timings are reported
+ * by the task which built the ontology, so each build is counted once.
+ * Scoring covers computing the measures and formatting the line or record,
+ * and writing covers handing it to Hadoop.
+ * 
+ * When we keep the best matches for each disease, scoring covers filling
+ * the heap, and writing covers formatting and writing the matches we kept.
+ * If we're pruning, the candidates the search never scored are counted
+ * too. A pair the search did score only counts as having a null profile
+ * if the first disease has none.
+ */
+public class TaskCounters {
+	
+	/************/
+	/* Counters */
+	/************/
+	
+	public static enum Counter
+	{
+		PAIRS_SCORED,
+		PAIRS_PRUNED,
+		NULL_PROFILES,
+		LCS_CACHE_HITS,
+		LCS_CACHE_MISSES,
+		ROOT_SHORTCUTS,
+		ONTOLOGY_BUILDS,
+		PARSE_MILLIS,
+		ROOT_MILLIS,
+		CLOSURE_MILLIS,
+		IC_MILLIS,
+		IMPORTANT_NODES_MILLIS,
+		SCORING_MILLIS,
+		WRITING_MILLIS
+	}
+	
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The task we report to, and its ontology.
+	private TaskInputOutputContext<?, ?, ?, ?> context;
+	private Ontology ontology;
+	
+	// The ontology's running counts when the task started.
+	private long start_hits;
+	private long start_misses;
+	private long start_shortcuts;
+	
+	// What this task has done so far. The times are in nanoseconds.
+	private long pairs_scored;
+	private long pairs_pruned;
+	private long null_profiles;
+	private long scoring_nanos;
+	private long writing_nanos;
+	
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	/*
+	 * Arguments:
+	 * 		new_context: The task to report to.
+	 * 		new_ontology: The task's ontology, from SharedOntology.
+	 * 		built: Whether this task built the ontology.
+	 */
+	public TaskCounters(TaskInputOutputContext<?, ?, ?, ?> new_context, Ontology new_ontology,
+			boolean built)
+	{
+		context = new_context;
+		ontology = new_ontology;
+		start_hits = ontology.getLcsCache().getHits();
+		start_misses = ontology.getLcsCache().getMisses();
+		start_shortcuts = ontology.getRootShortcuts();
+		
+		if (built)
+		{
+			increment(Counter.ONTOLOGY_BUILDS, 1);
+			increment(Counter.PARSE_MILLIS, ontology.getParseMillis());
+			increment(Counter.ROOT_MILLIS, ontology.getRootMillis());
+			increment(Counter.CLOSURE_MILLIS, ontology.getClosureMillis());
+			increment(Counter.IC_MILLIS, ontology.getICMillis());
+			increment(Counter.IMPORTANT_NODES_MILLIS, ontology.getImportantNodesMillis());
+		}
+	}
+	
+	/*************/
+	/* Reporting */
+	/*************/
+	
+	/*
+	 * scored
+	 * Arguments:
+	 * 		first: The index of the first disease, or -1.
+	 * 		second: The index of the second disease, or -1.
+	 * 		start: When we started scoring the pair, from System.nanoTime.
+	 * This function notes that a pair was scored, and returns the time to
+	 * start timing the write from.
+	 */
+	public long scored(int first, int second, long start)
+	{
+		long now = System.nanoTime();
+		scoring_nanos += now - start;
+		pairs_scored++;
+		if (first < 0 || second < 0)
+		{
+			null_profiles++;
+		}
+		return now;
+	}
+	
+	/*
+	 * searched
+	 * Arguments:
+	 * 		first: The index of the disease we searched for, or -1.
+	 * 		scored: How many candidates the search scored.
+	 * 		pruned: How many candidates the search skipped.
+	 * 		start: When we started searching, from System.nanoTime.
+	 * This function notes that a search for the best matches finished.
+	 */
+	public void searched(int first, int scored, int pruned, long start)
+	{
+		scoring_nanos += System.nanoTime() - start;
+		pairs_scored += scored;
+		pairs_pruned += pruned;
+		if (first < 0)
+		{
+			null_profiles += scored;
+		}
+	}
+	
+	/*
+	 * written
+	 * Arguments:
+	 * 		start: When we started writing, from scored.
+	 * This function notes how long a write took.
+	 */
+	public void written(long start)
+	{
+		writing_nanos += System.nanoTime() - start;
+	}
+	
+	/*
+	 * report
+	 * Arguments:
+	 * 		None
+	 * This function adds everything the task did to its counters. Call it
+	 * once, when the task finishes.
+	 */
+	public void report()
+	{
+		increment(Counter.PAIRS_SCORED, pairs_scored);
+		increment(Counter.PAIRS_PRUNED, pairs_pruned);
+		increment(Counter.NULL_PROFILES, null_profiles);
+		increment(Counter.LCS_CACHE_HITS, ontology.getLcsCache().getHits() - start_hits);
+		increment(Counter.LCS_CACHE_MISSES, ontology.getLcsCache().getMisses() - start_misses);
+		increment(Counter.ROOT_SHORTCUTS, ontology.getRootShortcuts() - start_shortcuts);
+		increment(Counter.SCORING_MILLIS, scoring_nanos / 1000000);
+		increment(Counter.WRITING_MILLIS, writing_nanos / 1000000);
+	}
+	
+	private void increment(Counter counter, long amount)
+	{
+		context.getCounter(counter).increment(amount);
+	}
+
+}
@@ -0,0 +1,289 @@
+package disease_comparison;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/*
+ * The TileInputFormat class cuts the pairs of individuals into square
+ * tiles rather than ranges of pairs.
+ * 
+ * The sorted individuals (the same list PairInputFormat uses) are cut into
+ * blocks of tile_size individuals, and each tile is one block of rows
+ * against one block of columns. If the measures are symmetric, we only need
+ * the tiles on or below the diagonal. One split per tile would make far too
+ * many map tasks, so each split is a run of consecutive tiles in the same
+ * row band, with about as many splits as the job asked for (pair_splits).
+ * The record reader hands out the tiles of its split one at a time, so one
+ * map call scores a whole tile and the profiles and subsumers of its rows
+ * and columns stay in cache while it does, and the mapper can keep what it
+ * knows about the row band from one tile to the next.
+ */
+public class TileInputFormat extends InputFormat<NullWritable, TileInputFormat.Tile> {
+
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// The configuration key for the number of individuals per block.
+	public static final String TILE_SIZE = "tile-size";
+	
+	/****************/
+	/* Input Format */
+	/****************/
+	
+	/*
+	 * getSplits
+	 * Arguments:
+	 * 		context: The job.
+	 * This function cuts the pairs into tiles, and groups the tiles of each
+	 * row band into runs.
+	 */
+	public List<InputSplit> getSplits(JobContext context) throws IOException
+	{
+		Configuration conf = context.getConfiguration();
+		int individual_count = PairInputFormat.readIndividuals(conf).size();
+		boolean triangular = conf.getBoolean(PairInputFormat.TRIANGULAR, true);
+		int tile_size = Math.max(1, conf.getInt(TILE_SIZE, 1));
+		int split_count = Math.max(1, conf.getInt(PairInputFormat.SPLITS, 1));
+		
+		// Count the tiles, so we know how many to put in each split.
+		int band_count = (individual_count + tile_size - 1) / tile_size;
+		long tile_count = triangular ? (long)band_count * (band_count + 1) / 2 :
+			(long)band_count * band_count;
+		int tiles_per_split = (int)Math.max(1, (tile_count + split_count - 1) / split_count);
+		
+		List<InputSplit> splits = new ArrayList<InputSplit>();
+		for (int band = 0; band < band_count; band++)
+		{
+			// Tiles above the diagonal only hold pairs in the wrong order.
+			int band_tiles = triangular ? band + 1 : band_count;
+			int row_start = band * tile_size;
+			int row_end = Math.min(individual_count, row_start + tile_size);
+			for (int first = 0; first < band_tiles; first += tiles_per_split)
+			{
+				int last = Math.min(band_tiles, first + tiles_per_split);
+				splits.add(new TileRun(row_start, row_end, first * tile_size,
+						Math.min(individual_count, last * tile_size), tile_size, triangular));
+			}
+		}
+		return splits;
+	}
+	
+	public RecordReader<NullWritable, Tile> createRecordReader(InputSplit split, TaskAttemptContext context)
+	{
+		return new TileRunRecordReader();
+	}
+	
+	/*********/
+	/* Tiles */
+	/*********/
+	
+	/*
+	 * The Tile class describes a block of rows against a block of columns.
+	 * The pairs in the tile are (row, column) for each row and column in
+	 * the blocks, leaving out pairs of an individual with itself and, if the
+	 * tile is triangular, pairs with the column after the row.
+	 */
+	public static class Tile
+	{
+		// The rows and columns covered, each from the start up to but not
+		// including the end.
+		private int row_start;
+		private int row_end;
+		private int column_start;
+		private int column_end;
+		
+		// Whether we only want pairs with the column before the row.
+		private boolean triangular;
+		
+		public Tile(int new_row_start, int new_row_end,
+				int new_column_start, int new_column_end, boolean new_triangular)
+		{
+			row_start = new_row_start;
+			row_end = new_row_end;
+			column_start = new_column_start;
+			column_end = new_column_end;
+			triangular = new_triangular;
+		}
+		
+		/*
+		 * contains
+		 * Arguments:
+		 * 		row: The index of a row in the tile.
+		 * 		column: The index of a column in the tile.
+		 * This function checks whether the tile should compare the pair.
+		 */
+		public boolean contains(int row, int column)
+		{
+			return triangular ? column < row : column != row;
+		}
+		
+		public int getRowStart()
+		{
+			return row_start;
+		}
+		
+		public int getRowEnd()
+		{
+			return row_end;
+		}
+		
+		public int getColumnStart()
+		{
+			return column_start;
+		}
+		
+		public int getColumnEnd()
+		{
+			return column_end;
+		}
+	}
+	
+	/*
+	 * The TileRun class is a split made of consecutive tiles in one row
+	 * band. Its columns run from the first tile's start to the last tile's
+	 * end, and each tile_size of them is one tile.
+	 */
+	public static class TileRun extends InputSplit implements Writable
+	{
+		// The rows and columns covered, each from the start up to but not
+		// including the end.
+		private int row_start;
+		private int row_end;
+		private int column_start;
+		private int column_end;
+		
+		// The number of columns in each tile.
+		private int tile_size;
+		
+		// Whether we only want pairs with the column before the row.
+		private boolean triangular;
+		
+		public TileRun()
+		{
+			// Hadoop needs this to read splits back in.
+		}
+		
+		public TileRun(int new_row_start, int new_row_end, int new_column_start,
+				int new_column_end, int new_tile_size, boolean new_triangular)
+		{
+			row_start = new_row_start;
+			row_end = new_row_end;
+			column_start = new_column_start;
+			column_end = new_column_end;
+			tile_size = new_tile_size;
+			triangular = new_triangular;
+		}
+		
+		/*
+		 * getTiles
+		 * Arguments:
+		 * 		None
+		 * This function cuts the run back into its tiles.
+		 */
+		public List<Tile> getTiles()
+		{
+			List<Tile> tiles = new ArrayList<Tile>();
+			for (int start = column_start; start < column_end; start += tile_size)
+			{
+				tiles.add(new Tile(row_start, row_end, start,
+						Math.min(column_end, start + tile_size), triangular));
+			}
+			return tiles;
+		}
+		
+		public long getLength()
+		{
+			return (long)(row_end - row_start) * (column_end - column_start);
+		}
+		
+		public String [] getLocations()
+		{
+			// The pairs are generated, so they don't live anywhere.
+			return new String[0];
+		}
+		
+		public void write(DataOutput output) throws IOException
+		{
+			output.writeInt(row_start);
+			output.writeInt(row_end);
+			output.writeInt(column_start);
+			output.writeInt(column_end);
+			output.writeInt(tile_size);
+			output.writeBoolean(triangular);
+		}
+		
+		public void readFields(DataInput input) throws IOException
+		{
+			row_start = input.readInt();
+			row_end = input.readInt();
+			column_start = input.readInt();
+			column_end = input.readInt();
+			tile_size = input.readInt();
+			triangular = input.readBoolean();
+		}
+	}
+	
+	/******************/
+	/* Record Readers */
+	/******************/
+	
+	/*
+	 * The TileRunRecordReader class hands out the tiles of its run in
+	 * order, one record each.
+	 */
+	public static class TileRunRecordReader extends RecordReader<NullWritable, Tile>
+	{
+		private List<Tile> tiles;
+		private int position;
+		
+		public void initialize(InputSplit split, TaskAttemptContext context)
+		{
+			tiles = ((TileRun)split).getTiles();
+			position = -1;
+		}
+		
+		public boolean nextKeyValue()
+		{
+			if (position + 1 >= tiles.size())
+			{
+				return false;
+			}
+			position++;
+			return true;
+		}
+		
+		public NullWritable getCurrentKey()
+		{
+			return NullWritable.get();
+		}
+		
+		public Tile getCurrentValue()
+		{
+			return tiles.get(position);
+		}
+		
+		public float getProgress()
+		{
+			return tiles.isEmpty() ? 1 : (float)(position + 1) / tiles.size();
+		}
+		
+		public void close()
+		{
+			// There's nothing to close.
+		}
+	}
+	
+}
@@ -0,0 +1,229 @@
+package disease_comparison;
+
+/*
+ * The TopKHeap class keeps the k best matches seen so far for one
+ * individual. It is a min-heap on primitive arrays, so the worst of the
+ * kept matches sits on top and can be replaced in O(log k).
+ * 
+ * A match is better than another if it has a higher score, or the same
+ * score and a lower index. Breaking ties by index means the kept matches
+ * don't depend on the order they were offered in.
+ */
+public class TopKHeap {
+
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The score and index of each kept match, in heap order.
+	private double [] scores;
+	private int [] matches;
+	
+	// How many matches we're keeping right now.
+	private int size;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	public TopKHeap(int k)
+	{
+		scores = new double[k];
+		matches = new int[k];
+		size = 0;
+	}
+	
+	/**************/
+	/* Operations */
+	/**************/
+	
+	/*
+	 * offer
+	 * Arguments:
+	 * 		score: The score of the match.
+	 * 		match: The index of the match.
+	 * This function keeps the match if it's one of the k best so far, and
+	 * returns whether it was kept.
+	 */
+	public boolean offer(double score, int match)
+	{
+		if (scores.length == 0)
+		{
+			return false;
+		}
+		
+		// If there's still room, add the match at the bottom and sift it up.
+		if (size < scores.length)
+		{
+			int position = size++;
+			while (position > 0)
+			{
+				int parent = (position - 1) / 2;
+				if (!worse(score, match, scores[parent], matches[parent]))
+				{
+					break;
+				}
+				scores[position] = scores[parent];
+				matches[position] = matches[parent];
+				position = parent;
+			}
+			scores[position] = score;
+			matches[position] = match;
+			return true;
+		}
+		
+		// Otherwise, it has to beat the worst match we're keeping.
+		if (!worse(scores[0], matches[0], score, match))
+		{
+			return false;
+		}
+		
+		// Replace the worst match and sift the new one down.
+		siftDown(scores, matches, size, score, match);
+		return true;
+	}
+	
+	/*
+	 * siftDown
+	 * Arguments:
+	 * 		heap_scores: The scores of the heap.
+	 * 		heap_matches: The indices of the heap.
+	 * 		heap_size: How many matches are in the heap.
+	 * 		score: The score of the match to put on top.
+	 * 		match: The index of the match to put on top.
+	 * This function replaces the top of the heap with the given match and
+	 * moves it down until the heap is in order again.
+	 */
+	private static void siftDown(double [] heap_scores, int [] heap_matches, int heap_size,
+			double score, int match)
+	{
+		int position = 0;
+		while (true)
+		{
+			int child = 2 * position + 1;
+			if (child >= heap_size)
+			{
+				break;
+			}
+			if (child + 1 < heap_size && worse(heap_scores[child + 1], heap_matches[child + 1],
+					heap_scores[child], heap_matches[child]))
+			{
+				child++;
+			}
+			if (!worse(heap_scores[child], heap_matches[child], score, match))
+			{
+				break;
+			}
+			heap_scores[position] = heap_scores[child];
+			heap_matches[position] = heap_matches[child];
+			position = child;
+		}
+		heap_scores[position] = score;
+		heap_matches[position] = match;
+	}
+	
+	/*
+	 * worse
+	 * Arguments:
+	 * 		first_score: The score of the first match.
+	 * 		first_match: The index of the first match.
+	 * 		second_score: The score of the second match.
+	 * 		second_match: The index of the second match.
+	 * This function checks whether the first match is worse than the second.
+	 */
+	private static boolean worse(double first_score, int first_match, double second_score, int second_match)
+	{
+		if (first_score != second_score)
+		{
+			return first_score < second_score;
+		}
+		return first_match > second_match;
+	}
+	
+	/*
+	 * sortedMatches
+	 * Arguments:
+	 * 		None
+	 * This function returns the indices of the kept matches, best first.
+	 */
+	public int [] sortedMatches()
+	{
+		int [] sorted = new int[size];
+		sort(new double[size], sorted);
+		return sorted;
+	}
+	
+	/*
+	 * sortedScores
+	 * Arguments:
+	 * 		None
+	 * This function returns the scores of the kept matches, best first, in
+	 * the same order as sortedMatches.
+	 */
+	public double [] sortedScores()
+	{
+		double [] sorted = new double[size];
+		sort(sorted, new int[size]);
+		return sorted;
+	}
+	
+	/*
+	 * sort
+	 * Arguments:
+	 * 		sorted_scores: Where to put the scores, best first.
+	 * 		sorted_matches: Where to put the indices, best first.
+	 * This function takes the worst match off a copy of the heap until
+	 * it's empty, filling the results from the back.
+	 */
+	private void sort(double [] sorted_scores, int [] sorted_matches)
+	{
+		double [] heap_scores = scores.clone();
+		int [] heap_matches = matches.clone();
+		for (int heap_size = size; heap_size > 0; heap_size--)
+		{
+			sorted_scores[heap_size - 1] = heap_scores[0];
+			sorted_matches[heap_size - 1] = heap_matches[0];
+			siftDown(heap_scores, heap_matches, heap_size - 1,
+					heap_scores[heap_size - 1], heap_matches[heap_size - 1]);
+		}
+	}
+	
+	/***********************/
+	/* Getters and Setters */
+	/***********************/
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isFull()
+	{
+		return size == scores.length;
+	}
+	
+	/*
+	 * worstScore
+	 * Arguments:
+	 * 		None
+	 * This function returns the score of the worst kept match, which is
+	 * the score a new match has to beat once the heap is full.
+	 */
+	public double worstScore()
+	{
+		return scores[0];
+	}
+	
+	/*
+	 * worstMatch
+	 * Arguments:
+	 * 		None
+	 * This function returns the index of the worst kept match. A new match
+	 * with the same score as the worst only gets in with a lower index.
+	 */
+	public int worstMatch()
+	{
+		return matches[0];
+	}
+	
+}
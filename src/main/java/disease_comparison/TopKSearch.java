@@ -0,0 +1,254 @@
+package disease_comparison;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * The TopKSearch class finds the best maxIC matches for a disease without
+ * scoring every pair.
+ * 
+ * The LCS of two classes is a subsumer of both, so its IC score can't be
+ * higher than either of theirs. That means maxIC(A, B) is at most the
+ * highest IC score among the classes of A, and likewise for B. We sort the
+ * candidates by that bound, best first, and score them in order. Once the
+ * heap of best matches is full and the lower of the two bounds drops below
+ * the worst match we're keeping, nothing further down the list can get
+ * in, so we stop.
+ * The result is exactly what scoring every pair would give.
+ */
+public class TopKSearch {
+
+	/**********************/
+	/* Instance Variables */
+	/**********************/
+	
+	// The ontology in which to compare the diseases.
+	private Ontology ontology;
+	
+	// The index in the ontology of each candidate, or -1 if it has no
+	// annotations.
+	private int [] indices;
+	
+	// The bound on maxIC for each candidate.
+	private double [] bounds;
+	
+	// The candidates sorted by bound, best first, and the rank of each
+	// candidate in that order.
+	private int [] order;
+	private int [] ranks;
+
+	/****************/
+	/* Constructors */
+	/****************/
+	
+	/*
+	 * Arguments:
+	 * 		new_ontology: The ontology in which to compare the diseases.
+	 * 		new_indices: The index in the ontology of each candidate, or -1
+	 * 			if it has no annotations. Matches are reported as positions
+	 * 			in this array.
+	 */
+	public TopKSearch(Ontology new_ontology, int [] new_indices)
+	{
+		ontology = new_ontology;
+		indices = new_indices;
+		
+		// Find the bound for each candidate.
+		bounds = new double[indices.length];
+		for (int position = 0; position < indices.length; position++)
+		{
+			bounds[position] = bound(indices[position]);
+		}
+		
+		// Sort the candidates by bound, breaking ties by position so that
+		// equal bounds come in the order the heap prefers.
+		Integer [] sorted = new Integer[indices.length];
+		for (int position = 0; position < indices.length; position++)
+		{
+			sorted[position] = position;
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second)
+			{
+				int by_bound = Double.compare(bounds[second], bounds[first]);
+				return by_bound != 0 ? by_bound : first.compareTo(second);
+			}
+		});
+		order = new int[indices.length];
+		ranks = new int[indices.length];
+		for (int rank = 0; rank < indices.length; rank++)
+		{
+			order[rank] = sorted[rank];
+			ranks[sorted[rank]] = rank;
+		}
+	}
+	
+	/**********/
+	/* Bounds */
+	/**********/
+	
+	/*
+	 * bound
+	 * Arguments:
+	 * 		individual: The index of a disease in the ontology, or -1.
+	 * This function returns the highest IC score among the classes of the
+	 * disease, which bounds its maxIC against any other disease.
+	 */
+	public double bound(int individual)
+	{
+		return bound(profile(individual));
+	}
+	
+	/*
+	 * bound
+	 * Arguments:
+	 * 		nodes: The indices of the classes of a profile.
+	 * This function returns the highest IC score among the classes, which
+	 * bounds the profile's maxIC against any disease.
+	 */
+	public double bound(int [] nodes)
+	{
+		double best_ic = 0;
+		for (int node : nodes)
+		{
+			best_ic = Math.max(best_ic, ontology.getICScore(node));
+		}
+		return best_ic;
+	}
+	
+	/*
+	 * profile
+	 * Arguments:
+	 * 		individual: The index of a disease in the ontology, or -1.
+	 * This function returns the classes of the disease, if it has any.
+	 */
+	private int [] profile(int individual)
+	{
+		if (individual < 0)
+		{
+			return new int[0];
+		}
+		return ontology.getProfiles().row(individual);
+	}
+	
+	/**********/
+	/* Search */
+	/**********/
+	
+	/*
+	 * search
+	 * Arguments:
+	 * 		first: The index in the ontology of the disease to match.
+	 * 		self_position: The position of the disease among the candidates,
+	 * 			so it isn't matched with itself, or -1.
+	 * 		best_matches: The heap to keep the best matches in.
+	 * This function finds the best matches among all the candidates, and
+	 * returns how many it scored.
+	 */
+	public int search(int first, int self_position, TopKHeap best_matches)
+	{
+		return scan(profile(first), order, order.length, self_position, best_matches);
+	}
+	
+	/*
+	 * search
+	 * Arguments:
+	 * 		query: The indices of the classes of a profile which needn't
+	 * 			belong to any disease.
+	 * 		best_matches: The heap to keep the best matches in.
+	 * This function finds the best matches for the profile among all the
+	 * candidates, and returns how many it scored.
+	 */
+	public int search(int [] query, TopKHeap best_matches)
+	{
+		return scan(query, order, order.length, -1, best_matches);
+	}
+	
+	/*
+	 * search
+	 * Arguments:
+	 * 		first: The index in the ontology of the disease to match.
+	 * 		candidates: The positions of the candidates to consider. This
+	 * 			list is reordered.
+	 * 		best_matches: The heap to keep the best matches in.
+	 * This function finds the best matches among the given candidates, and
+	 * returns how many it scored.
+	 */
+	public int search(int first, IntList candidates, TopKHeap best_matches)
+	{
+		// Sorting the ranks of the candidates puts them in bound order.
+		int [] sorted = new int[candidates.size()];
+		for (int i = 0; i < sorted.length; i++)
+		{
+			sorted[i] = ranks[candidates.get(i)];
+		}
+		Arrays.sort(sorted);
+		for (int i = 0; i < sorted.length; i++)
+		{
+			sorted[i] = order[sorted[i]];
+		}
+		return scan(profile(first), sorted, sorted.length, -1, best_matches);
+	}
+	
+	/*
+	 * scan
+	 * Arguments:
+	 * 		query: The classes of the profile to match.
+	 * 		sorted: Positions of candidates, in bound order.
+	 * 		count: How many candidates to consider.
+	 * 		self_position: The position of the disease itself, or -1.
+	 * 		best_matches: The heap to keep the best matches in.
+	 * This function scores candidates in bound order until no remaining
+	 * candidate can beat the matches we're keeping, and returns how many it
+	 * scored.
+	 */
+	private int scan(int [] query, int [] sorted, int count, int self_position, TopKHeap best_matches)
+	{
+		// No candidate can score above the query's own bound either, so every
+		// candidate whose bound is at least the query's has that same bound.
+		// They come first, and taking them in position order means the tie
+		// rule below still holds for them.
+		double first_bound = bound(query);
+		int capped = 0;
+		while (capped < count && bounds[sorted[capped]] >= first_bound)
+		{
+			capped++;
+		}
+		if (capped > 1)
+		{
+			sorted = Arrays.copyOf(sorted, count);
+			Arrays.sort(sorted, 0, capped);
+		}
+		
+		int scored = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int position = sorted[i];
+			if (position == self_position)
+			{
+				continue;
+			}
+			
+			// Check whether this candidate could still get in. One with the
+			// same bound as the worst match can only tie, and ties go to
+			// lower positions. Within a run of equal bounds the order puts
+			// lower positions first, so past the worst match we can stop.
+			if (best_matches.isFull())
+			{
+				double worst_score = best_matches.worstScore();
+				double candidate_bound = Math.min(first_bound, bounds[position]);
+				if (candidate_bound < worst_score ||
+						(candidate_bound == worst_score && position > best_matches.worstMatch()))
+				{
+					break;
+				}
+			}
+			
+			double score = DiseaseComparisonMeasures.maxIC(ontology, query, indices[position]);
+			best_matches.offer(score, position);
+			scored++;
+		}
+		return scored;
+	}
+	
+}
@@ -0,0 +1,345 @@
+package disease_comparison;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * The TsvReader class reads the first two columns of a tab-separated file.
+ * 
+ * Plain files are memory-mapped, and gzipped files (recognised by their
+ * first two bytes, whatever they are called) are decompressed into memory.
+ * Either way, the bytes are split into chunks which end at line breaks,
+ * and the chunks are split on tab and newline bytes in parallel, without
+ * any regular expressions. The lines come back in the order they appear in
+ * the file, so indices handed out while walking through them don't depend
+ * on how the file was split up.
+ * 
+ * Blank lines, and lines without a second column, are skipped. A carriage
+ * return before a line break is dropped, and anything after the second
+ * column is ignored.
+ */
+public class TsvReader {
+	
+	/*************/
+	/* Constants */
+	/*************/
+	
+	// How many bytes each chunk should hold. Smaller files are read in one
+	// chunk, without going through the pool.
+	private static final int CHUNK_SIZE = 1 << 22;
+	
+	// The first two bytes of a gzipped file.
+	private static final int GZIP_MAGIC_FIRST = 0x1f;
+	private static final int GZIP_MAGIC_SECOND = 0x8b;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/***********/
+	/* Reading */
+	/***********/
+	
+	/*
+	 * read
+	 * Arguments:
+	 * 		filename: The path to the file, which may be gzipped.
+	 * This function reads the first two columns of every line in the file.
+	 */
+	public static Columns read(String filename) throws IOException
+	{
+		ByteBuffer bytes = isGzipped(filename) ? inflate(filename) : map(filename);
+		
+		// Find where each chunk starts, moving each nominal start forward to
+		// the beginning of the next line.
+		int size = bytes.limit();
+		int chunk_count = Math.max(1, size / CHUNK_SIZE);
+		int [] starts = new int[chunk_count + 1];
+		starts[chunk_count] = size;
+		for (int chunk = 1; chunk < chunk_count; chunk++)
+		{
+			int start = Math.max(starts[chunk - 1], (int)((long)size * chunk / chunk_count));
+			while (start < size && start > 0 && bytes.get(start - 1) != '\n')
+			{
+				start++;
+			}
+			starts[chunk] = start;
+		}
+		
+		Columns [] chunks = new Columns[chunk_count];
+		if (chunk_count == 1)
+		{
+			chunks[0] = parse(bytes, 0, size);
+		}
+		else
+		{
+			ForkJoinPool.commonPool().invoke(new ChunkTask(bytes, starts, chunks, 0, chunk_count));
+		}
+		return Columns.concatenate(chunks);
+	}
+	
+	/*
+	 * isGzipped
+	 * Arguments:
+	 * 		filename: The path to the file.
+	 * This function checks whether the file starts like a gzipped file.
+	 */
+	private static boolean isGzipped(String filename) throws IOException
+	{
+		InputStream input = new FileInputStream(filename);
+		try
+		{
+			return input.read() == GZIP_MAGIC_FIRST && input.read() == GZIP_MAGIC_SECOND;
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	/*
+	 * map
+	 * Arguments:
+	 * 		filename: The path to a plain file.
+	 * This function memory-maps the whole file.
+	 */
+	private static ByteBuffer map(String filename) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Can't read files over 2GB: " + filename);
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed.
+			file.close();
+		}
+	}
+	
+	/*
+	 * inflate
+	 * Arguments:
+	 * 		filename: The path to a gzipped file.
+	 * This function decompresses the whole file into memory.
+	 */
+	private static ByteBuffer inflate(String filename) throws IOException
+	{
+		InputStream input = new GZIPInputStream(new FileInputStream(filename), 1 << 16);
+		try
+		{
+			byte [] buffer = new byte[1 << 20];
+			int length = 0;
+			for (int read = 0; read >= 0; read = input.read(buffer, length, buffer.length - length))
+			{
+				length += read;
+				if (length == buffer.length)
+				{
+					if (buffer.length == Integer.MAX_VALUE)
+					{
+						throw new IOException("Can't read files over 2GB: " + filename);
+					}
+					buffer = Arrays.copyOf(buffer, (int)Math.min(2L * buffer.length, Integer.MAX_VALUE));
+				}
+			}
+			return ByteBuffer.wrap(buffer, 0, length);
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	/*
+	 * parse
+	 * Arguments:
+	 * 		bytes: The contents of the file.
+	 * 		start: The first byte of the chunk, at the start of a line.
+	 * 		end: One past the last byte of the chunk, at the start of a line
+	 * 			or the end of the file.
+	 * This function splits the chunk into lines and columns. A mapped chunk
+	 * is copied out in one go first, since scanning an array is much faster
+	 * than reading the buffer a byte at a time.
+	 */
+	private static Columns parse(ByteBuffer bytes, int start, int end)
+	{
+		byte [] array;
+		int offset;
+		if (bytes.hasArray())
+		{
+			array = bytes.array();
+			offset = bytes.arrayOffset();
+		}
+		else
+		{
+			array = new byte[end - start];
+			ByteBuffer chunk = bytes.duplicate();
+			chunk.position(start);
+			chunk.get(array);
+			offset = -start;
+		}
+		
+		Columns columns = new Columns();
+		int line_start = start + offset;
+		int chunk_end = end + offset;
+		while (line_start < chunk_end)
+		{
+			// Find the end of the line, and the end of the first column.
+			int line_end = line_start;
+			int first_end = -1;
+			while (line_end < chunk_end && array[line_end] != '\n')
+			{
+				if (first_end < 0 && array[line_end] == '\t')
+				{
+					first_end = line_end;
+				}
+				line_end++;
+			}
+			int next_line = line_end + 1;
+			if (line_end > line_start && array[line_end - 1] == '\r')
+			{
+				line_end--;
+			}
+			
+			// The second column runs to the next tab or the end of the line.
+			if (first_end >= 0)
+			{
+				int second_end = first_end + 1;
+				while (second_end < line_end && array[second_end] != '\t')
+				{
+					second_end++;
+				}
+				columns.add(new String(array, line_start, first_end - line_start, UTF8),
+						new String(array, first_end + 1, second_end - first_end - 1, UTF8));
+			}
+			line_start = next_line;
+		}
+		return columns;
+	}
+	
+	/*
+	 * The ChunkTask class parses a range of chunks, splitting the range in
+	 * half until there's only one left.
+	 */
+	private static class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private ByteBuffer bytes;
+		private int [] starts;
+		private Columns [] chunks;
+		private int first;
+		private int last;
+		
+		public ChunkTask(ByteBuffer new_bytes, int [] new_starts, Columns [] new_chunks,
+				int new_first, int new_last)
+		{
+			bytes = new_bytes;
+			starts = new_starts;
+			chunks = new_chunks;
+			first = new_first;
+			last = new_last;
+		}
+		
+		protected void compute()
+		{
+			if (last - first == 1)
+			{
+				chunks[first] = parse(bytes, starts[first], starts[last]);
+			}
+			else
+			{
+				int middle = (first + last) >>> 1;
+				invokeAll(new ChunkTask(bytes, starts, chunks, first, middle),
+						new ChunkTask(bytes, starts, chunks, middle, last));
+			}
+		}
+	}
+	
+	/*
+	 * The Columns class holds the first two columns of each line that was
+	 * read.
+	 */
+	public static class Columns
+	{
+		private String [] firsts;
+		private String [] seconds;
+		private int size;
+		
+		public Columns()
+		{
+			firsts = new String[16];
+			seconds = new String[16];
+			size = 0;
+		}
+		
+		private void add(String first, String second)
+		{
+			if (size == firsts.length)
+			{
+				firsts = Arrays.copyOf(firsts, 2 * size);
+				seconds = Arrays.copyOf(seconds, 2 * size);
+			}
+			firsts[size] = first;
+			seconds[size] = second;
+			size++;
+		}
+		
+		/*
+		 * concatenate
+		 * Arguments:
+		 * 		chunks: The columns of each chunk, in order.
+		 * This function joins the chunks' columns into one.
+		 */
+		private static Columns concatenate(Columns [] chunks)
+		{
+			if (chunks.length == 1)
+			{
+				return chunks[0];
+			}
+			int total = 0;
+			for (Columns chunk : chunks)
+			{
+				total += chunk.size;
+			}
+			Columns joined = new Columns();
+			joined.firsts = new String[Math.max(1, total)];
+			joined.seconds = new String[Math.max(1, total)];
+			for (Columns chunk : chunks)
+			{
+				System.arraycopy(chunk.firsts, 0, joined.firsts, joined.size, chunk.size);
+				System.arraycopy(chunk.seconds, 0, joined.seconds, joined.size, chunk.size);
+				joined.size += chunk.size;
+			}
+			return joined;
+		}
+		
+		public int size()
+		{
+			return size;
+		}
+		
+		public String first(int line)
+		{
+			return firsts[line];
+		}
+		
+		public String second(int line)
+		{
+			return seconds[line];
+		}
+	}
+
+}
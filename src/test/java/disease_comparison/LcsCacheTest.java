@@ -0,0 +1,102 @@
+/**
+ * 
+ */
+package disease_comparison;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link disease_comparison.LcsCache}.
+ */
+public class LcsCacheTest {
+
+	@Test
+	public void testGetAfterPut() {
+		LcsCache cache = new LcsCache(64, LcsCache.CLOCK);
+		assertEquals(LcsCache.MISSING, cache.get(42L));
+		cache.put(42L, 7);
+		cache.put(43L, -1);
+		assertEquals(7, cache.get(42L));
+		assertEquals(-1, cache.get(43L));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+	
+	@Test
+	public void testCapacityIsBounded() {
+		for (String policy : new String [] { LcsCache.CLOCK, LcsCache.LRU })
+		{
+			LcsCache cache = new LcsCache(64, policy);
+			for (long key = 0; key < 10000; key++)
+			{
+				cache.put(key, (int)key);
+			}
+			
+			// Everything we didn't evict must still be correct.
+			int held = 0;
+			for (long key = 0; key < 10000; key++)
+			{
+				int value = cache.get(key);
+				if (value != LcsCache.MISSING)
+				{
+					assertEquals(key, value);
+					held++;
+				}
+			}
+			assertTrue(held <= cache.getCapacity());
+			assertEquals(10000 - held, cache.getEvictions());
+		}
+	}
+	
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		// Several threads write and read overlapping keys. A read may miss,
+		// but it must never see another key's value.
+		final LcsCache cache = new LcsCache(256, LcsCache.CLOCK);
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread [] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++)
+		{
+			final int offset = i * 100;
+			threads[i] = new Thread() {
+				public void run()
+				{
+					for (int round = 0; round < 200000; round++)
+					{
+						long key = (round + offset) % 2000;
+						if (round % 4 == 0)
+						{
+							cache.put(key, (int)key * 3);
+						}
+						int value = cache.get(key);
+						if (value != LcsCache.MISSING && value != (int)key * 3)
+						{
+							wrong.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertEquals(0, wrong.get());
+		assertEquals(4 * 200000, cache.getHits() + cache.getMisses());
+	}
+	
+	@Test
+	public void testHugeCapacityIsClamped() {
+		// The slots would overflow an int, so the capacity is clamped rather
+		// than failing. Sizing is checked without allocating the cache.
+		assertEquals(1 << 30, (long)LcsCache.slotCount(Integer.MAX_VALUE));
+		assertEquals(64, LcsCache.slotCount(60));
+		assertEquals(0, LcsCache.slotCount(0));
+	}
+
+}
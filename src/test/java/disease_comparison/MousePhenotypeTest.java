@@ -5,6 +5,26 @@ package disease_comparison;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -34,5 +54,873 @@ public class MousePhenotypeTest {
 	public void testComputeLCS() {
 		assertEquals("MP:0003631", simple.computeLCS("MP:0000857","MP:0003635"));
 	}
+	
+	/**
+	 * Test method for {@link disease_comparison.MicaTable#build(disease_comparison.Ontology, java.lang.String)}.
+	 */
+	@Test
+	public void testMicaTable() throws Exception {
+		File table_file = File.createTempFile("mica", ".table");
+		table_file.deleteOnExit();
+		MicaTable.build(simple, table_file.getPath());
+		MicaTable table = new MicaTable(table_file.getPath(), simple);
+		for (int first = 0; first < simple.getClassCount(); first++)
+		{
+			for (int second = 0; second < simple.getClassCount(); second++)
+			{
+				assertEquals(simple.computeLCS(first, second), table.lookup(first, second));
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.OntologySnapshot#read(java.lang.String)}.
+	 */
+	@Test
+	public void testSnapshot() throws Exception {
+		File snapshot_file = File.createTempFile("ontology", ".snapshot");
+		snapshot_file.deleteOnExit();
+		OntologySnapshot.write(simple, snapshot_file.getPath());
+		Ontology restored = OntologySnapshot.read(snapshot_file.getPath());
+		assertEquals(simple.getRoot(), restored.getRoot());
+		assertEquals("MP:0003631", restored.computeLCS("MP:0000857","MP:0003635"));
+		for (int first = 0; first < simple.getIndividualCount(); first++)
+		{
+			for (int second = 0; second < simple.getIndividualCount(); second++)
+			{
+				assertEquals(DiseaseComparisonMeasures.maxIC(simple, first, second),
+						DiseaseComparisonMeasures.maxIC(restored, first, second), 0);
+			}
+		}
+		
+		// A snapshot built without thresholding, read with it, should find
+		// the same important nodes as building with it.
+		Options options = new Options();
+		options.setUseThresholding(true);
+		options.setMaxImportantNodes(20);
+		Ontology thresholded = new Ontology(
+				"src/test/resources/mp-subset-1-labels.tsv",
+				"src/test/resources/mp-subset-1-edges.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1-labels.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1.tsv",
+				options
+			);
+		Ontology unthresholded = new Ontology(
+				"src/test/resources/mp-subset-1-labels.tsv",
+				"src/test/resources/mp-subset-1-edges.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1-labels.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1.tsv",
+				new Options()
+			);
+		OntologySnapshot.write(unthresholded, snapshot_file.getPath());
+		restored = OntologySnapshot.read(snapshot_file.getPath(), options);
+		for (int node = 0; node < simple.getClassCount(); node++)
+		{
+			assertEquals(thresholded.isImportant(node), restored.isImportant(node));
+		}
+		for (int first = 0; first < simple.getIndividualCount(); first++)
+		{
+			for (int second = 0; second < simple.getIndividualCount(); second++)
+			{
+				assertEquals(DiseaseComparisonMeasures.maxIC(thresholded, first, second),
+						DiseaseComparisonMeasures.maxIC(restored, first, second), 0);
+			}
+		}
+	}
 
+	/**
+	 * Test method for {@link disease_comparison.TopKSearch#search(int, int, disease_comparison.TopKHeap)}.
+	 */
+	@Test
+	public void testTopKSearch() {
+		int [] indices = new int[simple.getIndividualCount()];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = i;
+		}
+		TopKSearch search = new TopKSearch(simple, indices);
+		for (int k = 1; k <= indices.length; k++)
+		{
+			for (int first = 0; first < indices.length; first++)
+			{
+				TopKHeap every_pair = new TopKHeap(k);
+				for (int second = 0; second < indices.length; second++)
+				{
+					if (second != first)
+					{
+						every_pair.offer(DiseaseComparisonMeasures.maxIC(simple, first, second), second);
+					}
+				}
+				TopKHeap pruned = new TopKHeap(k);
+				search.search(first, first, pruned);
+				assertArrayEquals(every_pair.sortedMatches(), pruned.sortedMatches());
+			}
+		}
+		
+		// A query of a single class can't score above that class's IC, even
+		// against diseases with much better classes.
+		for (int node = 0; node < simple.getClassCount(); node++)
+		{
+			int [] query = { node };
+			TopKHeap every_pair = new TopKHeap(2);
+			for (int second = 0; second < indices.length; second++)
+			{
+				every_pair.offer(DiseaseComparisonMeasures.maxIC(simple, query, second), second);
+			}
+			TopKHeap pruned = new TopKHeap(2);
+			search.search(query, pruned);
+			assertArrayEquals(every_pair.sortedMatches(), pruned.sortedMatches());
+		}
+		
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.TopKSearch#search(int[], disease_comparison.TopKHeap)}.
+	 */
+	@Test
+	public void testTopKSearchLowQuery() throws Exception {
+		File directory = Files.createTempDirectory("synthetic").toFile();
+		SyntheticOntology generator = new SyntheticOntology();
+		generator.setClassCount(300);
+		generator.setDepth(5);
+		generator.setIndividualCount(200);
+		generator.setMaxProfileSize(20);
+		generator.setSeed(11);
+		String [] files = generator.write(directory.getPath());
+		Ontology ontology = new Ontology(files[0], files[1], files[2], files[3], simple.getOptions());
+		int [] indices = new int[ontology.getIndividualCount()];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = i;
+		}
+		TopKSearch search = new TopKSearch(ontology, indices);
+		
+		// The root's bound is below every disease's, and every disease
+		// scores it, so the first two scored fill the heap and we stop.
+		TopKHeap matches = new TopKHeap(2);
+		assertEquals(0, ontology.getICScore(ontology.getRootIndex()), 0);
+		assertEquals(2, search.search(new int [] { ontology.getRootIndex() }, matches));
+		assertArrayEquals(new int [] { 0, 1 }, matches.sortedMatches());
+		
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.AncestorIndex#candidates(int)}.
+	 */
+	@Test
+	public void testAncestorIndex() {
+		int [] indices = new int[simple.getIndividualCount()];
+		for (int i = 0; i < indices.length; i++)
+		{
+			indices[i] = i;
+		}
+		for (double ic_floor = 0.5; ic_floor < 4; ic_floor += 0.5)
+		{
+			AncestorIndex index = new AncestorIndex(simple, indices, ic_floor);
+			for (int first = 0; first < indices.length; first++)
+			{
+				int [] candidates = index.candidates(first);
+				for (int second = 0; second < indices.length; second++)
+				{
+					boolean reaches_floor = DiseaseComparisonMeasures.maxIC(simple, first, second) >= ic_floor;
+					assertEquals(reaches_floor, Arrays.binarySearch(candidates, second) >= 0);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.MeasureEngine#summarize(int, int)}.
+	 */
+	@Test
+	public void testMeasureEngine() {
+		Options options = simple.getOptions();
+		options.setShowSimJ(true);
+		options.setShowSimGIC(true);
+		options.setShowResnikAverage(true);
+		options.setShowResnikBMA(true);
+		options.setShowLinBMA(true);
+		MeasureEngine engine = new MeasureEngine(simple);
+		CompressedRows profiles = simple.getProfiles();
+		for (int first = 0; first < simple.getIndividualCount(); first++)
+		{
+			for (int second = 0; second < simple.getIndividualCount(); second++)
+			{
+				// Work each measure out the slow way.
+				int [] a = profiles.row(first);
+				int [] b = profiles.row(second);
+				double total = 0;
+				double [] a_best = new double[a.length];
+				double [] b_best = new double[b.length];
+				double [] a_lin = new double[a.length];
+				double [] b_lin = new double[b.length];
+				for (int i = 0; i < a.length; i++)
+				{
+					for (int j = 0; j < b.length; j++)
+					{
+						double ic = simple.getICScore(simple.computeLCS(a[i], b[j]));
+						double sum = simple.getICScore(a[i]) + simple.getICScore(b[j]);
+						double lin = sum > 0 ? 2 * ic / sum : 0;
+						total += ic;
+						a_best[i] = Math.max(a_best[i], ic);
+						b_best[j] = Math.max(b_best[j], ic);
+						a_lin[i] = Math.max(a_lin[i], lin);
+						b_lin[j] = Math.max(b_lin[j], lin);
+					}
+				}
+				Set<Integer> a_closure = new HashSet<Integer>();
+				Set<Integer> b_closure = new HashSet<Integer>();
+				for (int node : a)
+				{
+					for (int ancestor : simple.getAncestors().row(node))
+					{
+						a_closure.add(ancestor);
+					}
+				}
+				for (int node : b)
+				{
+					for (int ancestor : simple.getAncestors().row(node))
+					{
+						b_closure.add(ancestor);
+					}
+				}
+				Set<Integer> union = new HashSet<Integer>(a_closure);
+				union.addAll(b_closure);
+				double shared_ic = 0;
+				double union_ic = 0;
+				int shared = 0;
+				for (int node : union)
+				{
+					union_ic += simple.getICScore(node);
+					if (a_closure.contains(node) && b_closure.contains(node))
+					{
+						shared++;
+						shared_ic += simple.getICScore(node);
+					}
+				}
+				
+				PairSummary summary = engine.summarize(first, second);
+				double [] expected = {
+						DiseaseComparisonMeasures.maxIC(simple, first, second),
+						(double)shared / union.size(),
+						union_ic > 0 ? shared_ic / union_ic : 0,
+						total / (a.length * b.length),
+						(sum(a_best) / a.length + sum(b_best) / b.length) / 2,
+						(sum(a_lin) / a.length + sum(b_lin) / b.length) / 2 };
+				List<SimilarityMeasure> measures = engine.getMeasures();
+				assertEquals(expected.length, measures.size());
+				for (int k = 0; k < expected.length; k++)
+				{
+					assertEquals(measures.get(k).getName(), expected[k], measures.get(k).score(summary), 1e-9);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.MicaRows#lcs(int, int)}.
+	 */
+	@Test
+	public void testMicaRows() {
+		int [] targets = new int[simple.getIndividualCount()];
+		for (int i = 0; i < targets.length; i++)
+		{
+			targets[i] = i;
+		}
+		MicaRows rows = new MicaRows(simple, targets);
+		CompressedRows profiles = simple.getProfiles();
+		for (int first = 0; first < targets.length; first++)
+		{
+			rows.load(first);
+			int [] query = profiles.row(first);
+			for (int row = 0; row < query.length; row++)
+			{
+				for (int node = 0; node < simple.getClassCount(); node++)
+				{
+					assertEquals(simple.computeLCS(query[row], node), rows.lcs(row, node));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.QueryServer#answer(java.lang.String)}.
+	 */
+	@Test
+	public void testQueryServer() {
+		QueryServer server = new QueryServer(simple);
+		int first = simple.getIndividualIndex("MGI:101757");
+		String request = "QUERY 3";
+		for (int node : simple.getProfiles().row(first))
+		{
+			request += " " + simple.getClassIdentity(node);
+		}
+		String [] lines = server.answer(request).split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[0].startsWith("MGI:101757\t"));
+		assertTrue(lines[3].startsWith("OK\t3\t"));
+		assertTrue(server.answer("QUERY 3 MP:nothing").startsWith("ERROR"));
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.QueryServer#serve(int, int)}.
+	 */
+	@Test
+	public void testQueryServerIdleClient() throws Exception {
+		// With a single worker, an idle client mustn't keep another waiting.
+		final QueryServer server = new QueryServer(simple);
+		Thread serving = new Thread() {
+			public void run()
+			{
+				try
+				{
+					server.serve(0, 1);
+				}
+				catch (IOException exception)
+				{
+					// The test fails below if the server never answers.
+				}
+			}
+		};
+		serving.start();
+		while (server.getPort() < 0)
+		{
+			Thread.sleep(10);
+		}
+		
+		Socket idle = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		Socket active = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		active.setSoTimeout(10000);
+		try
+		{
+			int first = simple.getIndividualIndex("MGI:101757");
+			Writer writer = new OutputStreamWriter(active.getOutputStream(), "UTF-8");
+			writer.write("QUERY 1 " + simple.getClassIdentity(simple.getProfiles().get(
+					simple.getProfiles().start(first))) + "\n");
+			writer.flush();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(active.getInputStream(), "UTF-8"));
+			assertNotNull(reader.readLine());
+			assertTrue(reader.readLine().startsWith("OK\t1\t"));
+		}
+		finally
+		{
+			idle.close();
+			active.close();
+			server.close();
+			serving.join();
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.LineFormatter#appendDouble(double)}.
+	 */
+	@Test
+	public void testLineFormatter() {
+		simple.getOptions().setScorePrecision(3);
+		LineFormatter formatter = new LineFormatter(new MeasureEngine(simple), new LineFormatter.Dictionary(simple));
+		double [] values = { 1.2345, 0.0005, -0.0001, 12, -3.14159, 0.1 };
+		String [] expected = { "1.235", "0.001", "0.000", "12.000", "-3.142", "0.100" };
+		for (int i = 0; i < values.length; i++)
+		{
+			formatter.clear();
+			formatter.appendDouble(values[i]);
+			assertEquals(expected[i], formatter.toString());
+		}
+		
+		// Without a fixed precision, scores look just like Double.toString.
+		simple.getOptions().setScorePrecision(-1);
+		formatter = new LineFormatter(new MeasureEngine(simple), new LineFormatter.Dictionary(simple));
+		double [] others = { 1.2345, 0.1, -3.14159, 1e-7, 2.5e21, 0, Double.NaN, Double.NEGATIVE_INFINITY };
+		for (double value : others)
+		{
+			formatter.clear();
+			formatter.appendDouble(value);
+			assertEquals(Double.toString(value), formatter.toString());
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.BinaryResults#convert(org.apache.hadoop.conf.Configuration, org.apache.hadoop.fs.Path, java.lang.String, disease_comparison.Options)}.
+	 */
+	@Test
+	public void testBinaryResults() throws Exception {
+		List<String> identities = new ArrayList<String>();
+		for (int i = 0; i < simple.getIndividualCount(); i++)
+		{
+			identities.add(simple.getIndividualIdentity(i));
+		}
+		Collections.sort(identities);
+		simple.getOptions().setScorePrecision(3);
+		
+		File text_directory = Files.createTempDirectory("text").toFile();
+		String text_file = LocalComparisonEngine.outputFile(text_directory.getPath());
+		new LocalComparisonEngine(simple, identities, 2).run(text_file);
+		
+		simple.getOptions().setOutputFormat(BinaryResults.BINARY);
+		File binary_directory = Files.createTempDirectory("binary").toFile();
+		new LocalComparisonEngine(simple, identities, 2).run(LocalComparisonEngine.outputFile(binary_directory.getPath()));
+		File converted_file = new File(text_directory, "converted.tsv");
+		BinaryResults.convert(new Configuration(), new Path(binary_directory.getPath()),
+				converted_file.getPath(), simple.getOptions());
+		
+		List<String> expected = Files.readAllLines(new File(text_file).toPath());
+		List<String> converted = Files.readAllLines(converted_file.toPath());
+		Collections.sort(expected);
+		Collections.sort(converted);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, converted);
+		
+		for (File directory : new File[] { text_directory, binary_directory })
+		{
+			for (File file : directory.listFiles())
+			{
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.LocalComparisonEngine#run(java.lang.String)}.
+	 */
+	@Test
+	public void testLocalComparisonEngine() throws Exception {
+		List<String> identities = new ArrayList<String>();
+		for (int i = 0; i < simple.getIndividualCount(); i++)
+		{
+			identities.add(simple.getIndividualIdentity(i));
+		}
+		Collections.sort(identities);
+		
+		// Small tiles, so several threads really do share the work.
+		simple.getOptions().setTileSize(2);
+		File directory = Files.createTempDirectory("local").toFile();
+		String output_file = LocalComparisonEngine.outputFile(directory.getPath());
+		for (boolean triangular : new boolean [] { true, false })
+		{
+			// The lines should be the ones the reducer writes for each pair.
+			simple.getOptions().setSymmetric(triangular);
+			LineFormatter formatter = new LineFormatter(new MeasureEngine(simple), new LineFormatter.Dictionary(simple));
+			List<String> expected = new ArrayList<String>();
+			for (int row = 0; row < identities.size(); row++)
+			{
+				for (int column = 0; column < identities.size(); column++)
+				{
+					if (triangular ? column < row : column != row)
+					{
+						formatter.clear();
+						formatter.append(identities.get(row), simple.getIndividualIndex(identities.get(row)),
+								identities.get(column), simple.getIndividualIndex(identities.get(column)));
+						expected.add(formatter.toString());
+					}
+				}
+			}
+			
+			new LocalComparisonEngine(simple, identities, 3).run(output_file);
+			List<String> lines = Files.readAllLines(new File(output_file).toPath());
+			Collections.sort(expected);
+			Collections.sort(lines);
+			assertEquals(triangular ? 21 : 42, expected.size());
+			assertEquals(expected, lines);
+		}
+		
+		// Keeping the best matches should leave exactly that many for each
+		// disease, whether or not the search is pruned.
+		simple.getOptions().setTopK(2);
+		for (boolean prune : new boolean [] { false, true })
+		{
+			simple.getOptions().setPruneTopK(prune);
+			new LocalComparisonEngine(simple, identities, 3).run(output_file);
+			List<String> lines = Files.readAllLines(new File(output_file).toPath());
+			assertEquals(2 * identities.size(), lines.size());
+			for (String identity : identities)
+			{
+				int count = 0;
+				for (String line : lines)
+				{
+					if (line.startsWith(identity + "\t"))
+					{
+						count++;
+					}
+				}
+				assertEquals(2, count);
+			}
+		}
+		
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.Ontology#addAnnotations(java.lang.String, java.lang.String)}.
+	 */
+	@Test
+	public void testAddAnnotations() throws Exception {
+		// Hold back one annotation of a disease, then add it again.
+		List<String> lines = Files.readAllLines(new File("src/test/resources/mgi-gene2mp-subset-1.tsv").toPath());
+		String held_back = lines.remove(40);
+		File base_file = File.createTempFile("base", ".tsv");
+		File delta_file = File.createTempFile("delta", ".tsv");
+		base_file.deleteOnExit();
+		delta_file.deleteOnExit();
+		Files.write(base_file.toPath(), lines);
+		Files.write(delta_file.toPath(), Arrays.asList(held_back));
+		Ontology base = new Ontology(
+				"src/test/resources/mp-subset-1-labels.tsv",
+				"src/test/resources/mp-subset-1-edges.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1-labels.tsv",
+				base_file.getPath(),
+				simple.getOptions()
+			);
+		Ontology updated = base.addAnnotations("src/test/resources/mgi-gene2mp-subset-1-labels.tsv",
+				delta_file.getPath());
+		
+		// The update should match building from every annotation.
+		for (int node = 0; node < simple.getClassCount(); node++)
+		{
+			assertEquals(simple.getAnnotatedCount(node), updated.getAnnotatedCount(node));
+			assertEquals(simple.getICScore(node), updated.getICScore(node), 0);
+		}
+		IncrementalUpdate update = new IncrementalUpdate(base, updated);
+		int changed = updated.getIndividualIndex(held_back.split("\t")[0]);
+		for (int first = 0; first < updated.getIndividualCount(); first++)
+		{
+			for (int second = 0; second < updated.getIndividualCount(); second++)
+			{
+				if (first == changed || second == changed)
+				{
+					assertTrue(update.needsRescoring(first, second));
+				}
+				else if (!update.needsRescoring(first, second))
+				{
+					assertEquals(DiseaseComparisonMeasures.maxIC(base, first, second),
+							DiseaseComparisonMeasures.maxIC(updated, first, second), 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link disease_comparison.IncrementalUpdate#needsRescoring(int, int)} with an epsilon.
+	 */
+	@Test
+	public void testIncrementalEpsilon() throws Exception {
+		// Hold back two diseases, to add back one week after the other.
+		List<String> lines = Files.readAllLines(new File("src/test/resources/mgi-gene2mp-subset-1.tsv").toPath());
+		List<List<String>> batches = new ArrayList<List<String>>();
+		File [] files = new File[3];
+		for (int batch = 0; batch < files.length; batch++)
+		{
+			batches.add(new ArrayList<String>());
+			files[batch] = File.createTempFile("batch", ".tsv");
+			files[batch].deleteOnExit();
+		}
+		List<String> held_back = Arrays.asList("MGI:101759", "MGI:101765");
+		for (String line : lines)
+		{
+			batches.get(held_back.indexOf(line.split("\t")[0]) + 1).add(line);
+		}
+		for (int batch = 0; batch < files.length; batch++)
+		{
+			Files.write(files[batch].toPath(), batches.get(batch));
+		}
+		String labels = "src/test/resources/mgi-gene2mp-subset-1-labels.tsv";
+		Options options = simple.getOptions();
+		Ontology base = new Ontology(
+				"src/test/resources/mp-subset-1-labels.tsv",
+				"src/test/resources/mp-subset-1-edges.tsv",
+				labels,
+				files[0].getPath(),
+				options
+			);
+		Ontology first_week = base.addAnnotations(labels, files[1].getPath());
+		
+		// Pick an epsilon which each week's move of some class stays within,
+		// but both weeks' moves together don't.
+		Ontology both_weeks = first_week.addAnnotations(labels, files[2].getPath());
+		int drifting = -1;
+		double epsilon = 0;
+		for (int node = 0; node < simple.getClassCount() && drifting < 0; node++)
+		{
+			double first_move = Math.abs(first_week.getICScore(node) - base.getICScore(node));
+			double second_move = Math.abs(both_weeks.getICScore(node) - first_week.getICScore(node));
+			double total_move = Math.abs(both_weeks.getICScore(node) - base.getICScore(node));
+			if (Math.max(first_move, second_move) < total_move)
+			{
+				drifting = node;
+				epsilon = (Math.max(first_move, second_move) + total_move) / 2;
+			}
+		}
+		assertTrue(drifting >= 0);
+		options.setIncrementalEpsilon(epsilon);
+		
+		// Run the first week's update, and read its snapshot back for the
+		// second.
+		IncrementalUpdate first_update = new IncrementalUpdate(base, first_week);
+		assertEquals(base.getICScore(drifting), first_week.getReferenceICScore(drifting), 0);
+		File snapshot_file = File.createTempFile("ontology", ".snapshot");
+		snapshot_file.deleteOnExit();
+		OntologySnapshot.write(first_week, snapshot_file.getPath());
+		Ontology restored = OntologySnapshot.read(snapshot_file.getPath(), options);
+		Ontology second_week = restored.addAnnotations(labels, files[2].getPath());
+		IncrementalUpdate second_update = new IncrementalUpdate(restored, second_week);
+		
+		// The class's small moves add up, so it moves in the second week.
+		assertEquals(second_week.getICScore(drifting), second_week.getReferenceICScore(drifting), 0);
+		for (int node = 0; node < simple.getClassCount(); node++)
+		{
+			assertEquals(first_week.getReferenceICScore(node), restored.getReferenceICScore(node), 0);
+			assertEquals(second_week.getICScore(node), second_week.getReferenceICScore(node), epsilon);
+		}
+		
+		// A line kept both weeks is still within epsilon.
+		for (int first = 0; first < base.getIndividualCount(); first++)
+		{
+			for (int second = 0; second < base.getIndividualCount(); second++)
+			{
+				if (!first_update.needsRescoring(first, second) && !second_update.needsRescoring(first, second))
+				{
+					assertEquals(DiseaseComparisonMeasures.maxIC(base, first, second),
+							DiseaseComparisonMeasures.maxIC(second_week, first, second), epsilon);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.SyntheticOntology#write(java.lang.String)}.
+	 */
+	@Test
+	public void testSyntheticOntology() throws Exception {
+		File first_directory = Files.createTempDirectory("synthetic").toFile();
+		File second_directory = Files.createTempDirectory("synthetic").toFile();
+		SyntheticOntology generator = new SyntheticOntology();
+		generator.setClassCount(500);
+		generator.setDepth(6);
+		generator.setIndividualCount(200);
+		generator.setMaxProfileSize(50);
+		generator.setSeed(7);
+		String [] files = generator.write(first_directory.getPath());
+		String [] repeated = generator.write(second_directory.getPath());
+		
+		// The same seed gives the same files.
+		for (int i = 0; i < files.length; i++)
+		{
+			assertEquals(Files.readAllLines(new File(files[i]).toPath()),
+					Files.readAllLines(new File(repeated[i]).toPath()));
+		}
+		
+		// Everything hangs off the one root, and every individual has a
+		// profile.
+		Ontology ontology = new Ontology(files[0], files[1], files[2], files[3], simple.getOptions());
+		assertEquals(500, ontology.getClassCount());
+		assertEquals(200, ontology.getIndividualCount());
+		assertEquals(SyntheticOntology.classIdentity(0), ontology.getRoot());
+		assertTrue(generator.getEdgeCount() >= 499);
+		assertTrue(generator.getAnnotationCount() >= 200);
+		
+		for (File directory : new File[] { first_directory, second_directory })
+		{
+			for (File file : directory.listFiles())
+			{
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.TsvReader#read(java.lang.String)}.
+	 */
+	@Test
+	public void testGzippedInput() throws Exception {
+		// Gzip the annotations with Windows line breaks and a blank line.
+		List<String> lines = Files.readAllLines(new File("src/test/resources/mgi-gene2mp-subset-1.tsv").toPath());
+		File gzipped_file = File.createTempFile("annotations", ".tsv");
+		gzipped_file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gzipped_file)), "UTF-8");
+		for (String line : lines)
+		{
+			writer.write(line + "\r\n");
+		}
+		writer.write("\r\n");
+		writer.close();
+		
+		TsvReader.Columns columns = TsvReader.read(gzipped_file.getPath());
+		assertEquals(lines.size(), columns.size());
+		for (int line = 0; line < lines.size(); line++)
+		{
+			assertEquals(lines.get(line), columns.first(line) + "\t" + columns.second(line));
+		}
+		
+		Ontology gzipped = new Ontology(
+				"src/test/resources/mp-subset-1-labels.tsv",
+				"src/test/resources/mp-subset-1-edges.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1-labels.tsv",
+				gzipped_file.getPath(),
+				simple.getOptions()
+			);
+		for (int first = 0; first < simple.getIndividualCount(); first++)
+		{
+			assertEquals(simple.getIndividualIdentity(first), gzipped.getIndividualIdentity(first));
+			for (int second = 0; second < simple.getIndividualCount(); second++)
+			{
+				assertEquals(DiseaseComparisonMeasures.maxIC(simple, first, second),
+						DiseaseComparisonMeasures.maxIC(gzipped, first, second), 0);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link disease_comparison.Ontology#computeLCS(int, int)} with projection.
+	 */
+	@Test
+	public void testProjection() throws Exception {
+		// Keep the highest IC nodes without and with projection, and the
+		// lowest IC nodes with projection.
+		Ontology [] thresholded = new Ontology[3];
+		for (int i = 0; i < thresholded.length; i++)
+		{
+			Options options = new Options();
+			options.setUseThresholding(true);
+			options.setMaxImportantNodes(20);
+			options.setProjectUnimportant(i > 0);
+			options.setImportantNodesLowestIC(i == 2);
+			thresholded[i] = new Ontology(
+					"src/test/resources/mp-subset-1-labels.tsv",
+					"src/test/resources/mp-subset-1-edges.tsv",
+					"src/test/resources/mgi-gene2mp-subset-1-labels.tsv",
+					"src/test/resources/mgi-gene2mp-subset-1.tsv",
+					options
+				);
+		}
+		Ontology projected = thresholded[2];
+		
+		// Projecting on its own doesn't change which nodes are important.
+		for (int node = 0; node < simple.getClassCount(); node++)
+		{
+			assertEquals(thresholded[0].isImportant(node), thresholded[1].isImportant(node));
+		}
+		
+		// A projected LCS is a common subsumer, no better than the real one,
+		// and the real one when both classes are important. Classes with no
+		// important ancestor go to the root.
+		CompressedRows ancestors = simple.getAncestors();
+		for (int i = 1; i < thresholded.length; i++)
+		{
+			for (int first = 0; first < simple.getClassCount(); first++)
+			{
+				for (int second = 0; second < simple.getClassCount(); second++)
+				{
+					int lcs = thresholded[i].computeLCS(first, second);
+					int exact = simple.computeLCS(first, second);
+					assertTrue(Arrays.binarySearch(ancestors.row(first), lcs) >= 0);
+					assertTrue(Arrays.binarySearch(ancestors.row(second), lcs) >= 0);
+					assertTrue(simple.getICScore(lcs) <= simple.getICScore(exact));
+					if (thresholded[i].isImportant(first) && thresholded[i].isImportant(second))
+					{
+						assertEquals(exact, lcs);
+					}
+				}
+			}
+		}
+		
+		// Projecting gets closer to the real scores than the root does.
+		double [] totals = new double[4];
+		for (int first = 0; first < simple.getIndividualCount(); first++)
+		{
+			for (int second = 0; second < simple.getIndividualCount(); second++)
+			{
+				for (int i = 0; i < thresholded.length; i++)
+				{
+					totals[i] += DiseaseComparisonMeasures.maxIC(thresholded[i], first, second);
+				}
+				totals[3] += DiseaseComparisonMeasures.maxIC(simple, first, second);
+			}
+		}
+		assertTrue(totals[0] <= totals[1]);
+		assertTrue(totals[1] <= totals[3]);
+		assertTrue(totals[0] < totals[2]);
+		assertTrue(totals[2] <= totals[3]);
+		
+		// A snapshot read with other options finds the important nodes and
+		// projects the way a fresh build would.
+		File snapshot_file = File.createTempFile("ontology", ".snapshot");
+		snapshot_file.deleteOnExit();
+		int [][] round_trips = { { 0, 1 }, { 1, 0 }, { 1, 2 }, { 2, 1 } };
+		for (int [] round_trip : round_trips)
+		{
+			Ontology other = thresholded[round_trip[1]];
+			OntologySnapshot.write(thresholded[round_trip[0]], snapshot_file.getPath());
+			Ontology restored = OntologySnapshot.read(snapshot_file.getPath(), other.getOptions());
+			for (int node = 0; node < simple.getClassCount(); node++)
+			{
+				assertEquals(other.isImportant(node), restored.isImportant(node));
+			}
+			for (int first = 0; first < simple.getIndividualCount(); first++)
+			{
+				for (int second = 0; second < simple.getIndividualCount(); second++)
+				{
+					assertEquals(DiseaseComparisonMeasures.maxIC(other, first, second),
+							DiseaseComparisonMeasures.maxIC(restored, first, second), 0);
+				}
+			}
+		}
+		
+		// A table built with the lowest IC nodes agrees with computeLCS, and
+		// one built with the highest is refused. Projection doesn't matter.
+		File table_file = File.createTempFile("mica", ".table");
+		table_file.deleteOnExit();
+		MicaTable.build(projected, table_file.getPath());
+		MicaTable table = new MicaTable(table_file.getPath(), projected);
+		projected.getOptions().setMicaTable(table_file.getPath());
+		Ontology tabled = new Ontology(
+				"src/test/resources/mp-subset-1-labels.tsv",
+				"src/test/resources/mp-subset-1-edges.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1-labels.tsv",
+				"src/test/resources/mgi-gene2mp-subset-1.tsv",
+				projected.getOptions()
+			);
+		for (int first = 0; first < simple.getClassCount(); first++)
+		{
+			for (int second = 0; second < simple.getClassCount(); second++)
+			{
+				int lcs = table.lookup(first, second);
+				if (lcs != MicaTable.MISSING)
+				{
+					assertEquals(projected.computeLCS(first, second), lcs);
+				}
+				assertEquals(projected.computeLCS(first, second), tabled.computeLCS(first, second));
+			}
+		}
+		MicaTable.build(thresholded[0], table_file.getPath());
+		new MicaTable(table_file.getPath(), thresholded[1]);
+		try
+		{
+			new MicaTable(table_file.getPath(), projected);
+			fail("A table built with the highest IC nodes should be refused");
+		}
+		catch (IOException exception)
+		{
+			// The table was refused, as it should be.
+		}
+	}
+	
+	private static double sum(double [] values) {
+		double total = 0;
+		for (double value : values)
+		{
+			total += value;
+		}
+		return total;
+	}
+	
 }
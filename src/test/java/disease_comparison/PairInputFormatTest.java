@@ -0,0 +1,164 @@
+/**
+ * 
+ */
+package disease_comparison;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Tests for {@link disease_comparison.PairInputFormat}.
+ */
+public class PairInputFormatTest {
+
+	/**
+	 * Reads every pair out of every split for the given individuals.
+	 */
+	private Set<String> readPairs(String [] identities, int splits, boolean triangular) throws Exception {
+		Configuration conf = new Configuration();
+		FileSystem fs = FileSystem.getLocal(conf);
+		File individuals = File.createTempFile("individuals", ".txt");
+		individuals.deleteOnExit();
+		PairInputFormat.setIndividuals(conf, fs, new Path(individuals.getPath()),
+				Arrays.asList(identities), splits, triangular);
+		
+		PairInputFormat format = new PairInputFormat();
+		TaskAttemptContext context = new TaskAttemptContext(conf, new TaskAttemptID());
+		Set<String> pairs = new HashSet<String>();
+		long count = 0;
+		for (InputSplit split : format.getSplits(new JobContext(conf, new JobID())))
+		{
+			RecordReader<Text, Text> reader = format.createRecordReader(split, context);
+			reader.initialize(split, context);
+			while (reader.nextKeyValue())
+			{
+				String first = reader.getCurrentKey().toString();
+				String second = reader.getCurrentValue().toString();
+				assertFalse(first.equals(second));
+				if (triangular)
+				{
+					assertTrue(first.compareTo(second) > 0);
+				}
+				pairs.add(first + "\t" + second);
+				count++;
+			}
+		}
+		
+		// No pair may come out twice.
+		assertEquals(count, pairs.size());
+		return pairs;
+	}
+	
+	@Test
+	public void testTriangularPairs() throws Exception {
+		String [] identities = { "e", "a", "d", "c", "b", "f", "g" };
+		assertEquals(21, readPairs(identities, 4, true).size());
+	}
+	
+	@Test
+	public void testAllPairs() throws Exception {
+		String [] identities = { "e", "a", "d", "c", "b", "f", "g" };
+		assertEquals(42, readPairs(identities, 5, false).size());
+		assertEquals(2, readPairs(new String [] { "a", "b" }, 3, false).size());
+		assertEquals(0, readPairs(new String [] { "a" }, 3, true).size());
+	}
+	
+	@Test
+	public void testPartitionPlan() throws Exception {
+		// Rows later in the triangle hold more pairs, and some profiles are
+		// much bigger than others.
+		int [] sizes = new int[200];
+		List<String> identities = new ArrayList<String>();
+		for (int i = 0; i < sizes.length; i++)
+		{
+			sizes[i] = 1 + (i * 37) % 50;
+			identities.add(String.format("D:%04d", i));
+		}
+		double [] costs = PairPartitioner.rowCosts(sizes, true);
+		assertEquals(0, costs[0], 0);
+		assertEquals(1 + sizes[1] * sizes[0], costs[1], 0);
+		
+		int [] assignments = PairPartitioner.assign(costs, 8);
+		for (int reducer : assignments)
+		{
+			assertTrue(reducer >= 0 && reducer < 8);
+		}
+		double balanced = PairPartitioner.balance(costs, assignments, 8);
+		double hashed = PairPartitioner.balance(costs, PairPartitioner.hashAssignments(identities, 8), 8);
+		assertTrue(balanced < 1.01);
+		assertTrue(balanced <= hashed);
+	}
+	
+	@Test
+	public void testTileRuns() throws Exception {
+		String [] identities = new String[23];
+		for (int i = 0; i < identities.length; i++)
+		{
+			identities[i] = String.format("D:%02d", i);
+		}
+		for (boolean triangular : new boolean [] { true, false })
+		{
+			Configuration conf = new Configuration();
+			FileSystem fs = FileSystem.getLocal(conf);
+			File individuals = File.createTempFile("individuals", ".txt");
+			individuals.deleteOnExit();
+			PairInputFormat.setIndividuals(conf, fs, new Path(individuals.getPath()),
+					Arrays.asList(identities), 4, triangular);
+			conf.setInt(TileInputFormat.TILE_SIZE, 3);
+			
+			// With 8 bands there are 36 or 64 tiles, but only a few splits,
+			// and every tile of a split is in the same band.
+			TileInputFormat format = new TileInputFormat();
+			TaskAttemptContext context = new TaskAttemptContext(conf, new TaskAttemptID());
+			List<InputSplit> splits = format.getSplits(new JobContext(conf, new JobID()));
+			assertTrue(splits.size() < 4 + 8);
+			Set<String> pairs = new HashSet<String>();
+			long count = 0;
+			for (InputSplit split : splits)
+			{
+				RecordReader<NullWritable, TileInputFormat.Tile> reader = format.createRecordReader(split, context);
+				reader.initialize(split, context);
+				int row_start = -1;
+				while (reader.nextKeyValue())
+				{
+					TileInputFormat.Tile tile = reader.getCurrentValue();
+					assertTrue(row_start < 0 || row_start == tile.getRowStart());
+					row_start = tile.getRowStart();
+					for (int row = tile.getRowStart(); row < tile.getRowEnd(); row++)
+					{
+						for (int column = tile.getColumnStart(); column < tile.getColumnEnd(); column++)
+						{
+							if (tile.contains(row, column))
+							{
+								pairs.add(row + "\t" + column);
+								count++;
+							}
+						}
+					}
+				}
+			}
+			assertEquals(count, pairs.size());
+			assertEquals(PairInputFormat.pairCount(identities.length, triangular), count);
+		}
+	}
+
+}
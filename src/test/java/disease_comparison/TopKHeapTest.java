@@ -0,0 +1,31 @@
+/**
+ * 
+ */
+package disease_comparison;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link disease_comparison.TopKHeap}.
+ */
+public class TopKHeapTest {
+
+	@Test
+	public void testKeepsBestMatches() {
+		TopKHeap heap = new TopKHeap(3);
+		double [] scores = { 0.5, 2.0, 1.0, 2.0, 0.1, 3.0, 1.0 };
+		for (int match = 0; match < scores.length; match++)
+		{
+			heap.offer(scores[match], match);
+		}
+		
+		// Ties go to the lower index.
+		assertTrue(Arrays.equals(new int [] { 5, 1, 3 }, heap.sortedMatches()));
+		assertEquals(2.0, heap.worstScore(), 0);
+	}
+
+}